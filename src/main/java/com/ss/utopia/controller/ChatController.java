@@ -1,35 +1,61 @@
 package com.ss.utopia.controller;
 
+import com.ss.utopia.dto.ChatHistoryRequestDto;
+import com.ss.utopia.event.ChatEventListener;
+import com.ss.utopia.messaging.ChatBroker;
 import com.ss.utopia.model.ChatInMessage;
 import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.AgentAssignmentService;
 import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConversationRoster;
+import com.ss.utopia.service.FaqResponder;
+import com.ss.utopia.service.TypingCoalescer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Controller;
 
 import java.security.Principal;
-import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.Optional;
 
 @Controller
 public class ChatController {
   private static Logger LOGGER = LoggerFactory.getLogger(ChatController.class);
-  private final SimpMessagingTemplate simpMessagingTemplate;
+  private final ChatBroker chatBroker;
 
   private final ChatService chatService;
 
+  private final ConversationRoster conversationRoster;
+
+  private final TypingCoalescer typingCoalescer;
+
+  private final AgentAssignmentService agentAssignmentService;
+
+  private final FaqResponder faqResponder;
+
+  private final ChatEventListener chatEventListener;
+
   @Autowired
-  public ChatController(SimpMessagingTemplate simpMessagingTemplate, ChatService chatService) {
-    this.simpMessagingTemplate = simpMessagingTemplate;
+  public ChatController(ChatBroker chatBroker,
+                        ChatService chatService,
+                        ConversationRoster conversationRoster,
+                        TypingCoalescer typingCoalescer,
+                        AgentAssignmentService agentAssignmentService,
+                        FaqResponder faqResponder,
+                        ChatEventListener chatEventListener) {
+    this.chatBroker = chatBroker;
     this.chatService = chatService;
+    this.conversationRoster = conversationRoster;
+    this.typingCoalescer = typingCoalescer;
+    this.agentAssignmentService = agentAssignmentService;
+    this.faqResponder = faqResponder;
+    this.chatEventListener = chatEventListener;
   }
 
   @MessageMapping("/secured/room/chat")
@@ -54,11 +80,17 @@ public class ChatController {
         chatOutMessage.setSenderShortName("Guest #" + sessionId);
       }
       String customerId = (isAdmin(auth)) ? message.getReceiverUsername() : message.getSenderId();
-      if (chatService.chats.containsKey(customerId)) {
-        List messages = chatService.chats.get(customerId);
-        messages.add(chatOutMessage);
+      chatService.addMessage(customerId, chatOutMessage);
+      if (!isAdmin(auth) && agentAssignmentService.getAgent(customerId).isEmpty()) {
+        // until an agent takes the conversation, questions the Virtual Bot can answer are answered by it alone
+        Optional<ChatOutMessage> answer = faqResponder.answer(message.getMessage());
+        if (answer.isPresent()) {
+          chatService.addMessage(customerId, answer.get());
+          chatBroker.sendToUser(message.getSenderId(), "/queue/private/chat", answer.get());
+          return;
+        }
       }
-      simpMessagingTemplate.convertAndSendToUser(message.getReceiverUsername(), "/queue/private/chat", chatOutMessage);
+      chatBroker.sendToUser(message.getReceiverUsername(), "/queue/private/chat", chatOutMessage);
     } catch (Exception e) {
       LOGGER.error(e.getMessage());
     }
@@ -76,14 +108,31 @@ public class ChatController {
       } else {
         customerId = message.getSenderId();
       }
-      chatService.chats.get(customerId).stream().forEach(chat -> {
-        simpMessagingTemplate.convertAndSendToUser(message.getSenderId(), "/queue/private/load", chat);
+      List<ChatOutMessage> history = (null == message.getLastSeenSequence())
+        ? chatService.getHistory(customerId)
+        : chatService.getHistoryAfter(customerId, message.getLastSeenSequence());
+      history.forEach(chat -> {
+        chatBroker.sendToUser(message.getSenderId(), "/queue/private/load", chat);
       });
     } catch (Exception e) {
       LOGGER.error(e.getMessage());
     }
   }
 
+  @MessageMapping("/secured/room/chat/history/page")
+  public void handleLoadChatHistoryPage(
+    @Payload ChatHistoryRequestDto request,
+    Authentication auth
+  ) {
+    try {
+      String customerId = (isAdmin(auth)) ? request.getReceiverUsername() : request.getSenderId();
+      chatBroker.sendToUser(request.getSenderId(), "/queue/private/history",
+        chatService.getHistoryPage(customerId, request.getBefore(), request.getAfter(), request.getLimit()));
+    } catch (Exception e) {
+      LOGGER.error(e.getMessage());
+    }
+  }
+
   @MessageMapping("/secured/room/join/history")
   public void handleAdminLoadJoinHistory(
     @Payload ChatInMessage message,
@@ -93,14 +142,11 @@ public class ChatController {
       String customerId = "";
       if (isAdmin(auth)) {
         customerId = message.getReceiverUsername();
-        chatService.chats.keySet().forEach(id -> {
+        conversationRoster.clusterSnapshot().getEntries().forEach(entry -> {
           ChatOutMessage customer = new ChatOutMessage();
-          customer.setSenderId(id);
-          if (id.matches("^Guest.*$"))
-            customer.setSenderShortName("Guest #" + id.substring(5));
-          else
-            customer.setSenderShortName(id);
-          simpMessagingTemplate.convertAndSendToUser(message.getSenderId(), "/queue/private/join", customer);
+          customer.setSenderId(entry.getConversationId());
+          customer.setSenderShortName(entry.getDisplayName());
+          chatBroker.sendToUser(message.getSenderId(), "/queue/private/join", customer);
         });
       }
     } catch (Exception e) {
@@ -108,6 +154,20 @@ public class ChatController {
     }
   }
 
+  @MessageMapping("/secured/room/roster")
+  public void handleAdminLoadRoster(
+    @Payload ChatInMessage message,
+    Authentication auth
+  ) {
+    try {
+      if (isAdmin(auth))
+        chatBroker.sendToUser(message.getSenderId(), "/queue/private/roster",
+          conversationRoster.clusterSnapshot());
+    } catch (Exception e) {
+      LOGGER.error(e.getMessage());
+    }
+  }
+
   private boolean isAdmin(Authentication auth) {
     try {
       return auth.getAuthorities().contains(new SimpleGrantedAuthority("ROLE_ADMIN"));
@@ -119,10 +179,8 @@ public class ChatController {
   @MessageMapping("/secured/room/update")
   public void handleAdminChatUserIsTyping(ChatInMessage message) {
     try {
-      LOGGER.info("Handle user typing...");
-      var chatOutMessage = new ChatOutMessage();
-      chatOutMessage.setContent(message.getMessage());
-      simpMessagingTemplate.convertAndSendToUser(message.getReceiverUsername(), "/queue/private/update", chatOutMessage);
+      LOGGER.debug("Handle user typing...");
+      typingCoalescer.onTyping(message.getSenderId(), message.getReceiverUsername(), message.getMessage());
     } catch (Exception e) {
       LOGGER.error(e.getMessage());
     }
@@ -144,19 +202,21 @@ public class ChatController {
         chatOutMessage.setSenderShortName("Guest #" + sessionId);
       }
       String customerId = (isAdmin(auth)) ? message.getReceiverUsername() : message.getSenderId();
-      if (!chatService.chats.containsKey(customerId)) {
-        chatService.chats.putIfAbsent(customerId, new ArrayList<>());
-        ChatOutMessage botMessage = new ChatOutMessage();
-        botMessage.setSenderId("admin");
-        botMessage.setContent(
+      if (chatService.openConversation(customerId)) {
+        ChatOutMessage botMessage = FaqResponder.botMessage(
           "Hi! I’m Utopia’s Virtual Assistant. I can help you find answers to common questions.\n" +
             "What can I help you with today?");
-        botMessage.setSenderShortName("Virtual Bot");
-        botMessage.setSentTimestamp(new Date());
-        chatService.chats.get(customerId).add(botMessage);
+        chatService.addMessage(customerId, botMessage);
         // simpMessagingTemplate.convertAndSendToUser(message.getSenderId(), "/queue/private/join", botMessage);
+      } else if (null != message.getLastSeenSequence()) {
+        chatBroker.sendToUser(message.getSenderId(), "/queue/private/history",
+          chatService.getHistoryPage(customerId, null, message.getLastSeenSequence(), null));
       }
-      simpMessagingTemplate.convertAndSendToUser(message.getReceiverUsername(), "/queue/private/join", chatOutMessage);
+      if (null == user)
+        chatEventListener.bindGuest(sessionId, customerId);
+      if (!isAdmin(auth))
+        agentAssignmentService.assignIfAbsent(customerId);
+      chatBroker.sendToUser(message.getReceiverUsername(), "/queue/private/join", chatOutMessage);
     } catch (Exception e) {
       LOGGER.error(e.getMessage());
     }
@@ -168,7 +228,7 @@ public class ChatController {
       LOGGER.info("Handle Chat error");
       var chatOutMessage = new ChatOutMessage();
       chatOutMessage.setContent(message.getMessage());
-      simpMessagingTemplate.convertAndSendToUser(message.getReceiverUsername(), "/queue/private/error", chatOutMessage);
+      chatBroker.sendToUser(message.getReceiverUsername(), "/queue/private/error", chatOutMessage);
     } catch (Exception e) {
       LOGGER.error(e.getMessage());
     }
@@ -0,0 +1,138 @@
+package com.ss.utopia.controller;
+
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.dto.RosterSnapshotDto;
+import com.ss.utopia.messaging.ClusterClient;
+import com.ss.utopia.messaging.ConversationOwnership;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConversationRoster;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Node to node API of the cluster, also open to the gateway for {@code /owner}.
+ * Callers authenticate with the shared {@code chat.cluster.secret} instead of a user token;
+ * without a configured secret every endpoint is refused.
+ * Conversation endpoints only serve conversations this node owns, so a node with a different
+ * view of the ring gets a 409 instead of the request bouncing between nodes.
+ */
+@RestController
+@RequestMapping("/api/cluster")
+public class ClusterController {
+  private final ConversationOwnership conversationOwnership;
+  private final ChatService chatService;
+  private final ConversationRoster conversationRoster;
+  private final byte[] secret;
+
+  @Autowired
+  public ClusterController(ConversationOwnership conversationOwnership,
+                           ChatService chatService,
+                           ConversationRoster conversationRoster,
+                           @Value("${chat.cluster.secret}") String secret) {
+    this.conversationOwnership = conversationOwnership;
+    this.chatService = chatService;
+    this.conversationRoster = conversationRoster;
+    this.secret = (null == secret) ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @GetMapping("/owner")
+  public Map<String, String> getOwner(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                                      @RequestParam String conversationId) {
+    authorize(secret);
+    return Map.of("conversationId", conversationId, "node", conversationOwnership.ownerOf(conversationId));
+  }
+
+  @GetMapping("/roster")
+  public RosterSnapshotDto getRoster(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret) {
+    authorize(secret);
+    return conversationRoster.snapshot();
+  }
+
+  @PostMapping("/conversations/{conversationId}/open")
+  public boolean open(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                      @PathVariable String conversationId) {
+    authorizeOwned(secret, conversationId);
+    return chatService.openConversation(conversationId);
+  }
+
+  @PostMapping("/conversations/{conversationId}/close")
+  public boolean close(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                       @PathVariable String conversationId,
+                       @RequestParam(required = false) String reason) {
+    authorizeOwned(secret, conversationId);
+    return chatService.closeConversation(conversationId, reason);
+  }
+
+  @GetMapping("/conversations/{conversationId}")
+  public boolean exists(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                        @PathVariable String conversationId) {
+    authorizeOwned(secret, conversationId);
+    return chatService.hasConversation(conversationId);
+  }
+
+  /**
+   * @return the sequence given to the message, or null if the conversation is not open
+   */
+  @PostMapping("/conversations/{conversationId}/messages")
+  public Long addMessage(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                         @PathVariable String conversationId,
+                         @RequestBody ChatOutMessage message) {
+    authorizeOwned(secret, conversationId);
+    return chatService.addMessage(conversationId, message) ? message.getSequence() : null;
+  }
+
+  @GetMapping("/conversations/{conversationId}/messages")
+  public List<ChatOutMessage> getHistory(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                                         @PathVariable String conversationId,
+                                         @RequestParam(required = false) Long after) {
+    authorizeOwned(secret, conversationId);
+    return (null == after) ? chatService.getHistory(conversationId) : chatService.getHistoryAfter(conversationId, after);
+  }
+
+  @GetMapping("/conversations/{conversationId}/page")
+  public ChatHistoryPageDto getHistoryPage(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                                           @PathVariable String conversationId,
+                                           @RequestParam(required = false) Long before,
+                                           @RequestParam(required = false) Long after,
+                                           @RequestParam(required = false) Integer limit) {
+    authorizeOwned(secret, conversationId);
+    return chatService.getHistoryPage(conversationId, before, after, limit);
+  }
+
+  @GetMapping("/conversations/{conversationId}/last")
+  public ChatOutMessage getLastMessage(@RequestHeader(value = ClusterClient.SECRET_HEADER, required = false) String secret,
+                                       @PathVariable String conversationId) {
+    authorizeOwned(secret, conversationId);
+    return chatService.getLastMessage(conversationId)
+      .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "No message"));
+  }
+
+  private void authorize(String provided) {
+    if (0 == secret.length || null == provided
+      || !MessageDigest.isEqual(secret, provided.getBytes(StandardCharsets.UTF_8)))
+      throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Cluster secret required");
+  }
+
+  private void authorizeOwned(String provided, String conversationId) {
+    authorize(provided);
+    if (!chatService.isLocal(conversationId))
+      throw new ResponseStatusException(HttpStatus.CONFLICT,
+        "Conversation is owned by " + conversationOwnership.ownerOf(conversationId));
+  }
+}
@@ -0,0 +1,44 @@
+package com.ss.utopia.controller;
+
+import com.ss.utopia.dto.SearchPageDto;
+import com.ss.utopia.search.MessageSearchIndex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/chat/search")
+public class SearchController {
+  private final MessageSearchIndex messageSearchIndex;
+  private final int defaultPageSize;
+
+  @Autowired
+  public SearchController(MessageSearchIndex messageSearchIndex,
+                          @Value("${chat.search.page-size}") int defaultPageSize) {
+    this.messageSearchIndex = messageSearchIndex;
+    this.defaultPageSize = defaultPageSize;
+  }
+
+  @GetMapping
+  @PreAuthorize("hasRole('ADMIN')")
+  public SearchPageDto search(@RequestParam(required = false) String q,
+                              @RequestParam(required = false) String conversationId,
+                              @RequestParam(required = false) String senderId,
+                              @RequestParam(required = false) Long from,
+                              @RequestParam(required = false) Long to,
+                              @RequestParam(required = false) Long cursor,
+                              @RequestParam(required = false) Integer limit) {
+    try {
+      return messageSearchIndex.search(q, conversationId, senderId, from, to, cursor,
+        (null == limit) ? defaultPageSize : limit);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+}
@@ -4,9 +4,11 @@ import com.ss.utopia.dto.LoginDto;
 import com.ss.utopia.model.User;
 import com.ss.utopia.security.JwtProvider;
 import com.ss.utopia.service.AuthService;
+import com.ss.utopia.service.LoginOverloadedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
@@ -31,8 +33,15 @@ public class SessionController {
   @PostMapping
   @ResponseStatus(HttpStatus.CREATED)
   public void login(@RequestBody @Valid LoginDto loginDto, HttpServletResponse response) {
-    final User user = authService.signin(loginDto.getUsername(), loginDto.getPassword())
-      .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Login Failed"));
+    final User user;
+    try {
+      user = authService.signin(loginDto.getUsername(), loginDto.getPassword())
+        .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Login Failed"));
+    } catch (LoginOverloadedException e) {
+      LOGGER.warn(e.getMessage());
+      response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, e.getMessage());
+    }
     final Cookie sessionCookie = jwtProvider.createSessionCookie(user)
       .orElseThrow(() -> new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to create a session cookie"));
     LOGGER.info("cookie: {}", sessionCookie.getValue());
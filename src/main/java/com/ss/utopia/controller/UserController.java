@@ -1,26 +1,105 @@
 package com.ss.utopia.controller;
 
-import com.ss.utopia.dao.UserRepository;
-import com.ss.utopia.model.User;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.dto.UserPageDto;
+import com.ss.utopia.security.UtopiaUserDetailService;
+import com.ss.utopia.service.UserDirectory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.Semaphore;
 
 @RestController
 @RequestMapping("/api/users")
 public class UserController {
-  private final UserRepository userRepository;
+  private final UserDirectory userDirectory;
+  private final UtopiaUserDetailService userDetailService;
+  private final ObjectMapper objectMapper;
+  private final int defaultPageSize;
+  private final Semaphore streams;
 
   @Autowired
-  public UserController(UserRepository userRepository) {
-    this.userRepository = userRepository;
+  public UserController(UserDirectory userDirectory,
+                        UtopiaUserDetailService userDetailService,
+                        ObjectMapper objectMapper,
+                        @Value("${chat.users.page-size}") int defaultPageSize,
+                        @Value("${chat.users.max-streams}") int maxStreams) {
+    this.userDirectory = userDirectory;
+    this.userDetailService = userDetailService;
+    this.objectMapper = objectMapper;
+    this.defaultPageSize = defaultPageSize;
+    this.streams = new Semaphore(maxStreams);
   }
 
+  /**
+   * Writes every user as one JSON array while rows are read from the database cursor,
+   * so memory stays flat regardless of the size of the table. At most {@code chat.users.max-streams} listings
+   * run at once, each on a connection of the cursor pool; the next one gets 503 before anything is written.
+   * The permit is taken when the body runs, so a request that times out before that never holds one.
+   */
   @GetMapping
-  public List<User> getAll() {
-    return userRepository.findAll();
+  public ResponseEntity<StreamingResponseBody> getAll() {
+    final StreamingResponseBody body = out -> {
+      if (!streams.tryAcquire())
+        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many user listings in progress");
+      try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+        generator.writeStartArray();
+        userDirectory.forEach(user -> {
+          try {
+            generator.writeObject(user);
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        });
+        generator.writeEndArray();
+      } finally {
+        streams.release();
+      }
+    };
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+  }
+
+  @GetMapping("/page")
+  public UserPageDto getPage(@RequestParam(required = false) Long cursor,
+                             @RequestParam(required = false) Integer limit) {
+    try {
+      return userDirectory.page(cursor, (null == limit) ? defaultPageSize : limit);
+    } catch (IllegalArgumentException e) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  /**
+   * Called by the user service after changing the role of a user or deleting it, so requests authenticated
+   * as that user stop using the cached account right away.
+   */
+  @DeleteMapping("/{userId}/cache")
+  @PreAuthorize("hasRole('ADMIN')")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void invalidate(@PathVariable Long userId) {
+    userDetailService.invalidate(userId);
+  }
+
+  @DeleteMapping("/cache")
+  @PreAuthorize("hasRole('ADMIN')")
+  @ResponseStatus(HttpStatus.NO_CONTENT)
+  public void invalidateAll() {
+    userDetailService.invalidateAll();
   }
 }
@@ -0,0 +1,18 @@
+package com.ss.utopia.dao;
+
+import com.ss.utopia.model.ChatMessage;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long> {
+  @Query(value = "SELECT id, conversation_id, sender_id, sender_short_name, group_name, content, sent_timestamp, " +
+    "sequence_number " +
+    "FROM (SELECT m.*, ROW_NUMBER() OVER (PARTITION BY m.conversation_id ORDER BY m.id DESC) AS row_num " +
+    "FROM chat_message m) recent WHERE row_num <= :perConversation ORDER BY id", nativeQuery = true)
+  List<ChatMessage> findLatestPerConversation(@Param("perConversation") int perConversation);
+}
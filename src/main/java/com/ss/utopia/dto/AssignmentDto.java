@@ -0,0 +1,50 @@
+package com.ss.utopia.dto;
+
+public class AssignmentDto {
+  private String conversationId;
+  private String displayName;
+  private String agent;
+  private boolean reassigned;
+
+  public AssignmentDto() {
+  }
+
+  public AssignmentDto(String conversationId, String displayName, String agent, boolean reassigned) {
+    this.conversationId = conversationId;
+    this.displayName = displayName;
+    this.agent = agent;
+    this.reassigned = reassigned;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public void setConversationId(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  public void setDisplayName(String displayName) {
+    this.displayName = displayName;
+  }
+
+  public String getAgent() {
+    return agent;
+  }
+
+  public void setAgent(String agent) {
+    this.agent = agent;
+  }
+
+  public boolean isReassigned() {
+    return reassigned;
+  }
+
+  public void setReassigned(boolean reassigned) {
+    this.reassigned = reassigned;
+  }
+}
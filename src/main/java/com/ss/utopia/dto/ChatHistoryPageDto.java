@@ -0,0 +1,44 @@
+package com.ss.utopia.dto;
+
+import com.ss.utopia.model.ChatOutMessage;
+
+import java.util.List;
+
+public class ChatHistoryPageDto {
+  private String conversationId;
+  private List<ChatOutMessage> messages;
+  private boolean hasMore;
+
+  public ChatHistoryPageDto() {
+  }
+
+  public ChatHistoryPageDto(String conversationId, List<ChatOutMessage> messages, boolean hasMore) {
+    this.conversationId = conversationId;
+    this.messages = messages;
+    this.hasMore = hasMore;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public void setConversationId(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public List<ChatOutMessage> getMessages() {
+    return messages;
+  }
+
+  public void setMessages(List<ChatOutMessage> messages) {
+    this.messages = messages;
+  }
+
+  public boolean isHasMore() {
+    return hasMore;
+  }
+
+  public void setHasMore(boolean hasMore) {
+    this.hasMore = hasMore;
+  }
+}
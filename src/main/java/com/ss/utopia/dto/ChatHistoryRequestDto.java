@@ -0,0 +1,55 @@
+package com.ss.utopia.dto;
+
+/**
+ * Request for one page of a conversation history.
+ * With before set the page holds the messages right before that sequence, used to lazy load older messages.
+ * With after set the page holds the messages right after that sequence.
+ * With neither the page holds the latest messages.
+ */
+public class ChatHistoryRequestDto {
+  private String senderId;
+  private String receiverUsername;
+  private Long before;
+  private Long after;
+  private Integer limit;
+
+  public String getSenderId() {
+    return senderId;
+  }
+
+  public void setSenderId(String senderId) {
+    this.senderId = senderId;
+  }
+
+  public String getReceiverUsername() {
+    return receiverUsername;
+  }
+
+  public void setReceiverUsername(String receiverUsername) {
+    this.receiverUsername = receiverUsername;
+  }
+
+  public Long getBefore() {
+    return before;
+  }
+
+  public void setBefore(Long before) {
+    this.before = before;
+  }
+
+  public Long getAfter() {
+    return after;
+  }
+
+  public void setAfter(Long after) {
+    this.after = after;
+  }
+
+  public Integer getLimit() {
+    return limit;
+  }
+
+  public void setLimit(Integer limit) {
+    this.limit = limit;
+  }
+}
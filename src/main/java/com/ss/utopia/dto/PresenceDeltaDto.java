@@ -0,0 +1,54 @@
+package com.ss.utopia.dto;
+
+public class PresenceDeltaDto {
+  public enum Type {
+    ONLINE, OFFLINE
+  }
+
+  private Type type;
+  private long version;
+  private String user;
+  private boolean guest;
+
+  public PresenceDeltaDto() {
+  }
+
+  public PresenceDeltaDto(Type type, long version, String user, boolean guest) {
+    this.type = type;
+    this.version = version;
+    this.user = user;
+    this.guest = guest;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  public String getUser() {
+    return user;
+  }
+
+  public void setUser(String user) {
+    this.user = user;
+  }
+
+  public boolean isGuest() {
+    return guest;
+  }
+
+  public void setGuest(boolean guest) {
+    this.guest = guest;
+  }
+}
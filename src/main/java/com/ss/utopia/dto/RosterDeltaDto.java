@@ -0,0 +1,44 @@
+package com.ss.utopia.dto;
+
+public class RosterDeltaDto {
+  public enum Type {
+    ADDED, UPDATED, REMOVED
+  }
+
+  private Type type;
+  private long version;
+  private RosterEntryDto entry;
+
+  public RosterDeltaDto() {
+  }
+
+  public RosterDeltaDto(Type type, long version, RosterEntryDto entry) {
+    this.type = type;
+    this.version = version;
+    this.entry = entry;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public void setType(Type type) {
+    this.type = type;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  public RosterEntryDto getEntry() {
+    return entry;
+  }
+
+  public void setEntry(RosterEntryDto entry) {
+    this.entry = entry;
+  }
+}
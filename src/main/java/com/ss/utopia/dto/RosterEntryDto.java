@@ -0,0 +1,63 @@
+package com.ss.utopia.dto;
+
+import java.util.Date;
+
+public class RosterEntryDto {
+  private String conversationId;
+  private String displayName;
+  private long lastSequence;
+  private Date lastMessageAt;
+  private String lastMessagePreview;
+
+  public RosterEntryDto() {
+  }
+
+  public RosterEntryDto(String conversationId, String displayName, long lastSequence, Date lastMessageAt,
+                        String lastMessagePreview) {
+    this.conversationId = conversationId;
+    this.displayName = displayName;
+    this.lastSequence = lastSequence;
+    this.lastMessageAt = lastMessageAt;
+    this.lastMessagePreview = lastMessagePreview;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public void setConversationId(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public String getDisplayName() {
+    return displayName;
+  }
+
+  public void setDisplayName(String displayName) {
+    this.displayName = displayName;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public void setLastSequence(long lastSequence) {
+    this.lastSequence = lastSequence;
+  }
+
+  public Date getLastMessageAt() {
+    return lastMessageAt;
+  }
+
+  public void setLastMessageAt(Date lastMessageAt) {
+    this.lastMessageAt = lastMessageAt;
+  }
+
+  public String getLastMessagePreview() {
+    return lastMessagePreview;
+  }
+
+  public void setLastMessagePreview(String lastMessagePreview) {
+    this.lastMessagePreview = lastMessagePreview;
+  }
+}
@@ -0,0 +1,36 @@
+package com.ss.utopia.dto;
+
+import java.util.List;
+
+/**
+ * Every open conversation at a given roster version.
+ * Deltas with a version lower or equal to the snapshot version are already part of it.
+ */
+public class RosterSnapshotDto {
+  private long version;
+  private List<RosterEntryDto> entries;
+
+  public RosterSnapshotDto() {
+  }
+
+  public RosterSnapshotDto(long version, List<RosterEntryDto> entries) {
+    this.version = version;
+    this.entries = entries;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  public List<RosterEntryDto> getEntries() {
+    return entries;
+  }
+
+  public void setEntries(List<RosterEntryDto> entries) {
+    this.entries = entries;
+  }
+}
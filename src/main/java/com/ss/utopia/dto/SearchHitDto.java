@@ -0,0 +1,32 @@
+package com.ss.utopia.dto;
+
+import com.ss.utopia.model.ChatOutMessage;
+
+public class SearchHitDto {
+  private String conversationId;
+  private ChatOutMessage message;
+
+  public SearchHitDto() {
+  }
+
+  public SearchHitDto(String conversationId, ChatOutMessage message) {
+    this.conversationId = conversationId;
+    this.message = message;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public void setConversationId(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public ChatOutMessage getMessage() {
+    return message;
+  }
+
+  public void setMessage(ChatOutMessage message) {
+    this.message = message;
+  }
+}
@@ -0,0 +1,32 @@
+package com.ss.utopia.dto;
+
+import java.util.List;
+
+public class SearchPageDto {
+  private List<SearchHitDto> hits;
+  private Long nextCursor;
+
+  public SearchPageDto() {
+  }
+
+  public SearchPageDto(List<SearchHitDto> hits, Long nextCursor) {
+    this.hits = hits;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<SearchHitDto> getHits() {
+    return hits;
+  }
+
+  public void setHits(List<SearchHitDto> hits) {
+    this.hits = hits;
+  }
+
+  public Long getNextCursor() {
+    return nextCursor;
+  }
+
+  public void setNextCursor(Long nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+}
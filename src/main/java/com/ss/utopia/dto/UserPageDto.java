@@ -0,0 +1,32 @@
+package com.ss.utopia.dto;
+
+import java.util.List;
+
+public class UserPageDto {
+  private List<UserSummaryDto> users;
+  private Long nextCursor;
+
+  public UserPageDto() {
+  }
+
+  public UserPageDto(List<UserSummaryDto> users, Long nextCursor) {
+    this.users = users;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<UserSummaryDto> getUsers() {
+    return users;
+  }
+
+  public void setUsers(List<UserSummaryDto> users) {
+    this.users = users;
+  }
+
+  public Long getNextCursor() {
+    return nextCursor;
+  }
+
+  public void setNextCursor(Long nextCursor) {
+    this.nextCursor = nextCursor;
+  }
+}
@@ -1,20 +1,170 @@
 package com.ss.utopia.event;
 
+import com.ss.utopia.dto.PresenceDeltaDto;
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.service.ChatService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
 import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 
+import javax.annotation.PreDestroy;
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Presence registry of the STOMP sessions.
+ * Users are keyed by principal name; guests have no principal and become present once a join binds their
+ * session to their conversation. A user with several sessions is online until the last one disconnects.
+ * Every online/offline transition is broadcast to {@link #TOPIC} as a versioned delta.
+ * Only admin sessions may subscribe to the topic, see {@code chat.subscribe.admin-only}.
+ * A guest conversation whose sessions all left is closed after the grace period unless the guest comes back;
+ * the grace timers live on one hashed timing wheel however many sessions there are.
+ */
 @Service
 public class ChatEventListener {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChatEventListener.class);
+  public static final String TOPIC = "/topic/presence";
+
+  private final ChatService chatService;
+  private final ChatBroker chatBroker;
+  private final long guestGraceInMilliseconds;
+  private final HashedWheelTimer timer;
+  private final Map<String, String> sessionOwners = new ConcurrentHashMap<>();
+  private final Map<String, Presence> presences = new ConcurrentHashMap<>();
+  private final Map<String, HashedWheelTimer.Timeout> graceTimers = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private final Counter abandoned;
+
+  @Autowired
+  public ChatEventListener(ChatService chatService,
+                           ChatBroker chatBroker,
+                           @Value("${chat.presence.guest-grace}") long guestGraceInMilliseconds,
+                           @Value("${chat.presence.tick}") long tickInMilliseconds,
+                           @Value("${chat.presence.wheel-size}") int wheelSize,
+                           MeterRegistry meterRegistry) {
+    this.chatService = chatService;
+    this.chatBroker = chatBroker;
+    this.guestGraceInMilliseconds = guestGraceInMilliseconds;
+    this.timer = new HashedWheelTimer("presence-timer", tickInMilliseconds, TimeUnit.MILLISECONDS, wheelSize);
+    this.abandoned = Counter.builder("chat.presence.abandoned")
+      .description("Guest conversations closed after their guest left").register(meterRegistry);
+    Gauge.builder("chat.presence.online", presences, Map::size)
+      .description("Users and guests with at least one session").register(meterRegistry);
+    Gauge.builder("chat.presence.sessions", sessionOwners, Map::size)
+      .description("Sessions bound to a user or guest").register(meterRegistry);
+    Gauge.builder("chat.presence.timers", timer, HashedWheelTimer::pending)
+      .description("Pending guest grace timers").register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void stop() {
+    timer.stop();
+  }
 
   @EventListener
-  private void handleSessionConnected(SessionConnectEvent event) {
-    System.out.println("connected");
+  public void handleSessionConnected(SessionConnectedEvent event) {
+    final Principal user = event.getUser();
+    if (null != user)
+      bind(SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders()), user.getName(), false);
   }
 
   @EventListener
-  private void handleSessionDisconnected(SessionDisconnectEvent event) {
-    System.out.println("disconnected");
+  public void handleSessionDisconnected(SessionDisconnectEvent event) {
+    unbind(event.getSessionId());
+  }
+
+  /**
+   * Marks the guest of the conversation present on the session that joined it.
+   */
+  public void bindGuest(String sessionId, String conversationId) {
+    if (null != sessionId && null != conversationId)
+      bind(sessionId, conversationId, true);
+  }
+
+  public boolean isOnline(String name) {
+    return presences.containsKey(name);
+  }
+
+  public Set<String> getOnline() {
+    return presences.keySet();
+  }
+
+  void bind(String sessionId, String name, boolean guest) {
+    if (null != sessionOwners.putIfAbsent(sessionId, name))
+      return;
+    final boolean[] cameOnline = new boolean[1];
+    presences.compute(name, (key, presence) -> {
+      if (null == presence) {
+        presence = new Presence(guest);
+        cameOnline[0] = true;
+      }
+      presence.sessions.add(sessionId);
+      return presence;
+    });
+    final HashedWheelTimer.Timeout grace = graceTimers.remove(name);
+    if (null != grace)
+      grace.cancel();
+    if (cameOnline[0])
+      publish(PresenceDeltaDto.Type.ONLINE, name, guest);
+  }
+
+  void unbind(String sessionId) {
+    final String name = sessionOwners.remove(sessionId);
+    if (null == name)
+      return;
+    final Presence[] wentOffline = new Presence[1];
+    presences.computeIfPresent(name, (key, presence) -> {
+      presence.sessions.remove(sessionId);
+      if (!presence.sessions.isEmpty())
+        return presence;
+      wentOffline[0] = presence;
+      return null;
+    });
+    if (null == wentOffline[0])
+      return;
+    publish(PresenceDeltaDto.Type.OFFLINE, name, wentOffline[0].guest);
+    if (wentOffline[0].guest)
+      scheduleAbandon(name);
+  }
+
+  private void scheduleAbandon(String conversationId) {
+    final HashedWheelTimer.Timeout[] scheduled = new HashedWheelTimer.Timeout[1];
+    scheduled[0] = timer.schedule(() -> {
+      if (!graceTimers.remove(conversationId, scheduled[0]) || presences.containsKey(conversationId)
+        || !chatService.hasConversation(conversationId))
+        return;
+      LOGGER.info("Closing conversation {} abandoned by its guest", conversationId);
+      abandoned.increment();
+      chatService.closeConversation(conversationId, "abandoned");
+    }, guestGraceInMilliseconds, TimeUnit.MILLISECONDS);
+    final HashedWheelTimer.Timeout previous = graceTimers.put(conversationId, scheduled[0]);
+    if (null != previous)
+      previous.cancel();
+  }
+
+  private void publish(PresenceDeltaDto.Type type, String name, boolean guest) {
+    chatBroker.broadcast(TOPIC, new PresenceDeltaDto(type, version.incrementAndGet(), name, guest));
+  }
+
+  private static class Presence {
+    private final boolean guest;
+    private final Set<String> sessions = ConcurrentHashMap.newKeySet();
+
+    private Presence(boolean guest) {
+      this.guest = guest;
+    }
   }
 }
@@ -0,0 +1,31 @@
+package com.ss.utopia.event;
+
+import com.ss.utopia.model.ChatOutMessage;
+
+/**
+ * Published synchronously by ChatService after a message has been added to a conversation.
+ * Listeners run on the inbound message thread, so they must hand off any slow work.
+ */
+public class ChatMessageAddedEvent {
+  private final String conversationId;
+  private final ChatOutMessage message;
+  private final long addedAt;
+
+  public ChatMessageAddedEvent(String conversationId, ChatOutMessage message) {
+    this.conversationId = conversationId;
+    this.message = message;
+    this.addedAt = System.currentTimeMillis();
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public ChatOutMessage getMessage() {
+    return message;
+  }
+
+  public long getAddedAt() {
+    return addedAt;
+  }
+}
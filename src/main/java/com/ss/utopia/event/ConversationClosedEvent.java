@@ -0,0 +1,22 @@
+package com.ss.utopia.event;
+
+/**
+ * Published when a conversation is removed from memory, either explicitly or by an eviction policy.
+ */
+public class ConversationClosedEvent {
+  private final String conversationId;
+  private final String reason;
+
+  public ConversationClosedEvent(String conversationId, String reason) {
+    this.conversationId = conversationId;
+    this.reason = reason;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+}
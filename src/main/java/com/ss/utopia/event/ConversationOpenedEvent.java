@@ -0,0 +1,13 @@
+package com.ss.utopia.event;
+
+public class ConversationOpenedEvent {
+  private final String conversationId;
+
+  public ConversationOpenedEvent(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+}
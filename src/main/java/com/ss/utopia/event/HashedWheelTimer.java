@@ -0,0 +1,133 @@
+package com.ss.utopia.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel: timeouts are hashed by their deadline tick into a fixed ring of buckets and
+ * one worker thread advances a bucket per tick, so any number of pending timeouts costs one thread and
+ * O(1) per schedule or cancel. Timeouts fire up to one tick late.
+ * New timeouts are handed to the worker through a lock-free queue; only the worker touches the buckets.
+ */
+public class HashedWheelTimer {
+  private static final Logger LOGGER = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+  private final long tickNanos;
+  private final Queue<Timeout>[] wheel;
+  private final int mask;
+  private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pending = new AtomicInteger();
+  private final Thread worker;
+  private final long startTime;
+  private volatile boolean running = true;
+
+  @SuppressWarnings("unchecked")
+  public HashedWheelTimer(String name, long tick, TimeUnit unit, int wheelSize) {
+    final int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+    this.tickNanos = unit.toNanos(tick);
+    this.wheel = new Queue[size];
+    for (int i = 0; i < size; i++)
+      wheel[i] = new ArrayDeque<>();
+    this.mask = size - 1;
+    this.startTime = System.nanoTime();
+    this.worker = new Thread(this::run, name);
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+    final Timeout timeout = new Timeout(task, System.nanoTime() - startTime + unit.toNanos(delay));
+    pending.incrementAndGet();
+    added.add(timeout);
+    return timeout;
+  }
+
+  public int pending() {
+    return pending.get();
+  }
+
+  public void stop() {
+    running = false;
+    worker.interrupt();
+  }
+
+  private void run() {
+    long tick = 0;
+    while (running) {
+      final long deadline = tickNanos * (tick + 1);
+      final long sleep = deadline - (System.nanoTime() - startTime);
+      if (sleep > 0) {
+        try {
+          TimeUnit.NANOSECONDS.sleep(sleep);
+        } catch (InterruptedException e) {
+          if (!running)
+            return;
+        }
+      }
+      transferAdded(tick);
+      expire(wheel[(int) (tick & mask)], deadline);
+      tick++;
+    }
+  }
+
+  private void transferAdded(long currentTick) {
+    Timeout timeout;
+    while (null != (timeout = added.poll())) {
+      if (timeout.cancelled) {
+        pending.decrementAndGet();
+        continue;
+      }
+      final long ticks = Math.max(currentTick, timeout.deadline / tickNanos);
+      timeout.remainingRounds = (ticks - currentTick) / wheel.length;
+      wheel[(int) (ticks & mask)].add(timeout);
+    }
+  }
+
+  private void expire(Queue<Timeout> bucket, long deadline) {
+    final Iterator<Timeout> iterator = bucket.iterator();
+    while (iterator.hasNext()) {
+      final Timeout timeout = iterator.next();
+      if (timeout.cancelled) {
+        iterator.remove();
+        pending.decrementAndGet();
+      } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+        iterator.remove();
+        pending.decrementAndGet();
+        try {
+          timeout.task.run();
+        } catch (Exception e) {
+          LOGGER.error(e.getMessage());
+        }
+      } else {
+        timeout.remainingRounds--;
+      }
+    }
+  }
+
+  public static class Timeout {
+    private final Runnable task;
+    private final long deadline;
+    private long remainingRounds;
+    private volatile boolean cancelled;
+
+    private Timeout(Runnable task, long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    public void cancel() {
+      cancelled = true;
+    }
+
+    public boolean isCancelled() {
+      return cancelled;
+    }
+  }
+}
@@ -0,0 +1,329 @@
+package com.ss.utopia.journal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Local append only journal of every chat message, used to rebuild the conversations after a restart.
+ * Messages are appended with a global sequence number to memory mapped segments that roll once full.
+ * A background compaction folds closed segments into a snapshot that only keeps live data,
+ * the last {@code chat.journal.retained-per-conversation} messages of conversations active within
+ * {@code chat.journal.retention}, so replay time depends on live data instead of everything ever written.
+ * Closing a conversation, explicitly or by eviction, is journaled as well, so neither replay nor
+ * compaction brings it back.
+ * Replay loads the latest snapshot and then the segments written after it. Messages come back with the
+ * conversation sequence they were journaled with, and in a cluster only conversations this node owns are restored.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.journal.enabled", havingValue = "true")
+public class ChatJournal {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChatJournal.class);
+  private static final String SNAPSHOT_PREFIX = "snapshot-";
+  private static final String SNAPSHOT_SUFFIX = ".json";
+
+  private final ChatService chatService;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final Path directory;
+  private final int segmentBytes;
+  private final FsyncPolicy fsyncPolicy;
+  private final int fsyncBatchSize;
+  private final int retainedPerConversation;
+  private final long retentionInMilliseconds;
+  private final Counter appends;
+  private final Counter rejected;
+  private final Timer fsyncTimer;
+  private final Timer compactionTimer;
+
+  private final Object lock = new Object();
+  private final List<JournalSegment> closedSegments = new ArrayList<>();
+  private JournalSegment active;
+  private long sequence;
+  private int unsyncedAppends;
+
+  @Autowired
+  public ChatJournal(ChatService chatService,
+                     MeterRegistry meterRegistry,
+                     @Value("${chat.journal.directory}") String directory,
+                     @Value("${chat.journal.segment-bytes}") int segmentBytes,
+                     @Value("${chat.journal.fsync-policy}") FsyncPolicy fsyncPolicy,
+                     @Value("${chat.journal.fsync-batch-size}") int fsyncBatchSize,
+                     @Value("${chat.journal.retained-per-conversation}") int retainedPerConversation,
+                     @Value("${chat.journal.retention}") long retentionInMilliseconds) {
+    this.chatService = chatService;
+    this.directory = Paths.get(directory);
+    this.segmentBytes = segmentBytes;
+    this.fsyncPolicy = fsyncPolicy;
+    this.fsyncBatchSize = fsyncBatchSize;
+    this.retainedPerConversation = retainedPerConversation;
+    this.retentionInMilliseconds = retentionInMilliseconds;
+    this.appends = Counter.builder("chat.journal.appends")
+      .description("Chat messages appended to the journal").register(meterRegistry);
+    this.rejected = Counter.builder("chat.journal.rejected")
+      .description("Chat messages that could not be journaled").register(meterRegistry);
+    this.fsyncTimer = Timer.builder("chat.journal.fsync")
+      .description("Time spent forcing the active segment to disk").register(meterRegistry);
+    this.compactionTimer = Timer.builder("chat.journal.compaction")
+      .description("Time spent folding closed segments into a snapshot").register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void open() throws IOException {
+    Files.createDirectories(directory);
+    final long started = System.currentTimeMillis();
+    final JournalSnapshot snapshot = loadLatestSnapshot();
+    final Map<String, List<ChatOutMessage>> conversations = new LinkedHashMap<>();
+    snapshot.getConversations().forEach((conversationId, messages) ->
+      conversations.put(conversationId, new ArrayList<>(messages)));
+    sequence = snapshot.getLastSequence();
+    int replayed = 0;
+    for (Path file : listFiles(JournalSegment::isSegment)) {
+      final JournalSegment segment = JournalSegment.open(file);
+      if (segment.isEmpty()) {
+        segment.close();
+        Files.delete(file);
+        continue;
+      }
+      final int[] count = new int[1];
+      segment.read(snapshot.getLastSequence(), (recordSequence, payload) -> {
+        final JournalEntry entry = readEntry(payload);
+        if (null == entry)
+          return;
+        if (entry.isClosed())
+          conversations.remove(entry.getConversationId());
+        else
+          conversations.computeIfAbsent(entry.getConversationId(), id -> new ArrayList<>()).add(entry.getMessage());
+        count[0]++;
+      });
+      replayed += count[0];
+      sequence = Math.max(sequence, segment.getLastSequence());
+      closedSegments.add(segment);
+    }
+    // a journal written before the cluster changed may hold conversations now owned by another node
+    conversations.forEach((conversationId, messages) -> {
+      if (chatService.isLocal(conversationId))
+        messages.forEach(message -> chatService.restoreMessage(conversationId, message));
+    });
+    active = JournalSegment.create(directory, sequence + 1, segmentBytes);
+    LOGGER.info("Replayed chat journal up to sequence {} ({} records after the snapshot) in {} ms",
+      sequence, replayed, System.currentTimeMillis() - started);
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    synchronized (lock) {
+      active.close();
+      for (JournalSegment segment : closedSegments)
+        segment.close();
+    }
+  }
+
+  @EventListener
+  public void onMessageAdded(ChatMessageAddedEvent event) {
+    append(new JournalEntry(event.getConversationId(), event.getAddedAt(), event.getMessage()));
+  }
+
+  @EventListener
+  public void onConversationClosed(ConversationClosedEvent event) {
+    append(JournalEntry.closed(event.getConversationId(), System.currentTimeMillis()));
+  }
+
+  private void append(JournalEntry entry) {
+    final byte[] payload;
+    try {
+      payload = objectMapper.writeValueAsBytes(entry);
+    } catch (JsonProcessingException e) {
+      rejected.increment();
+      LOGGER.error("Failed to serialize chat message for the journal: {}", e.getMessage());
+      return;
+    }
+    if (JournalSegment.HEADER_BYTES + payload.length > segmentBytes) {
+      rejected.increment();
+      LOGGER.error("Chat message of {} bytes does not fit in a journal segment", payload.length);
+      return;
+    }
+    synchronized (lock) {
+      final long next = sequence + 1;
+      try {
+        if (!active.append(next, payload)) {
+          roll(next);
+          active.append(next, payload);
+        }
+      } catch (IOException e) {
+        rejected.increment();
+        LOGGER.error("Failed to roll the chat journal: {}", e.getMessage());
+        return;
+      }
+      sequence = next;
+      appends.increment();
+      if (FsyncPolicy.PER_MESSAGE == fsyncPolicy
+        || (FsyncPolicy.PER_BATCH == fsyncPolicy && ++unsyncedAppends >= fsyncBatchSize))
+        force();
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${chat.journal.fsync-interval}")
+  public void forcePeriodically() {
+    if (FsyncPolicy.PER_MESSAGE == fsyncPolicy)
+      return;
+    synchronized (lock) {
+      force();
+    }
+  }
+
+  /**
+   * Rolls the active segment and folds every closed segment into a new snapshot.
+   * Closed segments are immutable, so the expensive part runs without holding the append lock.
+   */
+  @Scheduled(fixedDelayString = "${chat.journal.snapshot-interval}", initialDelayString = "${chat.journal.snapshot-interval}")
+  public void compact() {
+    compactionTimer.record(() -> {
+      final List<JournalSegment> segments;
+      synchronized (lock) {
+        try {
+          if (!active.isEmpty())
+            roll(sequence + 1);
+        } catch (IOException e) {
+          LOGGER.error("Failed to roll the chat journal before compaction: {}", e.getMessage());
+          return;
+        }
+        segments = new ArrayList<>(closedSegments);
+      }
+      if (segments.isEmpty())
+        return;
+      try {
+        final JournalSnapshot previous = loadLatestSnapshot();
+        final JournalSnapshot snapshot = fold(previous, segments);
+        writeSnapshot(snapshot);
+        synchronized (lock) {
+          closedSegments.removeAll(segments);
+        }
+        for (JournalSegment segment : segments) {
+          segment.close();
+          Files.deleteIfExists(segment.getPath());
+        }
+        LOGGER.info("Compacted {} journal segments into snapshot {}", segments.size(), snapshot.getLastSequence());
+      } catch (IOException e) {
+        LOGGER.error("Failed to compact the chat journal: {}", e.getMessage());
+      }
+    });
+  }
+
+  private JournalSnapshot fold(JournalSnapshot previous, List<JournalSegment> segments) {
+    final Map<String, Deque<ChatOutMessage>> conversations = new LinkedHashMap<>();
+    final Map<String, Long> lastActivity = new LinkedHashMap<>(previous.getLastActivity());
+    previous.getConversations().forEach((id, messages) -> conversations.put(id, new ArrayDeque<>(messages)));
+    final long[] lastSequence = {previous.getLastSequence()};
+    for (JournalSegment segment : segments) {
+      segment.read(previous.getLastSequence(), (recordSequence, payload) -> {
+        final JournalEntry entry = readEntry(payload);
+        if (null == entry)
+          return;
+        if (entry.isClosed()) {
+          conversations.remove(entry.getConversationId());
+          lastActivity.remove(entry.getConversationId());
+          return;
+        }
+        final Deque<ChatOutMessage> messages =
+          conversations.computeIfAbsent(entry.getConversationId(), id -> new ArrayDeque<>());
+        messages.addLast(entry.getMessage());
+        if (messages.size() > retainedPerConversation)
+          messages.removeFirst();
+        lastActivity.put(entry.getConversationId(), entry.getAppendedAt());
+      });
+      lastSequence[0] = Math.max(lastSequence[0], segment.getLastSequence());
+    }
+    final long expiredBefore = System.currentTimeMillis() - retentionInMilliseconds;
+    final JournalSnapshot snapshot = new JournalSnapshot();
+    snapshot.setLastSequence(lastSequence[0]);
+    conversations.forEach((id, messages) -> {
+      final long activity = lastActivity.getOrDefault(id, 0L);
+      if (activity >= expiredBefore) {
+        snapshot.getConversations().put(id, new ArrayList<>(messages));
+        snapshot.getLastActivity().put(id, activity);
+      }
+    });
+    return snapshot;
+  }
+
+  private void roll(long firstSequence) throws IOException {
+    active.force();
+    closedSegments.add(active);
+    active = JournalSegment.create(directory, firstSequence, segmentBytes);
+    unsyncedAppends = 0;
+  }
+
+  private void force() {
+    fsyncTimer.record(active::force);
+    unsyncedAppends = 0;
+  }
+
+  private JournalEntry readEntry(byte[] payload) {
+    try {
+      return objectMapper.readValue(payload, JournalEntry.class);
+    } catch (IOException e) {
+      LOGGER.error("Skipping unreadable journal record: {}", e.getMessage());
+      return null;
+    }
+  }
+
+  private JournalSnapshot loadLatestSnapshot() throws IOException {
+    final List<Path> snapshots = listFiles(ChatJournal::isSnapshot);
+    if (snapshots.isEmpty())
+      return new JournalSnapshot();
+    return objectMapper.readValue(snapshots.get(snapshots.size() - 1).toFile(), JournalSnapshot.class);
+  }
+
+  private void writeSnapshot(JournalSnapshot snapshot) throws IOException {
+    final List<Path> previous = listFiles(ChatJournal::isSnapshot);
+    final Path target = directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, snapshot.getLastSequence(), SNAPSHOT_SUFFIX));
+    final Path temporary = directory.resolve(target.getFileName() + ".tmp");
+    objectMapper.writeValue(temporary.toFile(), snapshot);
+    Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    for (Path path : previous)
+      if (!path.equals(target))
+        Files.deleteIfExists(path);
+  }
+
+  private List<Path> listFiles(Predicate<Path> filter) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(filter).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static boolean isSnapshot(Path file) {
+    final String name = file.getFileName().toString();
+    return name.startsWith(SNAPSHOT_PREFIX) && name.endsWith(SNAPSHOT_SUFFIX);
+  }
+}
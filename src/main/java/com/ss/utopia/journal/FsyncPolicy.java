@@ -0,0 +1,10 @@
+package com.ss.utopia.journal;
+
+public enum FsyncPolicy {
+  /** force the segment to disk after every appended message */
+  PER_MESSAGE,
+  /** force the segment after every chat.journal.fsync-batch-size messages and on the periodic tick */
+  PER_BATCH,
+  /** force the segment only every chat.journal.fsync-interval */
+  PERIODIC
+}
@@ -0,0 +1,60 @@
+package com.ss.utopia.journal;
+
+import com.ss.utopia.model.ChatOutMessage;
+
+/**
+ * One journal record: a chat message appended to a conversation, or the close of the conversation.
+ */
+public class JournalEntry {
+  private String conversationId;
+  private long appendedAt;
+  private ChatOutMessage message;
+  private boolean closed;
+
+  public JournalEntry() {
+  }
+
+  public JournalEntry(String conversationId, long appendedAt, ChatOutMessage message) {
+    this.conversationId = conversationId;
+    this.appendedAt = appendedAt;
+    this.message = message;
+  }
+
+  public static JournalEntry closed(String conversationId, long appendedAt) {
+    final JournalEntry entry = new JournalEntry(conversationId, appendedAt, null);
+    entry.setClosed(true);
+    return entry;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public void setConversationId(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public long getAppendedAt() {
+    return appendedAt;
+  }
+
+  public void setAppendedAt(long appendedAt) {
+    this.appendedAt = appendedAt;
+  }
+
+  public ChatOutMessage getMessage() {
+    return message;
+  }
+
+  public void setMessage(ChatOutMessage message) {
+    this.message = message;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  public void setClosed(boolean closed) {
+    this.closed = closed;
+  }
+}
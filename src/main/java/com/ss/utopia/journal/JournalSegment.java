@@ -0,0 +1,130 @@
+package com.ss.utopia.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed size, memory mapped journal file.
+ * Every record is laid out as [length int][sequence long][crc32 int][payload].
+ * The length is written last so it acts as the commit marker: a record with a zero length,
+ * a length running past the end of the file or a bad checksum marks the end of the segment.
+ * Segments are only ever written by the journal lock holder, closed segments are read only.
+ */
+final class JournalSegment implements Closeable {
+  static final int HEADER_BYTES = 16;
+  private static final String PREFIX = "segment-";
+  private static final String SUFFIX = ".log";
+
+  private final Path path;
+  private final FileChannel channel;
+  private final MappedByteBuffer buffer;
+  private int position;
+  private long lastSequence;
+  private boolean dirty;
+
+  private JournalSegment(Path path, int size) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+  }
+
+  static JournalSegment create(Path directory, long firstSequence, int size) throws IOException {
+    return new JournalSegment(directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX)), size);
+  }
+
+  static JournalSegment open(Path file) throws IOException {
+    final JournalSegment segment = new JournalSegment(file, (int) file.toFile().length());
+    segment.position = segment.read(Long.MIN_VALUE, (sequence, payload) -> segment.lastSequence = sequence);
+    return segment;
+  }
+
+  static boolean isSegment(Path file) {
+    final String name = file.getFileName().toString();
+    return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+  }
+
+  /**
+   * @return false if the record does not fit in the remaining space
+   */
+  boolean append(long sequence, byte[] payload) {
+    if ((long) position + HEADER_BYTES + payload.length > buffer.capacity())
+      return false;
+    final CRC32 crc = new CRC32();
+    crc.update(payload);
+    buffer.putLong(position + 4, sequence);
+    buffer.putInt(position + 12, (int) crc.getValue());
+    final ByteBuffer body = buffer.duplicate();
+    body.position(position + HEADER_BYTES);
+    body.put(payload);
+    buffer.putInt(position, payload.length);
+    position += HEADER_BYTES + payload.length;
+    lastSequence = sequence;
+    dirty = true;
+    return true;
+  }
+
+  /**
+   * Calls the consumer for every valid record with a sequence greater than afterSequence.
+   *
+   * @return the offset right after the last valid record
+   */
+  int read(long afterSequence, RecordConsumer consumer) {
+    final ByteBuffer view = buffer.duplicate();
+    final int capacity = view.capacity();
+    int offset = 0;
+    while (offset + HEADER_BYTES <= capacity) {
+      final int length = view.getInt(offset);
+      if (length <= 0 || (long) offset + HEADER_BYTES + length > capacity)
+        break;
+      final long sequence = view.getLong(offset + 4);
+      final int checksum = view.getInt(offset + 12);
+      final byte[] payload = new byte[length];
+      view.position(offset + HEADER_BYTES);
+      view.get(payload);
+      final CRC32 crc = new CRC32();
+      crc.update(payload);
+      if ((int) crc.getValue() != checksum)
+        break;
+      if (sequence > afterSequence)
+        consumer.accept(sequence, payload);
+      offset += HEADER_BYTES + length;
+    }
+    return offset;
+  }
+
+  void force() {
+    if (dirty) {
+      buffer.force();
+      dirty = false;
+    }
+  }
+
+  boolean isEmpty() {
+    return 0 == position;
+  }
+
+  long getLastSequence() {
+    return lastSequence;
+  }
+
+  Path getPath() {
+    return path;
+  }
+
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  @FunctionalInterface
+  interface RecordConsumer {
+    void accept(long sequence, byte[] payload);
+  }
+}
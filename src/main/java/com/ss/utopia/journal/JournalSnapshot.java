@@ -0,0 +1,40 @@
+package com.ss.utopia.journal;
+
+import com.ss.utopia.model.ChatOutMessage;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compacted state of the journal up to and including {@link #getLastSequence()}.
+ */
+public class JournalSnapshot {
+  private long lastSequence;
+  private Map<String, List<ChatOutMessage>> conversations = new LinkedHashMap<>();
+  private Map<String, Long> lastActivity = new LinkedHashMap<>();
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public void setLastSequence(long lastSequence) {
+    this.lastSequence = lastSequence;
+  }
+
+  public Map<String, List<ChatOutMessage>> getConversations() {
+    return conversations;
+  }
+
+  public void setConversations(Map<String, List<ChatOutMessage>> conversations) {
+    this.conversations = conversations;
+  }
+
+  public Map<String, Long> getLastActivity() {
+    return lastActivity;
+  }
+
+  public void setLastActivity(Map<String, Long> lastActivity) {
+    this.lastActivity = lastActivity;
+  }
+}
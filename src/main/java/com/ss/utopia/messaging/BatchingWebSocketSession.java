@@ -0,0 +1,240 @@
+package com.ss.utopia.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers the text frames sent to one session and writes them as a single WebSocket message
+ * once the flush window elapses or the buffer reaches its size threshold.
+ * STOMP frames are NUL terminated, so several of them concatenated in one message are still parsed frame by frame.
+ * Binary messages close the current batch and queue behind it, so every message leaves in the order it was sent.
+ * Senders only append to the buffer and never wait for the network; writes run on the writer pool of
+ * OutboundBatching, and the SlowConsumerPolicy decides what happens when the client stops reading.
+ */
+public class BatchingWebSocketSession extends WebSocketSessionDecorator {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BatchingWebSocketSession.class);
+
+  private final OutboundBatching batching;
+  private final SlowConsumerPolicy policy;
+  private final Object lock = new Object();
+  private final Deque<Batch> outbox = new ArrayDeque<>();
+  private StringBuilder buffer = new StringBuilder();
+  private int frames;
+  private long firstQueuedAt;
+  private int outboxBytes;
+  private boolean flushScheduled;
+  private boolean writing;
+  private volatile CloseStatus closeStatus;
+  private volatile int pendingBytes;
+  private volatile long writeStartedAt;
+  private volatile boolean closed;
+
+  public BatchingWebSocketSession(WebSocketSession delegate, OutboundBatching batching, SlowConsumerPolicy policy) {
+    super(delegate);
+    this.batching = batching;
+    this.policy = policy;
+  }
+
+  @Override
+  public void sendMessage(WebSocketMessage<?> message) throws IOException {
+    if (closed || null != closeStatus)
+      return;
+    if (!(message instanceof TextMessage)) {
+      final boolean evict;
+      synchronized (lock) {
+        evict = pendingBytes + message.getPayloadLength() > policy.getHardLimit();
+        if (!evict) {
+          seal();
+          outbox.add(new Batch(message, 0, System.nanoTime()));
+          outboxBytes += message.getPayloadLength();
+          pendingBytes = outboxBytes;
+        }
+      }
+      if (evict)
+        evict("buffer");
+      else
+        batching.write(this::flush);
+      return;
+    }
+    final String frame = ((TextMessage) message).getPayload();
+    String evictReason = null;
+    boolean flushNow = false;
+    synchronized (lock) {
+      final int pending = outboxBytes + buffer.length();
+      if (policy.isSendTooSlow(writeStartedAt, System.nanoTime()))
+        evictReason = "send-time";
+      else if (pending + frame.length() > policy.getHardLimit())
+        evictReason = "buffer";
+      else if (pending >= policy.getSoftLimit() && policy.isDroppable(frame)) {
+        policy.dropped();
+        return;
+      } else {
+        if (0 == frames)
+          firstQueuedAt = System.nanoTime();
+        buffer.append(frame);
+        frames++;
+        pendingBytes = pending + frame.length();
+        if (buffer.length() >= batching.getMaxBytes() || batching.isImmediate())
+          flushNow = true;
+        else if (!flushScheduled) {
+          flushScheduled = true;
+          batching.schedule(this::flush);
+        }
+      }
+    }
+    if (null != evictReason)
+      evict(evictReason);
+    else if (flushNow)
+      batching.write(this::flush);
+  }
+
+  /**
+   * Writes what is still queued and closes the session after it. When another thread is writing, the close is left
+   * to that thread, which closes the session once it has written everything queued before the close.
+   */
+  @Override
+  public void close(CloseStatus status) throws IOException {
+    synchronized (lock) {
+      if (closed || null != closeStatus)
+        return;
+      closeStatus = status;
+      if (writing)
+        return;
+    }
+    flush();
+  }
+
+  int getPendingBytes() {
+    return pendingBytes;
+  }
+
+  /**
+   * Evicts the session when its current write has been blocked for longer than the send time limit,
+   * even if nothing new is sent to it. Called periodically by OutboundBatching.
+   */
+  void evictIfStalled(long now) {
+    if (policy.isSendTooSlow(writeStartedAt, now))
+      evict("send-time");
+  }
+
+  /**
+   * Writes everything queued so far, in order. Only one thread writes at a time; a flush that finds a write in progress
+   * returns at once and the writing thread picks the new messages up when it is done.
+   */
+  void flush() {
+    final List<Batch> batches;
+    synchronized (lock) {
+      flushScheduled = false;
+      if (writing || closed)
+        return;
+      seal();
+      if (outbox.isEmpty() && null == closeStatus)
+        return;
+      writing = true;
+      batches = new ArrayList<>(outbox);
+      outbox.clear();
+      outboxBytes = 0;
+    }
+    try {
+      for (Batch batch : batches) {
+        if (!getDelegate().isOpen())
+          break;
+        final long startedAt = System.nanoTime();
+        writeStartedAt = startedAt;
+        getDelegate().sendMessage(batch.message);
+        if (0 < batch.frames)
+          batching.recordBatch(batch.frames, batch.message.getPayloadLength(), startedAt - batch.queuedAt,
+            TimeUnit.NANOSECONDS);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Failed to flush session {}: {}", getId(), e.getMessage());
+    } finally {
+      writeStartedAt = 0;
+      final boolean writeNow;
+      final CloseStatus closeNow;
+      synchronized (lock) {
+        writing = false;
+        if (null != closeStatus && !closed)
+          seal();
+        pendingBytes = outboxBytes + buffer.length();
+        writeNow = !outbox.isEmpty() && !closed;
+        closeNow = (writeNow || closed) ? null : closeStatus;
+        if (null != closeNow)
+          closed = true;
+        if (!writeNow && 0 < frames && !flushScheduled && !closed) {
+          flushScheduled = true;
+          batching.schedule(this::flush);
+        }
+      }
+      if (writeNow)
+        batching.write(this::flush);
+      else if (null != closeNow)
+        closeDelegate(closeNow);
+    }
+  }
+
+  /**
+   * Closes the text batch being buffered and queues it in the outbox. Called with the lock held.
+   */
+  private void seal() {
+    if (0 == frames)
+      return;
+    final TextMessage message = new TextMessage(buffer.toString());
+    outbox.add(new Batch(message, frames, firstQueuedAt));
+    outboxBytes += message.getPayloadLength();
+    if (buffer.capacity() > 4 * batching.getMaxBytes())
+      buffer = new StringBuilder();
+    else
+      buffer.setLength(0);
+    frames = 0;
+  }
+
+  private void evict(String reason) {
+    final int pending;
+    synchronized (lock) {
+      if (closed)
+        return;
+      closed = true;
+      pending = outboxBytes + buffer.length();
+      buffer = new StringBuilder();
+      frames = 0;
+      outbox.clear();
+      outboxBytes = 0;
+      pendingBytes = 0;
+    }
+    policy.evicted(getId(), getPrincipal(), reason, pending);
+    closeDelegate(CloseStatus.SESSION_NOT_RELIABLE);
+  }
+
+  private void closeDelegate(CloseStatus status) {
+    try {
+      getDelegate().close(status);
+    } catch (IOException e) {
+      LOGGER.debug("Failed to close session {}: {}", getId(), e.getMessage());
+    }
+  }
+
+  private static final class Batch {
+    private final WebSocketMessage<?> message;
+    private final int frames;
+    private final long queuedAt;
+
+    private Batch(WebSocketMessage<?> message, int frames, long queuedAt) {
+      this.message = message;
+      this.frames = frames;
+      this.queuedAt = queuedAt;
+    }
+  }
+}
@@ -0,0 +1,223 @@
+package com.ss.utopia.messaging;
+
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.model.ChatInMessage;
+import com.ss.utopia.model.ChatOutMessage;
+import org.springframework.util.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Schema based binary encoding of the chat payloads, for clients that pay per byte.
+ * A payload starts with a type tag and a bit mask of the fields present, followed by those fields in schema order:
+ * strings as a varint length and UTF-8 bytes, numbers and timestamps (epoch milliseconds) as varints.
+ * Field names are never sent. New fields may only be appended, so older clients keep decoding the known prefix.
+ */
+public final class BinaryChatCodec {
+  /**
+   * Compatible with application/octet-stream, so STOMP sends it in binary WebSocket frames.
+   */
+  public static final MimeType MIME_TYPE = MimeType.valueOf("application/octet-stream;codec=utopia-chat");
+
+  static final int OUT_MESSAGE = 1;
+  static final int IN_MESSAGE = 2;
+  static final int HISTORY_PAGE = 3;
+
+  private BinaryChatCodec() {
+  }
+
+  public static boolean supports(Class<?> type) {
+    return ChatOutMessage.class == type || ChatInMessage.class == type || ChatHistoryPageDto.class == type;
+  }
+
+  public static byte[] encode(Object payload) {
+    final Writer writer = new Writer();
+    if (payload instanceof ChatOutMessage) {
+      writer.varint(OUT_MESSAGE);
+      writeOut(writer, (ChatOutMessage) payload);
+    } else if (payload instanceof ChatInMessage) {
+      writer.varint(IN_MESSAGE);
+      writeIn(writer, (ChatInMessage) payload);
+    } else if (payload instanceof ChatHistoryPageDto) {
+      final ChatHistoryPageDto page = (ChatHistoryPageDto) payload;
+      writer.varint(HISTORY_PAGE);
+      writer.mask(page.getConversationId(), page.isHasMore() ? Boolean.TRUE : null);
+      writer.string(page.getConversationId());
+      final List<ChatOutMessage> messages = (null == page.getMessages()) ? List.of() : page.getMessages();
+      writer.varint(messages.size());
+      messages.forEach(message -> writeOut(writer, message));
+    } else {
+      throw new IllegalArgumentException("No binary encoding for " + payload.getClass().getName());
+    }
+    return writer.toByteArray();
+  }
+
+  /**
+   * Decodes what a client may send: only chat messages are accepted, so client input never reaches
+   * the decoding of server payloads.
+   */
+  public static ChatInMessage decodeInbound(byte[] bytes) {
+    final Reader reader = new Reader(bytes);
+    final int type = (int) reader.varint();
+    if (IN_MESSAGE != type)
+      throw new IllegalArgumentException("Clients may not send binary payload type " + type);
+    return readIn(reader);
+  }
+
+  public static Object decode(byte[] bytes) {
+    final Reader reader = new Reader(bytes);
+    final int type = (int) reader.varint();
+    switch (type) {
+      case OUT_MESSAGE:
+        return readOut(reader);
+      case IN_MESSAGE:
+        return readIn(reader);
+      case HISTORY_PAGE:
+        final int mask = (int) reader.varint();
+        final String conversationId = reader.string(mask, 0);
+        final int size = reader.length();
+        final List<ChatOutMessage> messages = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+          messages.add(readOut(reader));
+        return new ChatHistoryPageDto(conversationId, messages, 0 != (mask & 2));
+      default:
+        throw new IllegalArgumentException("Unknown binary payload type " + type);
+    }
+  }
+
+  private static void writeOut(Writer writer, ChatOutMessage message) {
+    writer.mask(message.getSenderId(), message.getContent(), message.getGroupName(), message.getSenderShortName(),
+      message.getSentTimestamp());
+    writer.string(message.getSenderId());
+    writer.string(message.getContent());
+    writer.string(message.getGroupName());
+    writer.string(message.getSenderShortName());
+    writer.date(message.getSentTimestamp());
+    writer.varint(message.getSequence());
+  }
+
+  private static ChatOutMessage readOut(Reader reader) {
+    final int mask = (int) reader.varint();
+    final ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId(reader.string(mask, 0));
+    message.setContent(reader.string(mask, 1));
+    message.setGroupName(reader.string(mask, 2));
+    message.setSenderShortName(reader.string(mask, 3));
+    message.setSentTimestamp(reader.date(mask, 4));
+    message.setSequence(reader.varint());
+    return message;
+  }
+
+  private static void writeIn(Writer writer, ChatInMessage message) {
+    writer.mask(message.getSenderUsername(), message.getSenderId(), message.getSenderNickname(),
+      message.getMessage(), message.getTimestamp(), message.getReceiverUsername(), message.getLastSeenSequence());
+    writer.string(message.getSenderUsername());
+    writer.string(message.getSenderId());
+    writer.string(message.getSenderNickname());
+    writer.string(message.getMessage());
+    writer.date(message.getTimestamp());
+    writer.string(message.getReceiverUsername());
+    if (null != message.getLastSeenSequence())
+      writer.varint(message.getLastSeenSequence());
+  }
+
+  private static ChatInMessage readIn(Reader reader) {
+    final int mask = (int) reader.varint();
+    final ChatInMessage message = new ChatInMessage();
+    message.setSenderUsername(reader.string(mask, 0));
+    message.setSenderId(reader.string(mask, 1));
+    message.setSenderNickname(reader.string(mask, 2));
+    message.setMessage(reader.string(mask, 3));
+    message.setTimestamp(reader.date(mask, 4));
+    message.setReceiverUsername(reader.string(mask, 5));
+    message.setLastSeenSequence((0 != (mask & (1 << 6))) ? reader.varint() : null);
+    return message;
+  }
+
+  private static class Writer extends ByteArrayOutputStream {
+    private Writer() {
+      super(64);
+    }
+
+    void mask(Object... fields) {
+      int mask = 0;
+      for (int i = 0; i < fields.length; i++)
+        if (null != fields[i])
+          mask |= 1 << i;
+      varint(mask);
+    }
+
+    void varint(long value) {
+      if (value < 0)
+        throw new IllegalArgumentException("Negative values have no binary encoding");
+      while ((value & ~0x7FL) != 0) {
+        write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      write((int) value);
+    }
+
+    void string(String value) {
+      if (null == value)
+        return;
+      final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      varint(bytes.length);
+      write(bytes, 0, bytes.length);
+    }
+
+    void date(Date value) {
+      if (null != value)
+        varint(value.getTime());
+    }
+  }
+
+  private static class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    private Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    long varint() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        if (position >= bytes.length)
+          throw new IllegalArgumentException("Truncated binary payload");
+        final byte b = bytes[position++];
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0)
+          return value;
+      }
+      throw new IllegalArgumentException("Malformed varint in binary payload");
+    }
+
+    String string(int mask, int field) {
+      if (0 == (mask & (1 << field)))
+        return null;
+      final int length = length();
+      final String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+      position += length;
+      return value;
+    }
+
+    /**
+     * Reads a string length or element count, which can never be more than the bytes left since every
+     * byte or element takes at least one.
+     */
+    int length() {
+      final long length = varint();
+      if (length < 0 || length > bytes.length - position)
+        throw new IllegalArgumentException("Truncated binary payload");
+      return (int) length;
+    }
+
+    Date date(int mask, int field) {
+      return (0 == (mask & (1 << field))) ? null : new Date(varint());
+    }
+  }
+}
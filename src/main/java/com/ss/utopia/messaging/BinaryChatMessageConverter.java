@@ -0,0 +1,35 @@
+package com.ss.utopia.messaging;
+
+import com.ss.utopia.model.ChatInMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+
+/**
+ * Converts chat payloads to and from {@link BinaryChatCodec} when the message content-type asks for it.
+ * Content types are matched strictly, so messages without one keep going to the JSON converter.
+ */
+public class BinaryChatMessageConverter extends AbstractMessageConverter {
+
+  public BinaryChatMessageConverter() {
+    super(BinaryChatCodec.MIME_TYPE);
+    setStrictContentTypeMatch(true);
+  }
+
+  @Override
+  protected boolean supports(Class<?> clazz) {
+    return BinaryChatCodec.supports(clazz);
+  }
+
+  @Override
+  protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+    if (!(message.getPayload() instanceof byte[]) || !targetClass.isAssignableFrom(ChatInMessage.class))
+      return null;
+    return BinaryChatCodec.decodeInbound((byte[]) message.getPayload());
+  }
+
+  @Override
+  protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+    return BinaryChatCodec.encode(payload);
+  }
+}
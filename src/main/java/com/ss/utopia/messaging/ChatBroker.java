@@ -0,0 +1,15 @@
+package com.ss.utopia.messaging;
+
+/**
+ * Outbound side of the chat, independent of the broker backend that delivers the frames.
+ */
+public interface ChatBroker {
+  void sendToUser(String user, String destination, Object payload);
+
+  /**
+   * Sends to a single STOMP session, used for guests that have no principal.
+   */
+  void sendToSession(String sessionId, String destination, Object payload);
+
+  void broadcast(String destination, Object payload);
+}
@@ -0,0 +1,158 @@
+package com.ss.utopia.messaging;
+
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.dto.RosterSnapshotDto;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Calls the {@code /api/cluster} endpoints of the node that owns a conversation.
+ * Nodes are reached at {@code chat.cluster.url-template} with the node id substituted for {@code {node}},
+ * and authenticate each other with the shared {@code chat.cluster.secret}.
+ * A failed call is logged and counted, and reads as "nothing there" to the caller.
+ */
+@Component
+public class ClusterClient {
+  public static final String SECRET_HEADER = "X-Cluster-Secret";
+  private static final Logger LOGGER = LoggerFactory.getLogger(ClusterClient.class);
+  private static final ParameterizedTypeReference<List<ChatOutMessage>> MESSAGES =
+    new ParameterizedTypeReference<>() {
+    };
+
+  private final RestTemplate restTemplate;
+  private final String urlTemplate;
+  private final String secret;
+  private final Timer callTimer;
+  private final Counter failed;
+
+  @Autowired
+  public ClusterClient(RestTemplateBuilder restTemplateBuilder,
+                       @Value("${chat.cluster.url-template}") String urlTemplate,
+                       @Value("${chat.cluster.secret}") String secret,
+                       @Value("${chat.cluster.timeout}") long timeoutInMilliseconds,
+                       MeterRegistry meterRegistry) {
+    this(restTemplateBuilder.setConnectTimeout(Duration.ofMillis(timeoutInMilliseconds))
+      .setReadTimeout(Duration.ofMillis(timeoutInMilliseconds)).build(), urlTemplate, secret, meterRegistry);
+  }
+
+  public ClusterClient(RestTemplate restTemplate, String urlTemplate, String secret, MeterRegistry meterRegistry) {
+    this.restTemplate = restTemplate;
+    this.urlTemplate = urlTemplate;
+    this.secret = secret;
+    this.callTimer = Timer.builder("chat.cluster.calls")
+      .description("Time spent in calls to the node owning a conversation").register(meterRegistry);
+    this.failed = Counter.builder("chat.cluster.calls.failed")
+      .description("Calls to another node that failed").register(meterRegistry);
+  }
+
+  public boolean isConfigured() {
+    return null != secret && !secret.isBlank();
+  }
+
+  public boolean openConversation(String node, String conversationId) {
+    return call(() -> exchange(HttpMethod.POST, uri(node, "/conversations/{id}/open", conversationId),
+      null, Boolean.class), false);
+  }
+
+  public boolean closeConversation(String node, String conversationId, String reason) {
+    return call(() -> exchange(HttpMethod.POST, uri(node, "/conversations/{id}/close", conversationId,
+      "reason", reason), null, Boolean.class), false);
+  }
+
+  public boolean hasConversation(String node, String conversationId) {
+    return call(() -> exchange(HttpMethod.GET, uri(node, "/conversations/{id}", conversationId),
+      null, Boolean.class), false);
+  }
+
+  /**
+   * @return the sequence the owner gave the message, or null if it was not stored
+   */
+  public Long addMessage(String node, String conversationId, ChatOutMessage message) {
+    return call(() -> exchange(HttpMethod.POST, uri(node, "/conversations/{id}/messages", conversationId),
+      message, Long.class), null);
+  }
+
+  public List<ChatOutMessage> getHistory(String node, String conversationId, Long afterSequence) {
+    final URI uri = uri(node, "/conversations/{id}/messages", conversationId, "after", afterSequence);
+    return call(() -> restTemplate.exchange(uri, HttpMethod.GET, new HttpEntity<>(headers()), MESSAGES).getBody(),
+      Collections.emptyList());
+  }
+
+  public ChatHistoryPageDto getHistoryPage(String node, String conversationId, Long before, Long after, Integer limit) {
+    return call(() -> exchange(HttpMethod.GET, uri(node, "/conversations/{id}/page", conversationId,
+      "before", before, "after", after, "limit", limit), null, ChatHistoryPageDto.class),
+      new ChatHistoryPageDto(conversationId, Collections.emptyList(), false));
+  }
+
+  public Optional<ChatOutMessage> getLastMessage(String node, String conversationId) {
+    return call(() -> {
+      try {
+        return Optional.ofNullable(exchange(HttpMethod.GET, uri(node, "/conversations/{id}/last", conversationId),
+          null, ChatOutMessage.class));
+      } catch (HttpClientErrorException.NotFound e) {
+        return Optional.<ChatOutMessage>empty();
+      }
+    }, Optional.empty());
+  }
+
+  public Optional<RosterSnapshotDto> getRoster(String node) {
+    return call(() -> Optional.ofNullable(exchange(HttpMethod.GET, uri(node, "/roster", ""), null,
+      RosterSnapshotDto.class)), Optional.empty());
+  }
+
+  private <T> T exchange(HttpMethod method, URI uri, Object body, Class<T> type) {
+    return restTemplate.exchange(uri, method, new HttpEntity<>(body, headers()), type).getBody();
+  }
+
+  private <T> T call(Supplier<T> request, T fallback) {
+    try {
+      final T result = callTimer.record(request);
+      return (null == result) ? fallback : result;
+    } catch (RestClientException e) {
+      failed.increment();
+      LOGGER.error("Cluster call failed: {}", e.getMessage());
+      return fallback;
+    }
+  }
+
+  /**
+   * @param query pairs of parameter name and value, parameters without a value are left out
+   */
+  private URI uri(String node, String path, String conversationId, Object... query) {
+    final UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(urlTemplate).path("/api/cluster" + path);
+    for (int i = 0; i < query.length; i += 2)
+      if (null != query[i + 1])
+        builder.queryParam((String) query[i], query[i + 1]);
+    return builder.buildAndExpand(Map.of("node", node, "id", conversationId)).encode().toUri();
+  }
+
+  private HttpHeaders headers() {
+    final HttpHeaders headers = new HttpHeaders();
+    headers.set(SECRET_HEADER, secret);
+    return headers;
+  }
+}
@@ -0,0 +1,48 @@
+package com.ss.utopia.messaging;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent hash ring. Every node is placed on the ring many times (virtual nodes)
+ * so keys spread evenly and adding or removing a node only moves about 1/n of the keys.
+ */
+public final class ConsistentHashRing {
+  private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+  public ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+    if (nodes.isEmpty())
+      throw new IllegalArgumentException("A hash ring needs at least one node");
+    for (String node : nodes)
+      for (int i = 0; i < virtualNodes; i++)
+        ring.put(hash(node + "#" + i), node);
+  }
+
+  public String nodeFor(String key) {
+    final Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+    return (null == entry) ? ring.firstEntry().getValue() : entry.getValue();
+  }
+
+  public Collection<String> nodes() {
+    return Collections.unmodifiableCollection(new TreeSet<>(ring.values()));
+  }
+
+  private static long hash(String key) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+      long hash = 0;
+      for (int i = 0; i < 8; i++)
+        hash = (hash << 8) | (digest[i] & 0xff);
+      return hash;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
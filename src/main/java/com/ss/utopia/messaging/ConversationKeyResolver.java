@@ -0,0 +1,76 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.ss.utopia.model.ChatInMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.io.IOException;
+import java.security.Principal;
+
+/**
+ * Resolves the conversation an inbound STOMP message belongs to, using the same rule as ChatController:
+ * admins address the customer in receiverUsername, customers are the conversation themselves (senderId).
+ * Only the two top level fields are read from JSON payloads; binary payloads are decoded. Frames without a conversation fall back to their session.
+ */
+public class ConversationKeyResolver {
+  private static final SimpleGrantedAuthority ADMIN = new SimpleGrantedAuthority("ROLE_ADMIN");
+
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  public String resolve(Message<?> message) {
+    final MessageHeaders headers = message.getHeaders();
+    if (SimpMessageType.MESSAGE == SimpMessageHeaderAccessor.getMessageType(headers)
+      && message.getPayload() instanceof byte[]) {
+      final Principal user = SimpMessageHeaderAccessor.getUser(headers);
+      final String key = BinaryChatCodec.MIME_TYPE.equals(headers.get(MessageHeaders.CONTENT_TYPE))
+        ? binaryConversationKey((byte[]) message.getPayload(), user)
+        : conversationKey((byte[]) message.getPayload(), user);
+      if (null != key)
+        return key;
+    }
+    final String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+    return (null == sessionId) ? "" : sessionId;
+  }
+
+  String conversationKey(byte[] payload, Principal user) {
+    String senderId = null;
+    String receiverUsername = null;
+    try (JsonParser parser = jsonFactory.createParser(payload)) {
+      if (JsonToken.START_OBJECT != parser.nextToken())
+        return null;
+      while (JsonToken.FIELD_NAME == parser.nextToken()) {
+        final String field = parser.getCurrentName();
+        final JsonToken value = parser.nextToken();
+        if ("senderId".equals(field) && value.isScalarValue())
+          senderId = parser.getValueAsString();
+        else if ("receiverUsername".equals(field) && value.isScalarValue())
+          receiverUsername = parser.getValueAsString();
+        else
+          parser.skipChildren();
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return isAdmin(user) ? receiverUsername : senderId;
+  }
+
+  String binaryConversationKey(byte[] payload, Principal user) {
+    try {
+      final ChatInMessage inMessage = BinaryChatCodec.decodeInbound(payload);
+      return isAdmin(user) ? inMessage.getReceiverUsername() : inMessage.getSenderId();
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static boolean isAdmin(Principal user) {
+    return user instanceof Authentication && ((Authentication) user).getAuthorities().contains(ADMIN);
+  }
+}
@@ -0,0 +1,55 @@
+package com.ss.utopia.messaging;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which node of the cluster owns a conversation.
+ * Any node accepts any session: calls for a conversation owned elsewhere are forwarded to its owner
+ * through {@link ClusterClient}, while frames cross nodes through the broker relay.
+ * A gateway may still ask {@code /api/cluster/owner} to place guests on their owner and save the extra hop.
+ */
+@Component
+public class ConversationOwnership {
+  private final String nodeId;
+  private final ConsistentHashRing ring;
+
+  @Autowired
+  public ConversationOwnership(@Value("${chat.cluster.node-id}") String nodeId,
+                               @Value("${chat.cluster.nodes}") String nodes,
+                               @Value("${chat.cluster.virtual-nodes}") int virtualNodes) {
+    final List<String> members = Arrays.stream(nodes.split(","))
+      .map(String::trim).filter(node -> !node.isEmpty()).collect(Collectors.toCollection(ArrayList::new));
+    if (!members.contains(nodeId))
+      members.add(nodeId);
+    this.nodeId = nodeId;
+    this.ring = new ConsistentHashRing(members, virtualNodes);
+  }
+
+  public String getNodeId() {
+    return nodeId;
+  }
+
+  public Collection<String> getNodes() {
+    return ring.nodes();
+  }
+
+  public boolean isClustered() {
+    return ring.nodes().size() > 1;
+  }
+
+  public String ownerOf(String conversationId) {
+    return ring.nodeFor(conversationId);
+  }
+
+  public boolean isLocal(String conversationId) {
+    return nodeId.equals(ownerOf(conversationId));
+  }
+}
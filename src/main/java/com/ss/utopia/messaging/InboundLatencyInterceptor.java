@@ -0,0 +1,53 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.config.MeterFilter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times how long the handlers of the clientInbound channel take for each destination.
+ */
+@Component
+public class InboundLatencyInterceptor implements ExecutorChannelInterceptor {
+  private static final String METER = "chat.inbound.handle";
+  private static final int MAX_DESTINATIONS = 32;
+
+  private final MeterRegistry meterRegistry;
+  private final ThreadLocal<Long> startedAt = new ThreadLocal<>();
+
+  @Autowired
+  public InboundLatencyInterceptor(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    meterRegistry.config().meterFilter(
+      MeterFilter.maximumAllowableTags(METER, "destination", MAX_DESTINATIONS, MeterFilter.deny()));
+  }
+
+  @Override
+  public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+    startedAt.set(System.nanoTime());
+    return message;
+  }
+
+  @Override
+  public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+    final Long started = startedAt.get();
+    startedAt.remove();
+    if (null == started)
+      return;
+    final String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+    Timer.builder(METER)
+      .tag("destination", (null == destination) ? "none" : destination)
+      .tag("handler", handler.getClass().getSimpleName())
+      .register(meterRegistry)
+      .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+  }
+}
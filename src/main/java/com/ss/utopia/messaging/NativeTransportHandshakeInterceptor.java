@@ -0,0 +1,59 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Handshake interceptor of the native WebSocket endpoint. Sessions accepted there carry raw STOMP frames,
+ * so they are marked as able to negotiate the binary wire format. Tomcat negotiates permessage-deflate on
+ * its own whenever the client offers it; the offer is counted here to show how much traffic is compressed.
+ */
+public class NativeTransportHandshakeInterceptor implements HandshakeInterceptor {
+  static final String DEFLATE_EXTENSION = "permessage-deflate";
+
+  private final Counter deflateOffered;
+  private final Counter deflateMissing;
+
+  public NativeTransportHandshakeInterceptor(MeterRegistry meterRegistry) {
+    deflateOffered = Counter.builder("chat.websocket.handshakes")
+      .tag("transport", "native")
+      .tag("deflate", "true")
+      .register(meterRegistry);
+    deflateMissing = Counter.builder("chat.websocket.handshakes")
+      .tag("transport", "native")
+      .tag("deflate", "false")
+      .register(meterRegistry);
+  }
+
+  @Override
+  public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                 WebSocketHandler wsHandler, Map<String, Object> attributes) {
+    attributes.put(WireFormatNegotiator.BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+    if (offersDeflate(request.getHeaders().get("Sec-WebSocket-Extensions")))
+      deflateOffered.increment();
+    else
+      deflateMissing.increment();
+    return true;
+  }
+
+  @Override
+  public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                             WebSocketHandler wsHandler, Exception exception) {
+  }
+
+  static boolean offersDeflate(Iterable<String> extensionHeaders) {
+    if (null == extensionHeaders)
+      return false;
+    for (String header : extensionHeaders)
+      for (String extension : header.split(","))
+        if (DEFLATE_EXTENSION.equalsIgnoreCase(extension.split(";")[0].trim()))
+          return true;
+    return false;
+  }
+}
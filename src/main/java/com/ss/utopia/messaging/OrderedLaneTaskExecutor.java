@@ -0,0 +1,152 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor for the clientInbound channel that hashes every message by its conversation onto a fixed set of serial lanes.
+ * Messages of one conversation are handled strictly in arrival order while different conversations run in parallel.
+ * A full lane blocks the sending transport thread, which pushes back on the client instead of dropping its messages.
+ * SUBSCRIBE, CONNECT and the other frames that are not MESSAGEs are handled right away on the transport thread,
+ * which reads the frames of one session in order: a subscription is registered before a later SEND of the same
+ * session is even queued, so the reply to that SEND cannot overtake it.
+ * Tasks that do not carry a message run on the regular thread pool.
+ */
+public class OrderedLaneTaskExecutor extends ThreadPoolTaskExecutor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OrderedLaneTaskExecutor.class);
+  private static final Runnable STOP = () -> {
+  };
+
+  private final ConversationKeyResolver keyResolver;
+  private final BlockingQueue<Runnable>[] lanes;
+  private final Thread[] workers;
+  private final Counter saturated;
+
+  @SuppressWarnings("unchecked")
+  public OrderedLaneTaskExecutor(int laneCount, int laneCapacity, ConversationKeyResolver keyResolver,
+                                 MeterRegistry meterRegistry) {
+    this.keyResolver = keyResolver;
+    this.lanes = new BlockingQueue[laneCount];
+    this.workers = new Thread[laneCount];
+    for (int i = 0; i < laneCount; i++)
+      lanes[i] = new ArrayBlockingQueue<>(laneCapacity);
+    Gauge.builder("chat.inbound.lanes", lanes, l -> l.length)
+      .description("Serial lanes of the clientInbound channel").register(meterRegistry);
+    Gauge.builder("chat.inbound.lanes.queued", lanes, OrderedLaneTaskExecutor::queued)
+      .description("Messages waiting in all lanes").register(meterRegistry);
+    for (int i = 0; i < laneCount; i++)
+      Gauge.builder("chat.inbound.lane.queued", lanes[i], BlockingQueue::size)
+        .tag("lane", String.valueOf(i)).register(meterRegistry);
+    this.saturated = Counter.builder("chat.inbound.lanes.saturated")
+      .description("Messages that had to wait for room in a full lane").register(meterRegistry);
+  }
+
+  @Override
+  protected ExecutorService initializeExecutor(ThreadFactory threadFactory,
+                                               RejectedExecutionHandler rejectedExecutionHandler) {
+    final ExecutorService executor = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+    for (int i = 0; i < lanes.length; i++) {
+      final BlockingQueue<Runnable> lane = lanes[i];
+      workers[i] = newThread(() -> drain(lane));
+      workers[i].setName(getThreadNamePrefix() + "lane-" + i);
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+    return executor;
+  }
+
+  /**
+   * Lets every lane finish what it already holds; a lane too full to take the stop marker has its worker interrupted.
+   */
+  @Override
+  public void shutdown() {
+    for (int i = 0; i < lanes.length; i++)
+      if (!lanes[i].offer(STOP) && null != workers[i])
+        workers[i].interrupt();
+    super.shutdown();
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    execute(task, TIMEOUT_INDEFINITE);
+  }
+
+  /**
+   * @param startTimeout milliseconds to wait for room in a full lane before the task is rejected
+   */
+  @Override
+  public void execute(Runnable task, long startTimeout) {
+    if (!(task instanceof MessageHandlingRunnable) || null == workers[0]) {
+      super.execute(task);
+      return;
+    }
+    final Message<?> message = ((MessageHandlingRunnable) task).getMessage();
+    if (SimpMessageType.MESSAGE != SimpMessageHeaderAccessor.getMessageType(message.getHeaders())) {
+      task.run();
+      return;
+    }
+    final BlockingQueue<Runnable> lane = laneOf(keyResolver.resolve(message));
+    if (lane.offer(task))
+      return;
+    saturated.increment();
+    try {
+      if (TIMEOUT_INDEFINITE == startTimeout)
+        lane.put(task);
+      else if (!lane.offer(task, startTimeout, TimeUnit.MILLISECONDS))
+        throw new TaskRejectedException("No free lane within " + startTimeout + " ms");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new TaskRejectedException("Interrupted while waiting for a free lane", e);
+    }
+  }
+
+  int laneCount() {
+    return lanes.length;
+  }
+
+  private BlockingQueue<Runnable> laneOf(String key) {
+    final int hash = key.hashCode();
+    return lanes[Math.floorMod(hash ^ (hash >>> 16), lanes.length)];
+  }
+
+  private void drain(BlockingQueue<Runnable> lane) {
+    while (true) {
+      final Runnable task;
+      try {
+        task = lane.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (STOP == task)
+        return;
+      try {
+        task.run();
+      } catch (Throwable e) {
+        LOGGER.error(e.getMessage());
+      }
+    }
+  }
+
+  private static double queued(BlockingQueue<Runnable>[] lanes) {
+    int queued = 0;
+    for (BlockingQueue<Runnable> lane : lanes)
+      queued += lane.size();
+    return queued;
+  }
+}
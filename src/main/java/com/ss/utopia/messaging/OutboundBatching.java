@@ -0,0 +1,162 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outbound batching stage between the clientOutbound channel and the network.
+ * The channel hands over one STOMP frame at a time, so frames are combined per session right above the
+ * WebSocket session, where a burst to the same session becomes one network write.
+ * A window of 0 writes every frame as soon as it is sent. Sessions are decorated either way so the
+ * SlowConsumerPolicy applies to every client.
+ * The flush threads only time the windows and watch for stalled writes; the network writes themselves run on
+ * a fixed pool of write threads, so a client that stops reading ties up one writer until it is evicted.
+ * Each session writes on one thread at a time, so the pool only runs short when more clients than writers stall
+ * at once, and then for no longer than the send time limit of the SlowConsumerPolicy.
+ */
+@Component
+public class OutboundBatching implements WebSocketHandlerDecoratorFactory {
+  private final long windowInMicroseconds;
+  private final int maxBytes;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final ScheduledExecutorService scheduler;
+  private final Executor writer;
+  private final Map<String, BatchingWebSocketSession> sessions = new ConcurrentHashMap<>();
+  private final DistributionSummary framesPerBatch;
+  private final DistributionSummary bytesPerBatch;
+  private final Timer addedLatency;
+
+  @Autowired
+  public OutboundBatching(@Value("${chat.outbound.batch.window-micros}") long windowInMicroseconds,
+                          @Value("${chat.outbound.batch.max-bytes}") int maxBytes,
+                          @Value("${chat.outbound.batch.flush-threads}") int flushThreads,
+                          @Value("${chat.outbound.batch.write-threads}") int writeThreads,
+                          SlowConsumerPolicy slowConsumerPolicy,
+                          MeterRegistry meterRegistry) {
+    this(windowInMicroseconds, maxBytes, slowConsumerPolicy, meterRegistry,
+      Executors.newScheduledThreadPool(flushThreads, runnable -> {
+        final Thread thread = new Thread(runnable, "outbound-batch-flush");
+        thread.setDaemon(true);
+        return thread;
+      }),
+      Executors.newFixedThreadPool(writeThreads, runnable -> {
+        final Thread thread = new Thread(runnable, "outbound-write");
+        thread.setDaemon(true);
+        return thread;
+      }));
+  }
+
+  OutboundBatching(long windowInMicroseconds,
+                   int maxBytes,
+                   SlowConsumerPolicy slowConsumerPolicy,
+                   MeterRegistry meterRegistry,
+                   ScheduledExecutorService scheduler,
+                   Executor writer) {
+    this.windowInMicroseconds = windowInMicroseconds;
+    this.maxBytes = maxBytes;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    this.scheduler = scheduler;
+    this.writer = writer;
+    this.framesPerBatch = DistributionSummary.builder("chat.outbound.batch.frames")
+      .description("STOMP frames written in one WebSocket message").register(meterRegistry);
+    this.bytesPerBatch = DistributionSummary.builder("chat.outbound.batch.size")
+      .description("Characters written in one WebSocket message").register(meterRegistry);
+    this.addedLatency = Timer.builder("chat.outbound.batch.delay")
+      .description("Time the first frame of a batch waited before being written").register(meterRegistry);
+    Gauge.builder("chat.outbound.sessions", sessions, Map::size)
+      .description("Open WebSocket sessions").register(meterRegistry);
+    Gauge.builder("chat.outbound.session.pending.max", sessions, OutboundBatching::maxPending)
+      .description("Largest send buffer of a single session").register(meterRegistry);
+    Gauge.builder("chat.outbound.session.pending.total", sessions, OutboundBatching::totalPending)
+      .description("Characters buffered for all sessions").register(meterRegistry);
+    final long watchdogPeriod = Math.max(100, slowConsumerPolicy.getSendTimeLimit() / 10);
+    scheduler.scheduleWithFixedDelay(this::evictStalledSessions, watchdogPeriod, watchdogPeriod, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+    if (writer instanceof ExecutorService)
+      ((ExecutorService) writer).shutdownNow();
+  }
+
+  @Override
+  public WebSocketHandler decorate(WebSocketHandler handler) {
+    return new WebSocketHandlerDecorator(handler) {
+      @Override
+      public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        final BatchingWebSocketSession batchingSession =
+          new BatchingWebSocketSession(session, OutboundBatching.this, slowConsumerPolicy);
+        sessions.put(session.getId(), batchingSession);
+        super.afterConnectionEstablished(batchingSession);
+      }
+
+      @Override
+      public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+        sessions.remove(session.getId());
+        super.afterConnectionClosed(session, closeStatus);
+      }
+    };
+  }
+
+  int getMaxBytes() {
+    return maxBytes;
+  }
+
+  boolean isImmediate() {
+    return windowInMicroseconds <= 0;
+  }
+
+  void schedule(Runnable flush) {
+    scheduler.schedule(() -> write(flush), windowInMicroseconds, TimeUnit.MICROSECONDS);
+  }
+
+  void write(Runnable flush) {
+    writer.execute(flush);
+  }
+
+  void evictStalledSessions() {
+    final long now = System.nanoTime();
+    for (BatchingWebSocketSession session : sessions.values())
+      session.evictIfStalled(now);
+  }
+
+  void recordBatch(int frames, int size, long delay, TimeUnit unit) {
+    framesPerBatch.record(frames);
+    bytesPerBatch.record(size);
+    addedLatency.record(delay, unit);
+  }
+
+  private static double maxPending(Map<String, BatchingWebSocketSession> sessions) {
+    int max = 0;
+    for (BatchingWebSocketSession session : sessions.values())
+      max = Math.max(max, session.getPendingBytes());
+    return max;
+  }
+
+  private static double totalPending(Map<String, BatchingWebSocketSession> sessions) {
+    long total = 0;
+    for (BatchingWebSocketSession session : sessions.values())
+      total += session.getPendingBytes();
+    return total;
+  }
+}
@@ -0,0 +1,63 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.model.EncodedChatMessage;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.IOException;
+
+/**
+ * JSON converter of the STOMP channels that never encodes an accepted ChatOutMessage again.
+ * A message sent on its own is written as the UTF-8 bytes of its {@link EncodedChatMessage};
+ * messages inside other payloads, such as history pages, are spliced in raw from the same encoding.
+ * Messages that were never accepted into a conversation are encoded on the spot.
+ * Everything uses the ObjectMapper of the context, so the output is the same as Boot's JSON converter.
+ */
+public class PreEncodedMessageConverter extends MappingJackson2MessageConverter {
+
+  /**
+   * @param objectMapper the ObjectMapper of the context, copied so the splicing serializer stays local to this converter
+   */
+  public PreEncodedMessageConverter(ObjectMapper objectMapper) {
+    final ObjectMapper copy = objectMapper.copy();
+    copy.registerModule(new SimpleModule().addSerializer(ChatOutMessage.class, new PreEncodedSerializer(objectMapper)));
+    setObjectMapper(copy);
+    final DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+    resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+    setContentTypeResolver(resolver);
+  }
+
+  @Override
+  protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+    if (payload instanceof ChatOutMessage && null != ((ChatOutMessage) payload).getEncoded())
+      return ((ChatOutMessage) payload).getEncoded().getUtf8();
+    return super.convertToInternal(payload, headers, conversionHint);
+  }
+
+  private static class PreEncodedSerializer extends StdSerializer<ChatOutMessage> {
+    private final ObjectMapper objectMapper;
+
+    private PreEncodedSerializer(ObjectMapper objectMapper) {
+      super(ChatOutMessage.class);
+      this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void serialize(ChatOutMessage message, JsonGenerator generator, SerializerProvider provider)
+      throws IOException {
+      final EncodedChatMessage encoded = message.getEncoded();
+      if (null != encoded)
+        generator.writeRawValue(encoded.getJson());
+      else
+        generator.writeRawValue(objectMapper.writeValueAsString(message));
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.ss.utopia.messaging;
+
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate limits the SEND frames of every principal (or guest session) per destination with a token bucket.
+ * Limits are configured as destination:perSecond:burst; destinations without their own limit share the default.
+ * Rejected frames are dropped before they reach the inbound lanes and the sender gets one error frame
+ * on /queue/private/error until it is accepted again.
+ */
+@Component
+public class RateLimitInterceptor implements ChannelInterceptor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(RateLimitInterceptor.class);
+  static final String ERROR_DESTINATION = "/queue/private/error";
+  private static final String OTHER = "other";
+
+  private final ChatBroker chatBroker;
+  private final MeterRegistry meterRegistry;
+  private final Map<String, Limit> limits = new HashMap<>();
+  private final Limit defaultLimit;
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+  @Autowired
+  public RateLimitInterceptor(@Lazy ChatBroker chatBroker,
+                              @Value("${chat.rate-limit.limits}") List<String> limits,
+                              @Value("${chat.rate-limit.default}") String defaultLimit,
+                              MeterRegistry meterRegistry) {
+    this.chatBroker = chatBroker;
+    this.meterRegistry = meterRegistry;
+    this.defaultLimit = Limit.parse(OTHER + ":" + defaultLimit);
+    limits.stream().map(String::trim).filter(limit -> !limit.isEmpty()).map(Limit::parse)
+      .forEach(limit -> this.limits.put(limit.destination, limit));
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    final MessageHeaders headers = message.getHeaders();
+    if (SimpMessageType.MESSAGE != SimpMessageHeaderAccessor.getMessageType(headers))
+      return message;
+    final String destination = SimpMessageHeaderAccessor.getDestination(headers);
+    final String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+    final Principal user = SimpMessageHeaderAccessor.getUser(headers);
+    final Limit limit = (null == destination) ? defaultLimit : limits.getOrDefault(destination, defaultLimit);
+    final String sender = (null != user) ? "user:" + user.getName() : "session:" + sessionId;
+    final TokenBucket bucket = buckets.computeIfAbsent(sender + "|" + limit.destination,
+      key -> new TokenBucket(limit.perSecond, limit.burst));
+    if (bucket.tryAcquire(System.nanoTime()))
+      return message;
+    meterRegistry.counter("chat.inbound.rejected", "destination", limit.destination).increment();
+    if (bucket.startRejecting() && null != sessionId) {
+      LOGGER.warn("Rate limiting {} on {}", sender, destination);
+      final ChatOutMessage error = new ChatOutMessage();
+      error.setContent("You are sending messages too quickly, please slow down.");
+      chatBroker.sendToSession(sessionId, ERROR_DESTINATION, error);
+    }
+    return null;
+  }
+
+  @Scheduled(fixedDelayString = "${chat.rate-limit.sweep-interval}")
+  public void removeFullBuckets() {
+    final long now = System.nanoTime();
+    buckets.values().removeIf(bucket -> bucket.isFull(now));
+  }
+
+  int bucketCount() {
+    return buckets.size();
+  }
+
+  private static class Limit {
+    private final String destination;
+    private final double perSecond;
+    private final int burst;
+
+    private Limit(String destination, double perSecond, int burst) {
+      this.destination = destination;
+      this.perSecond = perSecond;
+      this.burst = burst;
+    }
+
+    static Limit parse(String limit) {
+      final int burstAt = limit.lastIndexOf(':');
+      final int rateAt = limit.lastIndexOf(':', burstAt - 1);
+      if (rateAt <= 0)
+        throw new IllegalArgumentException("Rate limit must look like destination:perSecond:burst but was " + limit);
+      return new Limit(limit.substring(0, rateAt),
+        Double.parseDouble(limit.substring(rateAt + 1, burstAt)),
+        Integer.parseInt(limit.substring(burstAt + 1)));
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package com.ss.utopia.messaging;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import javax.servlet.http.Cookie;
+import java.util.Map;
+
+/**
+ * Copies the session cookie of the handshake request into the WebSocket session attributes,
+ * so the STOMP CONNECT frame can be authenticated without another HTTP round trip.
+ */
+public class SessionCookieHandshakeInterceptor implements HandshakeInterceptor {
+  public static final String SESSION_COOKIE_ATTRIBUTE = "sessionCookie";
+
+  @Override
+  public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                 WebSocketHandler wsHandler, Map<String, Object> attributes) {
+    if (request instanceof ServletServerHttpRequest) {
+      final Cookie[] cookies = ((ServletServerHttpRequest) request).getServletRequest().getCookies();
+      if (null != cookies)
+        for (Cookie cookie : cookies)
+          if ("session".equals(cookie.getName()))
+            attributes.put(SESSION_COOKIE_ATTRIBUTE, cookie.getValue());
+    }
+    return true;
+  }
+
+  @Override
+  public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                             WebSocketHandler wsHandler, Exception exception) {
+  }
+}
@@ -0,0 +1,68 @@
+package com.ss.utopia.messaging;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.user.SimpSession;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+
+/**
+ * Delivers through the configured Spring broker.
+ * With the simple broker only sessions of this node are reached, with the STOMP relay the user registry
+ * and unresolved user destinations are broadcast through the external broker so any node's sessions are reached.
+ * Sessions that negotiated the binary wire format get chat payloads encoded with {@link BinaryChatCodec};
+ * when a user has sessions of both formats each session is sent its own encoding. Broadcasts stay JSON.
+ */
+@Component
+public class SimpChatBroker implements ChatBroker {
+  private final SimpMessagingTemplate simpMessagingTemplate;
+  private final SimpUserRegistry simpUserRegistry;
+  private final WireFormatNegotiator wireFormatNegotiator;
+
+  @Autowired
+  public SimpChatBroker(SimpMessagingTemplate simpMessagingTemplate,
+                        SimpUserRegistry simpUserRegistry,
+                        WireFormatNegotiator wireFormatNegotiator) {
+    this.simpMessagingTemplate = simpMessagingTemplate;
+    this.simpUserRegistry = simpUserRegistry;
+    this.wireFormatNegotiator = wireFormatNegotiator;
+  }
+
+  @Override
+  public void sendToUser(String user, String destination, Object payload) {
+    final SimpUser simpUser = (wireFormatNegotiator.hasBinarySessions() && BinaryChatCodec.supports(payload.getClass()))
+      ? simpUserRegistry.getUser(user) : null;
+    if (null == simpUser || simpUser.getSessions().stream().noneMatch(this::isBinary)) {
+      simpMessagingTemplate.convertAndSendToUser(user, destination, payload);
+      return;
+    }
+    for (SimpSession session : simpUser.getSessions())
+      send(user, session.getId(), destination, payload);
+  }
+
+  @Override
+  public void sendToSession(String sessionId, String destination, Object payload) {
+    send(sessionId, sessionId, destination, payload);
+  }
+
+  @Override
+  public void broadcast(String destination, Object payload) {
+    simpMessagingTemplate.convertAndSend(destination, payload);
+  }
+
+  private boolean isBinary(SimpSession session) {
+    return wireFormatNegotiator.isBinary(session.getId());
+  }
+
+  private void send(String user, String sessionId, String destination, Object payload) {
+    final SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setSessionId(sessionId);
+    if (wireFormatNegotiator.isBinary(sessionId) && BinaryChatCodec.supports(payload.getClass()))
+      accessor.setContentType(BinaryChatCodec.MIME_TYPE);
+    accessor.setLeaveMutable(true);
+    simpMessagingTemplate.convertAndSendToUser(user, destination, payload, accessor.getMessageHeaders());
+  }
+}
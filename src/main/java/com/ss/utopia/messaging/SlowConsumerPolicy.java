@@ -0,0 +1,141 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Limits what a session that stops reading may hold on the server.
+ * Above the soft limit, frames to droppable destinations (typing, presence) are discarded;
+ * above the hard limit, or when one write takes longer than the send time limit, the session is evicted.
+ */
+@Component
+public class SlowConsumerPolicy {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SlowConsumerPolicy.class);
+  private static final int RECENT_EVICTIONS = 100;
+
+  private final int softLimit;
+  private final int hardLimit;
+  private final long sendTimeLimitInNanoseconds;
+  private final List<String> droppableDestinations;
+  private final Counter dropped;
+  private final MeterRegistry meterRegistry;
+  private final Deque<Eviction> recentEvictions = new ArrayDeque<>();
+
+  @Autowired
+  public SlowConsumerPolicy(@Value("${chat.outbound.slow-consumer.soft-limit}") int softLimit,
+                            @Value("${chat.outbound.slow-consumer.hard-limit}") int hardLimit,
+                            @Value("${chat.outbound.slow-consumer.send-time-limit}") long sendTimeLimit,
+                            @Value("${chat.outbound.slow-consumer.droppable}") List<String> droppableDestinations,
+                            MeterRegistry meterRegistry) {
+    this.softLimit = softLimit;
+    this.hardLimit = hardLimit;
+    this.sendTimeLimitInNanoseconds = sendTimeLimit * 1_000_000L;
+    this.droppableDestinations = droppableDestinations;
+    this.meterRegistry = meterRegistry;
+    this.dropped = Counter.builder("chat.outbound.dropped")
+      .description("Droppable frames discarded for sessions above the soft limit").register(meterRegistry);
+  }
+
+  public int getSoftLimit() {
+    return softLimit;
+  }
+
+  public int getHardLimit() {
+    return hardLimit;
+  }
+
+  public int getSendTimeLimit() {
+    return (int) (sendTimeLimitInNanoseconds / 1_000_000L);
+  }
+
+  boolean isSendTooSlow(long writeStartedAt, long now) {
+    return 0 != writeStartedAt && now - writeStartedAt > sendTimeLimitInNanoseconds;
+  }
+
+  /**
+   * A frame is droppable when the destination header, within the header section, ends with a droppable destination.
+   */
+  boolean isDroppable(String frame) {
+    final int headersEnd = frame.indexOf("\n\n");
+    final int start = frame.indexOf("\ndestination:");
+    if (start < 0 || (headersEnd >= 0 && start > headersEnd))
+      return false;
+    final int valueStart = start + "\ndestination:".length();
+    final int end = frame.indexOf('\n', valueStart);
+    final String destination = frame.substring(valueStart, (end < 0) ? frame.length() : end);
+    for (String droppable : droppableDestinations)
+      if (destination.endsWith(droppable))
+        return true;
+    return false;
+  }
+
+  void dropped() {
+    dropped.increment();
+  }
+
+  void evicted(String sessionId, Principal user, String reason, int pendingBytes) {
+    final String name = (null == user) ? "guest" : user.getName();
+    LOGGER.warn("Evicting slow consumer session {} of {}: {} ({} bytes pending)", sessionId, name, reason,
+      pendingBytes);
+    meterRegistry.counter("chat.outbound.evictions", "reason", reason).increment();
+    synchronized (recentEvictions) {
+      if (recentEvictions.size() == RECENT_EVICTIONS)
+        recentEvictions.removeFirst();
+      recentEvictions.addLast(new Eviction(sessionId, name, reason, pendingBytes, new Date()));
+    }
+  }
+
+  public List<Eviction> getRecentEvictions() {
+    synchronized (recentEvictions) {
+      return new ArrayList<>(recentEvictions);
+    }
+  }
+
+  public static class Eviction {
+    private final String sessionId;
+    private final String user;
+    private final String reason;
+    private final int pendingBytes;
+    private final Date evictedAt;
+
+    public Eviction(String sessionId, String user, String reason, int pendingBytes, Date evictedAt) {
+      this.sessionId = sessionId;
+      this.user = user;
+      this.reason = reason;
+      this.pendingBytes = pendingBytes;
+      this.evictedAt = evictedAt;
+    }
+
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    public String getUser() {
+      return user;
+    }
+
+    public String getReason() {
+      return reason;
+    }
+
+    public int getPendingBytes() {
+      return pendingBytes;
+    }
+
+    public Date getEvictedAt() {
+      return evictedAt;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.ss.utopia.messaging;
+
+import com.ss.utopia.security.JwtProvider;
+import com.ss.utopia.security.UtopiaUserDetailService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Authenticates a STOMP session once, on its CONNECT frame.
+ * The token comes from a "session" native header or from the cookie captured during the handshake.
+ * The resulting principal is bound to the session, so every later frame of the session carries it
+ * and the message handlers never repeat the authentication.
+ * Sessions without a valid token stay anonymous and are handled as guests.
+ * SUBSCRIBE frames to a {@code chat.subscribe.admin-only} destination are refused unless the session
+ * belongs to an admin, so guests cannot listen to the topics that describe other customers.
+ */
+@Component
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(StompAuthChannelInterceptor.class);
+  private static final String SESSION_HEADER = "session";
+  private static final String ADMIN_AUTHORITY = "ROLE_ADMIN";
+
+  private final JwtProvider jwtProvider;
+  private final UtopiaUserDetailService utopiaUserDetailService;
+  private final List<String> adminOnlyDestinations;
+  private final Timer connectTimer;
+  private final Counter deniedSubscriptions;
+
+  @Autowired
+  public StompAuthChannelInterceptor(JwtProvider jwtProvider,
+                                     UtopiaUserDetailService utopiaUserDetailService,
+                                     @Value("${chat.subscribe.admin-only}") List<String> adminOnlyDestinations,
+                                     MeterRegistry meterRegistry) {
+    this.jwtProvider = jwtProvider;
+    this.utopiaUserDetailService = utopiaUserDetailService;
+    this.adminOnlyDestinations = List.copyOf(adminOnlyDestinations);
+    this.connectTimer = Timer.builder("chat.inbound.connect.auth")
+      .description("Time spent authenticating a STOMP CONNECT frame").register(meterRegistry);
+    this.deniedSubscriptions = Counter.builder("chat.inbound.subscribe.denied")
+      .description("Subscriptions to admin only destinations refused to other sessions").register(meterRegistry);
+  }
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    final StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+    if (null == accessor)
+      return message;
+    if (StompCommand.CONNECT.equals(accessor.getCommand()))
+      connectTimer.record(() -> authenticate(accessor));
+    else if (StompCommand.SUBSCRIBE.equals(accessor.getCommand()))
+      authorizeSubscription(accessor);
+    return message;
+  }
+
+  private void authorizeSubscription(StompHeaderAccessor accessor) {
+    final String destination = accessor.getDestination();
+    if (null == destination || adminOnlyDestinations.stream().noneMatch(destination::startsWith)
+      || isAdmin(accessor.getUser()))
+      return;
+    deniedSubscriptions.increment();
+    LOGGER.warn("STOMP session {} is not allowed to subscribe to {}", accessor.getSessionId(), destination);
+    throw new AccessDeniedException("Subscription to " + destination + " requires an admin");
+  }
+
+  private static boolean isAdmin(Principal user) {
+    return user instanceof Authentication && ((Authentication) user).getAuthorities().stream()
+      .anyMatch(authority -> ADMIN_AUTHORITY.equals(authority.getAuthority()));
+  }
+
+  private void authenticate(StompHeaderAccessor accessor) {
+    String cookie = accessor.getFirstNativeHeader(SESSION_HEADER);
+    final Map<String, Object> attributes = accessor.getSessionAttributes();
+    if (null == cookie && null != attributes)
+      cookie = (String) attributes.get(SessionCookieHandshakeInterceptor.SESSION_COOKIE_ATTRIBUTE);
+    if (null == cookie)
+      return;
+    try {
+      final Optional<UserDetails> userDetails = jwtProvider.verifySessionCookie(cookie)
+        .flatMap(token -> utopiaUserDetailService.loadUserById(token.getUserId()));
+      if (userDetails.isPresent())
+        accessor.setUser(new PreAuthenticatedAuthenticationToken(
+          userDetails.get(), "", userDetails.get().getAuthorities()));
+      else
+        LOGGER.warn("STOMP session {} connected with an invalid token", accessor.getSessionId());
+    } catch (Exception e) {
+      LOGGER.error("Not able to verify token of STOMP session {}", accessor.getSessionId());
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package com.ss.utopia.messaging;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket holding up to burst tokens, refilled at a fixed rate.
+ * The bucket is kept in its single-number form: the time at which it will be full again.
+ * Taking a token pushes that time one emission interval further; a token is refused
+ * when doing so would put it more than the burst ahead of now.
+ */
+class TokenBucket {
+  private final long emissionInterval;
+  private final long burstTolerance;
+  private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+  private final AtomicBoolean rejecting = new AtomicBoolean();
+
+  TokenBucket(double perSecond, int burst) {
+    this.emissionInterval = (long) (1_000_000_000L / perSecond);
+    this.burstTolerance = emissionInterval * burst;
+  }
+
+  boolean tryAcquire(long now) {
+    while (true) {
+      final long current = fullAt.get();
+      final long next = Math.max(current, now) + emissionInterval;
+      if (next - now > burstTolerance)
+        return false;
+      if (fullAt.compareAndSet(current, next)) {
+        rejecting.lazySet(false);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * True only for the first rejection after an accepted token, so a flooding client is told once.
+   */
+  boolean startRejecting() {
+    return rejecting.compareAndSet(false, true);
+  }
+
+  boolean isFull(long now) {
+    return fullAt.get() <= now;
+  }
+}
@@ -1,25 +1,132 @@
 package com.ss.utopia.messaging;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+  private final StompAuthChannelInterceptor stompAuthChannelInterceptor;
+  private final RateLimitInterceptor rateLimitInterceptor;
+  private final InboundLatencyInterceptor inboundLatencyInterceptor;
+  private final WireFormatNegotiator wireFormatNegotiator;
+  private final OutboundBatching outboundBatching;
+  private final SlowConsumerPolicy slowConsumerPolicy;
+  private final MeterRegistry meterRegistry;
+  private final ObjectMapper objectMapper;
+
+  @Value("${chat.broker.mode}")
+  private String brokerMode;
+  @Value("${chat.broker.relay.host}")
+  private String relayHost;
+  @Value("${chat.broker.relay.port}")
+  private int relayPort;
+  @Value("${chat.broker.relay.login}")
+  private String relayLogin;
+  @Value("${chat.broker.relay.passcode}")
+  private String relayPasscode;
+  @Value("${chat.broker.relay.virtual-host}")
+  private String relayVirtualHost;
+  @Value("${chat.websocket.native-endpoint}")
+  private String nativeEndpoint;
+  @Value("${chat.inbound.lanes}")
+  private int inboundLanes;
+  @Value("${chat.inbound.lane-capacity}")
+  private int inboundLaneCapacity;
+
+  @Autowired
+  public WebSocketConfig(StompAuthChannelInterceptor stompAuthChannelInterceptor,
+                         RateLimitInterceptor rateLimitInterceptor,
+                         InboundLatencyInterceptor inboundLatencyInterceptor,
+                         WireFormatNegotiator wireFormatNegotiator,
+                         OutboundBatching outboundBatching,
+                         SlowConsumerPolicy slowConsumerPolicy,
+                         MeterRegistry meterRegistry,
+                         ObjectMapper objectMapper) {
+    this.stompAuthChannelInterceptor = stompAuthChannelInterceptor;
+    this.rateLimitInterceptor = rateLimitInterceptor;
+    this.inboundLatencyInterceptor = inboundLatencyInterceptor;
+    this.wireFormatNegotiator = wireFormatNegotiator;
+    this.outboundBatching = outboundBatching;
+    this.slowConsumerPolicy = slowConsumerPolicy;
+    this.meterRegistry = meterRegistry;
+    this.objectMapper = objectMapper;
+  }
+
   @Override
   public void registerStompEndpoints(StompEndpointRegistry registry) {
     registry.addEndpoint("/secured/room")
       .setAllowedOriginPatterns("*")
+      .addInterceptors(new SessionCookieHandshakeInterceptor())
       .withSockJS();
+    // Same broker and destinations without the SockJS envelope; Tomcat compresses these frames with
+    // permessage-deflate when the client offers it, and they may switch to the binary wire format.
+    registry.addEndpoint(nativeEndpoint)
+      .setAllowedOriginPatterns("*")
+      .addInterceptors(new SessionCookieHandshakeInterceptor(),
+        new NativeTransportHandshakeInterceptor(meterRegistry));
   }
 
   @Override
   public void configureMessageBroker(MessageBrokerRegistry config) {
     config.setApplicationDestinationPrefixes("/app");
-    config.enableSimpleBroker("/secured/user", "/topic");
+    if ("relay".equals(brokerMode))
+      // user sessions of every node are shared through the external broker
+      config.enableStompBrokerRelay("/topic", "/queue")
+        .setRelayHost(relayHost)
+        .setRelayPort(relayPort)
+        .setClientLogin(relayLogin)
+        .setClientPasscode(relayPasscode)
+        .setSystemLogin(relayLogin)
+        .setSystemPasscode(relayPasscode)
+        .setVirtualHost(relayVirtualHost)
+        .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+        .setUserRegistryBroadcast("/topic/simp-user-registry");
+    else
+      config.enableSimpleBroker("/secured/user", "/topic");
     config.setUserDestinationPrefix("/secured/user");
   }
+
+  @Override
+  public void configureClientInboundChannel(ChannelRegistration registration) {
+    registration.interceptors(stompAuthChannelInterceptor, wireFormatNegotiator, rateLimitInterceptor,
+      inboundLatencyInterceptor);
+    final int lanes = (inboundLanes > 0) ? inboundLanes : 2 * Runtime.getRuntime().availableProcessors();
+    registration.taskExecutor(
+      new OrderedLaneTaskExecutor(lanes, inboundLaneCapacity, new ConversationKeyResolver(), meterRegistry));
+  }
+
+  @Override
+  public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+    registration.addDecoratorFactory(outboundBatching)
+      .setSendTimeLimit(slowConsumerPolicy.getSendTimeLimit())
+      .setSendBufferSizeLimit(slowConsumerPolicy.getHardLimit());
+  }
+
+  /**
+   * Same converters as Spring's defaults, with the JSON one replaced by the pre-encoding converter
+   * and the binary chat converter in front of it for messages whose content-type asks for it.
+   */
+  @Override
+  public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+    messageConverters.add(new StringMessageConverter());
+    messageConverters.add(new ByteArrayMessageConverter());
+    messageConverters.add(new BinaryChatMessageConverter());
+    messageConverters.add(new PreEncodedMessageConverter(objectMapper));
+    return false;
+  }
 }
@@ -0,0 +1,66 @@
+package com.ss.utopia.messaging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which STOMP sessions asked for the binary wire format with a content-type header on their CONNECT frame.
+ * Only sessions of a plain WebSocket endpoint, marked by {@link #BINARY_CAPABLE_ATTRIBUTE} during the handshake,
+ * can carry binary frames; SockJS sessions always stay on JSON.
+ */
+@Component
+public class WireFormatNegotiator implements ChannelInterceptor {
+  private static final Logger LOGGER = LoggerFactory.getLogger(WireFormatNegotiator.class);
+  public static final String BINARY_CAPABLE_ATTRIBUTE = "binaryCapable";
+
+  private final Set<String> binarySessions = ConcurrentHashMap.newKeySet();
+
+  @Override
+  public Message<?> preSend(Message<?> message, MessageChannel channel) {
+    final StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+    if (null == accessor || null == accessor.getCommand())
+      return message;
+    if (StompCommand.CONNECT.equals(accessor.getCommand()) || StompCommand.STOMP.equals(accessor.getCommand()))
+      negotiate(accessor);
+    else if (StompCommand.DISCONNECT.equals(accessor.getCommand()))
+      binarySessions.remove(accessor.getSessionId());
+    return message;
+  }
+
+  public boolean isBinary(String sessionId) {
+    return null != sessionId && binarySessions.contains(sessionId);
+  }
+
+  public boolean hasBinarySessions() {
+    return !binarySessions.isEmpty();
+  }
+
+  private void negotiate(StompHeaderAccessor accessor) {
+    final String contentType = accessor.getFirstNativeHeader("content-type");
+    if (null == contentType)
+      return;
+    try {
+      if (!BinaryChatCodec.MIME_TYPE.equals(MimeType.valueOf(contentType)))
+        return;
+    } catch (IllegalArgumentException e) {
+      return;
+    }
+    final Map<String, Object> attributes = accessor.getSessionAttributes();
+    if (null != attributes && Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE_ATTRIBUTE)))
+      binarySessions.add(accessor.getSessionId());
+    else
+      LOGGER.debug("Session {} asked for binary frames over a text only transport", accessor.getSessionId());
+  }
+}
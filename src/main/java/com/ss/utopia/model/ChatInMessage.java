@@ -9,6 +9,7 @@ public class ChatInMessage {
   private String message;
   private Date timestamp;
   private String receiverUsername;
+  private Long lastSeenSequence;
 
   public String getSenderId() {
     return senderId;
@@ -57,4 +58,12 @@ public class ChatInMessage {
   public void setReceiverUsername(String receiverUsername) {
     this.receiverUsername = receiverUsername;
   }
+
+  public Long getLastSeenSequence() {
+    return lastSeenSequence;
+  }
+
+  public void setLastSeenSequence(Long lastSeenSequence) {
+    this.lastSeenSequence = lastSeenSequence;
+  }
 }
@@ -0,0 +1,113 @@
+package com.ss.utopia.model;
+
+import javax.persistence.*;
+import java.util.Date;
+
+@Entity
+@Table(name = "chat_message")
+public class ChatMessage {
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @Column(name = "id")
+  private Long id;
+
+  @Column(name = "conversation_id", nullable = false)
+  private String conversationId;
+
+  @Column(name = "sender_id")
+  private String senderId;
+
+  @Column(name = "sender_short_name")
+  private String senderShortName;
+
+  @Column(name = "group_name")
+  private String groupName;
+
+  @Column(name = "content")
+  private String content;
+
+  @Temporal(TemporalType.TIMESTAMP)
+  @Column(name = "sent_timestamp", nullable = false)
+  private Date sentTimestamp;
+
+  @Column(name = "sequence_number", nullable = false)
+  private long sequence;
+
+  protected ChatMessage() {
+  }
+
+  public Long getId() {
+    return id;
+  }
+
+  public void setId(Long id) {
+    this.id = id;
+  }
+
+  public String getConversationId() {
+    return conversationId;
+  }
+
+  public void setConversationId(String conversationId) {
+    this.conversationId = conversationId;
+  }
+
+  public String getSenderId() {
+    return senderId;
+  }
+
+  public void setSenderId(String senderId) {
+    this.senderId = senderId;
+  }
+
+  public String getSenderShortName() {
+    return senderShortName;
+  }
+
+  public void setSenderShortName(String senderShortName) {
+    this.senderShortName = senderShortName;
+  }
+
+  public String getGroupName() {
+    return groupName;
+  }
+
+  public void setGroupName(String groupName) {
+    this.groupName = groupName;
+  }
+
+  public String getContent() {
+    return content;
+  }
+
+  public void setContent(String content) {
+    this.content = content;
+  }
+
+  public Date getSentTimestamp() {
+    return sentTimestamp;
+  }
+
+  public void setSentTimestamp(Date sentTimestamp) {
+    this.sentTimestamp = sentTimestamp;
+  }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    this.sequence = sequence;
+  }
+
+  public ChatOutMessage toChatOutMessage() {
+    var message = new ChatOutMessage();
+    message.setSenderId(senderId);
+    message.setSenderShortName(senderShortName);
+    message.setGroupName(groupName);
+    message.setContent(content);
+    message.setSentTimestamp(sentTimestamp);
+    message.setSequence(sequence);
+    return message;
+  }
+}
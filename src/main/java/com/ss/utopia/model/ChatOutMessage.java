@@ -1,19 +1,32 @@
 package com.ss.utopia.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.UncheckedIOException;
 import java.util.Date;
 
+/**
+ * A chat message as clients receive it. Once accepted into a conversation the message is encoded and frozen:
+ * its setters throw, so the shared {@link EncodedChatMessage} always matches its fields.
+ */
 public class ChatOutMessage {
   private String senderId;
   private String content;
   private String groupName;
   private String senderShortName;
   private Date sentTimestamp;
+  private long sequence;
+  @JsonIgnore
+  private volatile EncodedChatMessage encoded;
 
   public String getSenderId() {
     return senderId;
   }
 
   public void setSenderId(String senderId) {
+    checkNotEncoded();
     this.senderId = senderId;
   }
 
@@ -22,6 +35,7 @@ public class ChatOutMessage {
   }
 
   public void setSenderShortName(String senderShortName) {
+    checkNotEncoded();
     this.senderShortName = senderShortName;
   }
 
@@ -30,6 +44,7 @@ public class ChatOutMessage {
   }
 
   public void setContent(String content) {
+    checkNotEncoded();
     this.content = content;
   }
 
@@ -38,6 +53,7 @@ public class ChatOutMessage {
   }
 
   public void setGroupName(String groupName) {
+    checkNotEncoded();
     this.groupName = groupName;
   }
 
@@ -46,6 +62,46 @@ public class ChatOutMessage {
   }
 
   public void setSentTimestamp(Date sentTimestamp) {
+    checkNotEncoded();
     this.sentTimestamp = sentTimestamp;
   }
+
+  public long getSequence() {
+    return sequence;
+  }
+
+  public void setSequence(long sequence) {
+    checkNotEncoded();
+    this.sequence = sequence;
+  }
+
+  /**
+   * @return the JSON of this message once it has been accepted into a conversation, otherwise null
+   */
+  @JsonIgnore
+  public EncodedChatMessage getEncoded() {
+    return encoded;
+  }
+
+  /**
+   * Encodes the finished message and freezes it. Called once the message has its sequence,
+   * by the thread that owns the message at that point.
+   */
+  public EncodedChatMessage encode(ObjectMapper objectMapper) {
+    EncodedChatMessage json = encoded;
+    if (null == json) {
+      try {
+        json = new EncodedChatMessage(objectMapper.writeValueAsString(this));
+      } catch (JsonProcessingException e) {
+        throw new UncheckedIOException(e);
+      }
+      encoded = json;
+    }
+    return json;
+  }
+
+  private void checkNotEncoded() {
+    if (null != encoded)
+      throw new IllegalStateException("A chat message can not change once it has been encoded");
+  }
 }
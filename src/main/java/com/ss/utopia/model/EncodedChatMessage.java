@@ -0,0 +1,33 @@
+package com.ss.utopia.model;
+
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * JSON of a chat message accepted into a conversation, encoded once with the ObjectMapper of the context.
+ * Every live delivery and history page writes these same bytes, so they must never be modified.
+ */
+public final class EncodedChatMessage {
+  private final SerializedString json;
+  private final byte[] utf8;
+
+  EncodedChatMessage(String json) {
+    this.json = new SerializedString(json);
+    this.utf8 = this.json.asUnquotedUTF8();
+  }
+
+  public SerializableString getJson() {
+    return json;
+  }
+
+  /**
+   * @return the shared UTF-8 bytes of the JSON
+   */
+  public byte[] getUtf8() {
+    return utf8;
+  }
+
+  public int length() {
+    return json.charLength();
+  }
+}
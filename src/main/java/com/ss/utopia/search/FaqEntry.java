@@ -0,0 +1,34 @@
+package com.ss.utopia.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FaqEntry {
+  private String topic;
+  private List<String> questions = new ArrayList<>();
+  private String answer;
+
+  public String getTopic() {
+    return topic;
+  }
+
+  public void setTopic(String topic) {
+    this.topic = topic;
+  }
+
+  public List<String> getQuestions() {
+    return questions;
+  }
+
+  public void setQuestions(List<String> questions) {
+    this.questions = questions;
+  }
+
+  public String getAnswer() {
+    return answer;
+  }
+
+  public void setAnswer(String answer) {
+    this.answer = answer;
+  }
+}
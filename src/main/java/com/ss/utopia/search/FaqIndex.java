@@ -0,0 +1,126 @@
+package com.ss.utopia.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Immutable inverted index over an FAQ corpus.
+ * Every sample question of an entry is indexed as its own document by its distinct terms, each weighted by its
+ * inverse document frequency. A query is scored against every question sharing a term with it by cosine
+ * similarity of the weighted term sets and answered with the entry of the best question.
+ * Postings and weights are precomputed so a lookup only touches the query's terms.
+ */
+public class FaqIndex {
+  private static final int[] NO_POSTINGS = new int[0];
+
+  private final List<FaqEntry> entries;
+  private final List<FaqEntry> documentEntries = new ArrayList<>();
+  private final Map<String, int[]> postings = new HashMap<>();
+  private final Map<String, Double> weights = new HashMap<>();
+  private final double[] norms;
+
+  public FaqIndex(List<FaqEntry> entries) {
+    this.entries = List.copyOf(entries);
+    final List<Set<String>> documents = new ArrayList<>();
+    for (FaqEntry entry : this.entries)
+      for (String question : entry.getQuestions()) {
+        final Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenize(question));
+        if (terms.isEmpty())
+          continue;
+        documents.add(terms);
+        documentEntries.add(entry);
+      }
+    final Map<String, List<Integer>> termDocuments = new HashMap<>();
+    for (int i = 0; i < documents.size(); i++)
+      for (String term : documents.get(i))
+        termDocuments.computeIfAbsent(term, key -> new ArrayList<>()).add(i);
+    termDocuments.forEach((term, ids) -> {
+      postings.put(term, ids.stream().mapToInt(Integer::intValue).toArray());
+      weights.put(term, Math.log(1 + (double) documents.size() / ids.size()));
+    });
+    this.norms = new double[documents.size()];
+    for (int i = 0; i < documents.size(); i++) {
+      double squares = 0;
+      for (String term : documents.get(i))
+        squares += weights.get(term) * weights.get(term);
+      norms[i] = Math.sqrt(squares);
+    }
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Best matching entry whose score reaches minScore, between 0 (nothing shared) and 1 (same terms).
+   */
+  public Optional<Match> lookup(String text, double minScore) {
+    final Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenize(text));
+    if (terms.isEmpty())
+      return Optional.empty();
+    final double[] scores = new double[norms.length];
+    double querySquares = 0;
+    for (String term : terms) {
+      final Double weight = weights.get(term);
+      if (null == weight)
+        continue;
+      querySquares += weight * weight;
+      for (int id : postings.getOrDefault(term, NO_POSTINGS))
+        scores[id] += weight * weight;
+    }
+    if (0 == querySquares)
+      return Optional.empty();
+    // terms unknown to the corpus still count against the query so unrelated long messages do not match
+    final double queryNorm = Math.sqrt(querySquares + (terms.size() - countKnown(terms)) * unknownWeight());
+    int best = -1;
+    double bestScore = 0;
+    for (int i = 0; i < scores.length; i++) {
+      if (0 == scores[i])
+        continue;
+      final double score = scores[i] / (queryNorm * norms[i]);
+      if (score > bestScore) {
+        best = i;
+        bestScore = score;
+      }
+    }
+    if (best < 0 || bestScore < minScore)
+      return Optional.empty();
+    return Optional.of(new Match(documentEntries.get(best), bestScore));
+  }
+
+  private int countKnown(Set<String> terms) {
+    int known = 0;
+    for (String term : terms)
+      if (weights.containsKey(term))
+        known++;
+    return known;
+  }
+
+  private double unknownWeight() {
+    final double weight = Math.log(1 + norms.length);
+    return weight * weight;
+  }
+
+  public static class Match {
+    private final FaqEntry entry;
+    private final double score;
+
+    public Match(FaqEntry entry, double score) {
+      this.entry = entry;
+      this.score = score;
+    }
+
+    public FaqEntry getEntry() {
+      return entry;
+    }
+
+    public double getScore() {
+      return score;
+    }
+  }
+}
@@ -0,0 +1,279 @@
+package com.ss.utopia.search;
+
+import com.ss.utopia.dto.SearchHitDto;
+import com.ss.utopia.dto.SearchPageDto;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * Incremental inverted index over the chat messages held by ChatService.
+ * Every added message gets an increasing document id and is appended to the postings of its terms and of
+ * its conversation and sender, so filters are just more postings to intersect.
+ * A search walks the shortest postings from the newest document backwards and checks the others by binary search,
+ * stopping as soon as a page is full, so its cost depends on the page and the rarest term rather than on
+ * the total number of messages. Pages continue from the returned cursor.
+ * Documents of closed conversations are dropped at once and purged from the postings periodically.
+ * With the bounded history every conversation keeps only its last {@code chat.history.capacity} documents,
+ * the same messages its ring buffer still holds, so the index never outlives the store.
+ */
+@Component
+public class MessageSearchIndex {
+  private static final String CONVERSATION = "\u0000conversation:";
+  private static final String SENDER = "\u0000sender:";
+
+  private final ChatService chatService;
+  private final int maxPageSize;
+  private final int retainPerConversation;
+  private final Object lock = new Object();
+  private int nextId;
+  private final Map<String, Deque<Integer>> conversationDocuments = new HashMap<>();
+  private final Map<Integer, Document> documents = new ConcurrentHashMap<>();
+  private final Map<String, Postings> postings = new ConcurrentHashMap<>();
+  private final AtomicInteger removed = new AtomicInteger();
+  private final Timer searchTimer;
+
+  @Autowired
+  public MessageSearchIndex(ChatService chatService,
+                            @Value("${chat.search.max-page-size}") int maxPageSize,
+                            @Value("${chat.history.mode}") String historyMode,
+                            @Value("${chat.history.capacity}") int historyCapacity,
+                            MeterRegistry meterRegistry) {
+    this(chatService, maxPageSize, "bounded".equals(historyMode) ? historyCapacity : Integer.MAX_VALUE, meterRegistry);
+  }
+
+  public MessageSearchIndex(ChatService chatService, int maxPageSize, MeterRegistry meterRegistry) {
+    this(chatService, maxPageSize, Integer.MAX_VALUE, meterRegistry);
+  }
+
+  /**
+   * @param retainPerConversation documents kept per conversation, older ones are dropped as new ones arrive
+   */
+  public MessageSearchIndex(ChatService chatService, int maxPageSize, int retainPerConversation,
+                            MeterRegistry meterRegistry) {
+    this.chatService = chatService;
+    this.maxPageSize = maxPageSize;
+    this.retainPerConversation = retainPerConversation;
+    this.searchTimer = Timer.builder("chat.search.query")
+      .description("Time spent answering a chat history search").register(meterRegistry);
+    Gauge.builder("chat.search.documents", documents, Map::size)
+      .description("Messages in the search index").register(meterRegistry);
+    Gauge.builder("chat.search.terms", postings, Map::size)
+      .description("Distinct terms in the search index").register(meterRegistry);
+  }
+
+  /**
+   * Indexes conversations restored before the event listeners were registered.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    chatService.getConversationIds().forEach(conversationId ->
+      chatService.getHistory(conversationId).forEach(message -> add(conversationId, message,
+        (null == message.getSentTimestamp()) ? 0 : message.getSentTimestamp().getTime())));
+  }
+
+  @EventListener
+  public void onMessageAdded(ChatMessageAddedEvent event) {
+    add(event.getConversationId(), event.getMessage(), event.getAddedAt());
+  }
+
+  @EventListener
+  public void onConversationClosed(ConversationClosedEvent event) {
+    synchronized (lock) {
+      conversationDocuments.remove(event.getConversationId());
+    }
+    final Postings conversation = postings.get(CONVERSATION + event.getConversationId());
+    if (null == conversation)
+      return;
+    final View view = conversation.view();
+    for (int i = 0; i < view.size; i++)
+      if (null != documents.remove(view.ids[i]))
+        removed.incrementAndGet();
+  }
+
+  public void add(String conversationId, ChatOutMessage message, long addedAt) {
+    final Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenize(message.getContent()));
+    terms.add(CONVERSATION + conversationId);
+    if (null != message.getSenderId())
+      terms.add(SENDER + message.getSenderId());
+    synchronized (lock) {
+      final int id = nextId++;
+      documents.put(id, new Document(conversationId, message, addedAt));
+      for (String term : terms)
+        postings.computeIfAbsent(term, key -> new Postings()).add(id);
+      if (Integer.MAX_VALUE == retainPerConversation)
+        return;
+      // the ring buffer has just overwritten the oldest message of the conversation, drop its document too
+      final Deque<Integer> retained = conversationDocuments.computeIfAbsent(conversationId, key -> new ArrayDeque<>());
+      retained.addLast(id);
+      while (retained.size() > retainPerConversation)
+        if (null != documents.remove(retained.pollFirst()))
+          removed.incrementAndGet();
+    }
+  }
+
+  /**
+   * Newest messages first that contain every term of the text and match the given filters, any of which may be null.
+   */
+  public SearchPageDto search(String text, String conversationId, String senderId, Long from, Long to,
+                              Long cursor, int limit) {
+    final long started = System.nanoTime();
+    try {
+      final Set<String> terms = new LinkedHashSet<>(Tokenizer.tokenize(text));
+      if (null != conversationId)
+        terms.add(CONVERSATION + conversationId);
+      if (null != senderId)
+        terms.add(SENDER + senderId);
+      if (terms.isEmpty())
+        throw new IllegalArgumentException("A search needs some text, a conversation or a sender");
+      final List<View> lists = new ArrayList<>();
+      for (String term : terms) {
+        final Postings list = postings.get(term);
+        if (null == list)
+          return new SearchPageDto(List.of(), null);
+        lists.add(list.view());
+      }
+      lists.sort(Comparator.comparingInt(list -> list.size));
+      final View shortest = lists.get(0);
+      final int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+      final List<SearchHitDto> hits = new ArrayList<>();
+      int lastHit = -1;
+      int position = (null == cursor) ? shortest.size - 1 : lowerBound(shortest, cursor) - 1;
+      for (; position >= 0; position--) {
+        final int id = shortest.ids[position];
+        if (!inAll(lists, id))
+          continue;
+        final Document document = documents.get(id);
+        if (null == document || (null != from && document.addedAt < from) || (null != to && document.addedAt > to))
+          continue;
+        if (hits.size() == pageSize)
+          return new SearchPageDto(hits, (long) lastHit);
+        hits.add(new SearchHitDto(document.conversationId, document.message));
+        lastHit = id;
+      }
+      return new SearchPageDto(hits, null);
+    } finally {
+      searchTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  /**
+   * Drops removed documents from the postings once they make up a quarter of the index.
+   */
+  @Scheduled(fixedDelayString = "${chat.search.purge-interval}")
+  public void purge() {
+    final int dead = removed.get();
+    if (dead == 0 || dead < documents.size() / 4)
+      return;
+    removed.addAndGet(-dead);
+    synchronized (lock) {
+      postings.forEach((term, list) -> {
+        list.retain(documents::containsKey);
+        if (0 == list.view().size)
+          postings.remove(term, list);
+      });
+    }
+  }
+
+  private static boolean inAll(List<View> lists, int id) {
+    for (int i = 1; i < lists.size(); i++)
+      if (!lists.get(i).contains(id))
+        return false;
+    return true;
+  }
+
+  private static int lowerBound(View view, long value) {
+    int low = 0;
+    int high = view.size;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (view.ids[middle] < value)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  private static class Document {
+    private final String conversationId;
+    private final ChatOutMessage message;
+    private final long addedAt;
+
+    private Document(String conversationId, ChatOutMessage message, long addedAt) {
+      this.conversationId = conversationId;
+      this.message = message;
+      this.addedAt = addedAt;
+    }
+  }
+
+  /**
+   * Sorted, append only document ids of one term, written under the index lock.
+   * Appends never touch the part of the array a published view covers, so readers use a view without locking.
+   */
+  private static class Postings {
+    private volatile View view = new View(new int[4], 0);
+
+    View view() {
+      return view;
+    }
+
+    void add(int id) {
+      final View current = view;
+      int[] ids = current.ids;
+      if (current.size == ids.length)
+        ids = Arrays.copyOf(ids, ids.length * 2);
+      ids[current.size] = id;
+      view = new View(ids, current.size + 1);
+    }
+
+    void retain(IntPredicate keep) {
+      final View current = view;
+      final int[] ids = new int[Math.max(4, current.size)];
+      int kept = 0;
+      for (int i = 0; i < current.size; i++)
+        if (keep.test(current.ids[i]))
+          ids[kept++] = current.ids[i];
+      view = new View(ids, kept);
+    }
+  }
+
+  private static class View {
+    private final int[] ids;
+    private final int size;
+
+    private View(int[] ids, int size) {
+      this.ids = ids;
+      this.size = size;
+    }
+
+    private boolean contains(int id) {
+      return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+  }
+}
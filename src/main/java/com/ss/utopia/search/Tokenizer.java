@@ -0,0 +1,65 @@
+package com.ss.utopia.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits text into normalized index terms: lower case, accents removed, common English stop words dropped
+ * and plural/verb endings stripped, so "Checked bags?" and "check bag" produce the same terms.
+ * Shared by every index so queries and documents are always normalized the same way.
+ */
+public final class Tokenizer {
+  private static final Set<String> STOP_WORDS = Set.of(
+    "a", "an", "and", "are", "as", "at", "be", "but", "by", "can", "could", "do", "does", "for", "from", "have",
+    "how", "i", "if", "in", "is", "it", "me", "my", "of", "on", "or", "our", "so", "that", "the", "there", "this",
+    "to", "was", "we", "what", "when", "where", "which", "who", "will", "with", "would", "you", "your");
+
+  private Tokenizer() {
+  }
+
+  public static List<String> tokenize(String text) {
+    final List<String> tokens = new ArrayList<>();
+    if (null == text)
+      return tokens;
+    final String source = isAscii(text) ? text : stripAccents(text);
+    final StringBuilder token = new StringBuilder();
+    for (int i = 0; i <= source.length(); i++) {
+      final char c = (i < source.length()) ? source.charAt(i) : ' ';
+      if (Character.isLetterOrDigit(c)) {
+        token.append(Character.toLowerCase(c));
+      } else if (token.length() > 0) {
+        final String term = token.toString();
+        token.setLength(0);
+        if (!STOP_WORDS.contains(term))
+          tokens.add(stem(term));
+      }
+    }
+    return tokens;
+  }
+
+  static String stem(String term) {
+    final int length = term.length();
+    if (length > 4 && term.endsWith("ies"))
+      return term.substring(0, length - 3) + "y";
+    if (length > 5 && term.endsWith("ing"))
+      return term.substring(0, length - 3);
+    if (length > 4 && term.endsWith("ed"))
+      return term.substring(0, length - 2);
+    if (length > 3 && term.endsWith("s") && !term.endsWith("ss") && !term.endsWith("us"))
+      return term.substring(0, length - 1);
+    return term;
+  }
+
+  private static boolean isAscii(String text) {
+    for (int i = 0; i < text.length(); i++)
+      if (text.charAt(i) > 127)
+        return false;
+    return true;
+  }
+
+  private static String stripAccents(String text) {
+    return Normalizer.normalize(text, Normalizer.Form.NFD).replaceAll("\\p{M}+", "");
+  }
+}
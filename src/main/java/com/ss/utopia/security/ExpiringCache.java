@@ -0,0 +1,84 @@
+package com.ss.utopia.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Size bounded cache where every entry carries its own expiry time.
+ * Expired entries are dropped when read and purged when the cache is full;
+ * if the cache is still full after the purge an arbitrary tenth of it is evicted, so the size never exceeds maxSize.
+ * Puts are serialized so concurrent inserts cannot overshoot the bound together; reads and removals never lock.
+ */
+public class ExpiringCache<K, V> {
+  private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  public ExpiringCache(int maxSize) {
+    if (maxSize <= 0)
+      throw new IllegalArgumentException("maxSize must be positive");
+    this.maxSize = maxSize;
+  }
+
+  public V get(K key, long nowInMilliseconds) {
+    final Entry<V> entry = entries.get(key);
+    if (null == entry)
+      return null;
+    if (entry.expiresAt <= nowInMilliseconds) {
+      entries.remove(key, entry);
+      return null;
+    }
+    return entry.value;
+  }
+
+  /**
+   * @return the expiry time of the live entry for the key, or -1 if there is none
+   */
+  public long expiresAt(K key, long nowInMilliseconds) {
+    final Entry<V> entry = entries.get(key);
+    return (null == entry || entry.expiresAt <= nowInMilliseconds) ? -1 : entry.expiresAt;
+  }
+
+  public synchronized void put(K key, V value, long expiresAtInMilliseconds, long nowInMilliseconds) {
+    if (expiresAtInMilliseconds <= nowInMilliseconds)
+      return;
+    if (entries.size() >= maxSize && !entries.containsKey(key))
+      makeRoom(nowInMilliseconds);
+    entries.put(key, new Entry<>(value, expiresAtInMilliseconds));
+  }
+
+  public void invalidate(K key) {
+    entries.remove(key);
+  }
+
+  public void invalidateAll() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  private void makeRoom(long nowInMilliseconds) {
+    entries.entrySet().removeIf(entry -> entry.getValue().expiresAt <= nowInMilliseconds);
+    if (entries.size() < maxSize)
+      return;
+    int toEvict = Math.max(1, maxSize / 10);
+    final Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+    while (toEvict-- > 0 && iterator.hasNext()) {
+      iterator.next();
+      iterator.remove();
+    }
+  }
+
+  private static final class Entry<V> {
+    private final V value;
+    private final long expiresAt;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+}
@@ -8,6 +8,9 @@ import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 
 import javax.servlet.http.Cookie;
 
@@ -17,6 +20,7 @@ import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.*;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.KeySpec;
@@ -32,15 +36,34 @@ public class JwtProvider {
   private final long validityInMilliseconds;
   private final ObjectMapper objectMapper = new ObjectMapper();
   private KeyPair keyPair;
+  private final ExpiringCache<String, VerifiedToken> verifiedTokens;
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
+  private final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  });
 
   @Autowired
   public JwtProvider(@Value("${security.jwt.token.secret-key}") String secretKey,
                      @Value("${security.jwt.token.expiration}") long validityInMilliseconds,
                      @Value("${AUTH_JWT_PRIVATE_KEY}") final String privateKey,
-                     @Value("${AUTH_JWT_PUBLIC_KEY}") final String publicKey) {
+                     @Value("${AUTH_JWT_PUBLIC_KEY}") final String publicKey,
+                     @Value("${security.jwt.cache.max-size}") int verifiedTokenCacheSize,
+                     MeterRegistry meterRegistry) {
     this.secretKey = Base64.getEncoder().encodeToString(secretKey.getBytes());
     this.validityInMilliseconds = validityInMilliseconds;
     this.keyPair = generateKeyPair(publicKey, privateKey);
+    this.verifiedTokens = new ExpiringCache<>(verifiedTokenCacheSize);
+    this.cacheHits = Counter.builder("security.jwt.cache").tag("result", "hit")
+      .description("Session cookies served from the verified token cache").register(meterRegistry);
+    this.cacheMisses = Counter.builder("security.jwt.cache").tag("result", "miss")
+      .description("Session cookies that had to be decoded and verified").register(meterRegistry);
+    Gauge.builder("security.jwt.cache.size", verifiedTokens, ExpiringCache::size)
+      .description("Verified tokens currently cached").register(meterRegistry);
   }
 
   public String createToken(String username, List<UserRole> roles) {
@@ -108,6 +131,43 @@ public class JwtProvider {
   }
 
   /* =======================================private public key======================================= */
+
+  /**
+   * Decodes the session cookie and verifies its token once, then serves the verified claims from a cache
+   * keyed by the SHA-256 digest of the cookie until the token expires.
+   * Only successfully verified tokens are cached so invalid tokens cannot fill the cache.
+   */
+  public Optional<VerifiedToken> verifySessionCookie(String cookieValue) {
+    final long now = System.currentTimeMillis();
+    final String digest = digest(cookieValue);
+    final VerifiedToken cached = verifiedTokens.get(digest, now);
+    if (null != cached) {
+      cacheHits.increment();
+      return Optional.of(cached);
+    }
+    cacheMisses.increment();
+    final Optional<VerifiedToken> verified = parseTokenRS256(cookieValue).flatMap(this::verifyTokenRS256);
+    verified.ifPresent(token -> verifiedTokens.put(digest, token, token.getExpiresAt(), now));
+    return verified;
+  }
+
+  public Optional<VerifiedToken> verifyTokenRS256(String token) {
+    try {
+      final Claims claims = Jwts.parser().setSigningKey(keyPair.getPublic()).parseClaimsJws(token).getBody();
+      if (null == claims.getExpiration() || claims.getExpiration().before(new Date()))
+        return Optional.empty();
+      return Optional.of(new VerifiedToken(Long.parseLong(claims.getSubject(), 16), claims.getExpiration().getTime()));
+    } catch (JwtException | IllegalArgumentException e) {
+      return Optional.empty();
+    }
+  }
+
+  private String digest(String value) {
+    final MessageDigest messageDigest = sha256.get();
+    messageDigest.reset();
+    return Base64.getEncoder().encodeToString(messageDigest.digest(value.getBytes(StandardCharsets.UTF_8)));
+  }
+
   public Long getUserId(String token) {
     return Long.parseLong(Jwts.parser().setSigningKey(keyPair.getPublic())
       .parseClaimsJws(token).getBody().getSubject(), 16);
@@ -45,17 +45,17 @@ public class JwtTokenFilter extends OncePerRequestFilter {
   protected void doFilterInternal(HttpServletRequest request,
                                   HttpServletResponse response,
                                   FilterChain filterChain) throws ServletException, IOException {
-    LOGGER.info("Process request to check for a JSON Web Token");
+    LOGGER.debug("Process request to check for a JSON Web Token");
     final Cookie[] cookies = request.getCookies();
 //    && cookie.isHttpOnly()
     try {
-      final Optional<Cookie> sessionCookie = Arrays.stream(cookies)
-        .filter(cookie -> cookie.getName().matches("^session$")).findFirst();
+      final Optional<Cookie> sessionCookie = (null == cookies) ? Optional.empty() : Arrays.stream(cookies)
+        .filter(cookie -> "session".equals(cookie.getName())).findFirst();
       if (sessionCookie.isPresent()) {
-        String parsedToken = jwtProvider.parseTokenRS256(sessionCookie.get().getValue()).orElseThrow(() -> new Exception());
-        if (jwtProvider.isValidTokenRS256(parsedToken)) {
+        Optional<VerifiedToken> verifiedToken = jwtProvider.verifySessionCookie(sessionCookie.get().getValue());
+        if (verifiedToken.isPresent()) {
 //          Optional<UserDetails> userDetails = utopiaUserDetailService.loadUserByJwtToken(parsedToken);
-          Optional<UserDetails> userDetails = utopiaUserDetailService.loadUserByJwtTokenRSA256(parsedToken);
+          Optional<UserDetails> userDetails = utopiaUserDetailService.loadUserById(verifiedToken.get().getUserId());
           userDetails.ifPresent(userDetail ->
             SecurityContextHolder.getContext().setAuthentication(
               new PreAuthenticatedAuthenticationToken(
@@ -2,25 +2,97 @@ package com.ss.utopia.security;
 
 import com.ss.utopia.dao.UserRepository;
 import com.ss.utopia.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import static org.springframework.security.core.userdetails.User.withUsername;
 
+/**
+ * Users authenticated by token are kept in memory for {@code security.user-cache.ttl} so an authenticated
+ * request does not need a database round trip. When {@code security.user-cache.refresh-ahead} is positive,
+ * a hit that close to expiry reloads the user in the background while the cached copy is still served.
+ * Accounts are owned by the user service, which calls {@link #invalidate} or {@link #invalidateAll} through
+ * the /api/users/cache endpoints when a role changes or an account is deleted, so the change applies to the
+ * next request. A load that was already running when the user was invalidated does not put its copy back.
+ */
 @Service
 public class UtopiaUserDetailService implements UserDetailsService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(UtopiaUserDetailService.class);
   private final UserRepository userRepository;
   private final JwtProvider jwtProvider;
+  private final ExpiringCache<Long, UserDetails> userCache;
+  private final long ttlInMilliseconds;
+  private final long refreshAheadInMilliseconds;
+  private final Set<Long> refreshing = ConcurrentHashMap.newKeySet();
+  private final AtomicLong invalidations = new AtomicLong();
+  private final ExecutorService refreshExecutor;
+  private final LongSupplier clock;
+  private final Counter cacheHits;
+  private final Counter cacheMisses;
+  private final Counter refreshes;
 
   @Autowired
-  public UtopiaUserDetailService(UserRepository userRepository, JwtProvider jwtProvider) {
+  public UtopiaUserDetailService(UserRepository userRepository,
+                                 JwtProvider jwtProvider,
+                                 @Value("${security.user-cache.max-size}") int maxSize,
+                                 @Value("${security.user-cache.ttl}") long ttlInMilliseconds,
+                                 @Value("${security.user-cache.refresh-ahead}") long refreshAheadInMilliseconds,
+                                 MeterRegistry meterRegistry) {
+    this(userRepository, jwtProvider, maxSize, ttlInMilliseconds, refreshAheadInMilliseconds, meterRegistry,
+      System::currentTimeMillis, Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "user-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+      }));
+  }
+
+  UtopiaUserDetailService(UserRepository userRepository,
+                          JwtProvider jwtProvider,
+                          int maxSize,
+                          long ttlInMilliseconds,
+                          long refreshAheadInMilliseconds,
+                          MeterRegistry meterRegistry,
+                          LongSupplier clock,
+                          ExecutorService refreshExecutor) {
     this.userRepository = userRepository;
     this.jwtProvider = jwtProvider;
+    this.userCache = new ExpiringCache<>(maxSize);
+    this.ttlInMilliseconds = ttlInMilliseconds;
+    this.refreshAheadInMilliseconds = refreshAheadInMilliseconds;
+    this.clock = clock;
+    this.refreshExecutor = refreshExecutor;
+    this.cacheHits = Counter.builder("security.user.cache").tag("result", "hit")
+      .description("Authenticated users served from memory").register(meterRegistry);
+    this.cacheMisses = Counter.builder("security.user.cache").tag("result", "miss")
+      .description("Authenticated users loaded from the database").register(meterRegistry);
+    this.refreshes = Counter.builder("security.user.cache.refreshes")
+      .description("Cached users reloaded ahead of expiry").register(meterRegistry);
+    Gauge.builder("security.user.cache.size", userCache, ExpiringCache::size)
+      .description("Users currently cached").register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    refreshExecutor.shutdownNow();
   }
 
   @Override
@@ -51,20 +123,71 @@ public class UtopiaUserDetailService implements UserDetailsService {
   }
 
   public Optional<UserDetails> loadUserByJwtTokenRSA256(String jwtToken) {
-    Long id = jwtProvider.getUserId(jwtToken);
+    return loadUserById(jwtProvider.getUserId(jwtToken));
+  }
+
+  public Optional<UserDetails> loadUserById(Long id) {
+    final long now = clock.getAsLong();
+    final UserDetails cached = userCache.get(id, now);
+    if (null != cached) {
+      cacheHits.increment();
+      if (refreshAheadInMilliseconds > 0 && userCache.expiresAt(id, now) - now <= refreshAheadInMilliseconds)
+        refreshAsync(id);
+      return Optional.of(cached);
+    }
+    cacheMisses.increment();
+    return load(id);
+  }
+
+  public void invalidate(Long userId) {
+    invalidations.incrementAndGet();
+    userCache.invalidate(userId);
+  }
+
+  public void invalidateAll() {
+    invalidations.incrementAndGet();
+    userCache.invalidateAll();
+  }
+
+  private Optional<UserDetails> load(Long id) {
+    final long invalidationsBefore = invalidations.get();
     User user = userRepository.findById(id).orElse(null);
-    var role = user.getRole().getAuthority();
-    if (null == user)
+    if (null == user) {
+      userCache.invalidate(id);
       return Optional.empty();
-    else
-      return Optional.of(
-        withUsername(user.getUsername())
-          .password("")
-          .authorities(user.getRole().getAuthority())
-          .accountExpired(false)
-          .accountLocked(false)
-          .credentialsExpired(false)
-          .disabled(false)
-          .build());
+    }
+    final UserDetails userDetails = withUsername(user.getUsername())
+      .password("")
+      .authorities(user.getRole().getAuthority())
+      .accountExpired(false)
+      .accountLocked(false)
+      .credentialsExpired(false)
+      .disabled(false)
+      .build();
+    final long now = clock.getAsLong();
+    userCache.put(id, userDetails, now + ttlInMilliseconds, now);
+    // invalidations count up before they remove, so either this sees it or the removal comes after the put
+    if (invalidations.get() != invalidationsBefore)
+      userCache.invalidate(id);
+    return Optional.of(userDetails);
+  }
+
+  private void refreshAsync(Long id) {
+    if (!refreshing.add(id))
+      return;
+    try {
+      refreshExecutor.execute(() -> {
+        try {
+          refreshes.increment();
+          load(id);
+        } catch (Exception e) {
+          LOGGER.error("Failed to refresh cached user {}: {}", id, e.getMessage());
+        } finally {
+          refreshing.remove(id);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refreshing.remove(id);
+    }
   }
 }
@@ -0,0 +1,22 @@
+package com.ss.utopia.security;
+
+/**
+ * Claims of a session token whose RS256 signature has already been checked.
+ */
+public class VerifiedToken {
+  private final Long userId;
+  private final long expiresAt;
+
+  public VerifiedToken(Long userId, long expiresAt) {
+    this.userId = userId;
+    this.expiresAt = expiresAt;
+  }
+
+  public Long getUserId() {
+    return userId;
+  }
+
+  public long getExpiresAt() {
+    return expiresAt;
+  }
+}
@@ -0,0 +1,236 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dto.AssignmentDto;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.messaging.ChatBroker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.AbstractSubProtocolEvent;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes every new customer conversation to the least loaded connected admin.
+ * The load of an agent is its number of open conversations plus its smoothed response time weighted by
+ * chat.assignment.response-weight (conversations per second of response time).
+ * All state lives in concurrent maps and atomics; choosing an agent is a single scan over the connected agents.
+ * Conversations of an agent whose last session disconnects are handed to the remaining agents, or wait
+ * until the next agent connects.
+ */
+@Service
+public class AgentAssignmentService {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AgentAssignmentService.class);
+  public static final String DESTINATION = "/queue/private/assignment";
+  private static final SimpleGrantedAuthority ADMIN = new SimpleGrantedAuthority("ROLE_ADMIN");
+
+  private final ChatBroker chatBroker;
+  private final double responseWeight;
+  private final double responseSmoothing;
+  private final Map<String, Agent> agents = new ConcurrentHashMap<>();
+  private final Map<String, Agent> assignments = new ConcurrentHashMap<>();
+  private final Map<String, Long> waitingSince = new ConcurrentHashMap<>();
+  private final Queue<String> unassigned = new ConcurrentLinkedQueue<>();
+  private final Set<String> waitingForReassignment = ConcurrentHashMap.newKeySet();
+  private final Timer assignTimer;
+  private final Counter reassigned;
+
+  @Autowired
+  public AgentAssignmentService(ChatBroker chatBroker,
+                                @Value("${chat.assignment.response-weight}") double responseWeight,
+                                @Value("${chat.assignment.response-smoothing}") double responseSmoothing,
+                                MeterRegistry meterRegistry) {
+    this.chatBroker = chatBroker;
+    this.responseWeight = responseWeight;
+    this.responseSmoothing = responseSmoothing;
+    this.assignTimer = Timer.builder("chat.assignment.time")
+      .description("Time spent choosing an agent for a conversation").register(meterRegistry);
+    this.reassigned = Counter.builder("chat.assignment.reassigned")
+      .description("Conversations moved away from a disconnected agent").register(meterRegistry);
+    Gauge.builder("chat.assignment.agents", agents, Map::size)
+      .description("Connected agents").register(meterRegistry);
+    Gauge.builder("chat.assignment.unassigned", unassigned, Queue::size)
+      .description("Conversations waiting for an agent").register(meterRegistry);
+  }
+
+  public Optional<String> getAgent(String conversationId) {
+    return Optional.ofNullable(assignments.get(conversationId)).map(agent -> agent.name);
+  }
+
+  public Optional<String> assignIfAbsent(String conversationId) {
+    return assign(conversationId, false);
+  }
+
+  public void agentConnected(String name) {
+    // counted inside compute so a concurrent last disconnect cannot remove the agent after this session joined
+    final Agent agent = agents.compute(name, (key, current) -> {
+      final Agent connected = (null == current) ? new Agent(key) : current;
+      connected.sessions.incrementAndGet();
+      return connected;
+    });
+    if (1 == agent.sessions.get())
+      LOGGER.info("Agent {} is available", name);
+    String waiting;
+    while (null != (waiting = unassigned.poll()))
+      if (assign(waiting, waitingForReassignment.remove(waiting)).isEmpty())
+        break;
+  }
+
+  public void agentDisconnected(String name) {
+    final Agent agent = agents.get(name);
+    if (null == agent || agent.sessions.decrementAndGet() > 0)
+      return;
+    final boolean[] removed = {false};
+    agents.computeIfPresent(name, (key, current) -> {
+      if (current != agent || current.sessions.get() > 0)
+        return current;
+      removed[0] = true;
+      return null;
+    });
+    if (!removed[0])
+      return;
+    LOGGER.info("Agent {} left with {} open conversations", name, agent.conversations.size());
+    for (String conversationId : agent.conversations)
+      if (assignments.remove(conversationId, agent)) {
+        reassigned.increment();
+        assign(conversationId, true);
+      }
+  }
+
+  @EventListener
+  public void onSessionConnected(SessionConnectedEvent event) {
+    if (isAdmin(event))
+      agentConnected(event.getUser().getName());
+  }
+
+  @EventListener
+  public void onSessionDisconnect(SessionDisconnectEvent event) {
+    if (isAdmin(event))
+      agentDisconnected(event.getUser().getName());
+  }
+
+  /**
+   * Customer messages start the response clock of their conversation, the next agent message stops it.
+   * Virtual Bot answers are not agent responses.
+   */
+  @EventListener
+  public void onMessageAdded(ChatMessageAddedEvent event) {
+    if (FaqResponder.BOT_NAME.equals(event.getMessage().getSenderShortName()))
+      return;
+    final String conversationId = event.getConversationId();
+    if (conversationId.equals(event.getMessage().getSenderId())) {
+      waitingSince.putIfAbsent(conversationId, System.nanoTime());
+      return;
+    }
+    final Long since = waitingSince.remove(conversationId);
+    final Agent agent = assignments.get(conversationId);
+    if (null != since && null != agent)
+      agent.recordResponse(System.nanoTime() - since, responseSmoothing);
+  }
+
+  @EventListener
+  public void onConversationClosed(ConversationClosedEvent event) {
+    final String conversationId = event.getConversationId();
+    waitingSince.remove(conversationId);
+    unassigned.remove(conversationId);
+    waitingForReassignment.remove(conversationId);
+    final Agent agent = assignments.remove(conversationId);
+    if (null != agent)
+      agent.conversations.remove(conversationId);
+  }
+
+  private Optional<String> assign(String conversationId, boolean reassignment) {
+    final long started = System.nanoTime();
+    while (true) {
+      final Agent current = assignments.get(conversationId);
+      if (null != current)
+        return Optional.of(current.name);
+      final Agent agent = leastLoaded();
+      if (null == agent) {
+        if (reassignment)
+          waitingForReassignment.add(conversationId);
+        if (!unassigned.contains(conversationId))
+          unassigned.add(conversationId);
+        return Optional.empty();
+      }
+      if (null != assignments.putIfAbsent(conversationId, agent))
+        continue;
+      agent.conversations.add(conversationId);
+      if (agents.get(agent.name) != agent) {
+        // the agent left while the conversation was being handed to it
+        assignments.remove(conversationId, agent);
+        agent.conversations.remove(conversationId);
+        continue;
+      }
+      assignTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+      final AssignmentDto assignment = new AssignmentDto(conversationId,
+        ConversationRoster.displayName(conversationId), agent.name, reassignment);
+      chatBroker.sendToUser(agent.name, DESTINATION, assignment);
+      chatBroker.sendToUser(conversationId, DESTINATION, assignment);
+      return Optional.of(agent.name);
+    }
+  }
+
+  private Agent leastLoaded() {
+    Agent best = null;
+    double bestLoad = Double.MAX_VALUE;
+    for (Agent agent : agents.values()) {
+      final double load = agent.load(responseWeight);
+      if (load < bestLoad) {
+        best = agent;
+        bestLoad = load;
+      }
+    }
+    return best;
+  }
+
+  private static boolean isAdmin(AbstractSubProtocolEvent event) {
+    final Principal user = event.getUser();
+    return user instanceof Authentication && ((Authentication) user).getAuthorities().contains(ADMIN);
+  }
+
+  private static class Agent {
+    private final String name;
+    private final AtomicInteger sessions = new AtomicInteger();
+    private final Set<String> conversations = ConcurrentHashMap.newKeySet();
+    private final AtomicLong responseNanos = new AtomicLong();
+
+    private Agent(String name) {
+      this.name = name;
+    }
+
+    private double load(double responseWeight) {
+      return conversations.size() + responseWeight * responseNanos.get() / 1_000_000_000d;
+    }
+
+    private void recordResponse(long nanos, double smoothing) {
+      long previous;
+      long next;
+      do {
+        previous = responseNanos.get();
+        next = (0 == previous) ? nanos : previous + (long) (smoothing * (nanos - previous));
+      } while (!responseNanos.compareAndSet(previous, next));
+    }
+  }
+}
@@ -2,32 +2,139 @@ package com.ss.utopia.service;
 
 import com.ss.utopia.dao.UserRepository;
 import com.ss.utopia.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.AuthenticationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Password logins. The user is read once on the request thread, the BCrypt check runs on a pool of
+ * {@code security.login.threads} threads so a login storm cannot take more CPU than that away from
+ * the rest of the service. At most {@code security.login.queue-capacity} attempts wait for a hashing
+ * thread; beyond that an attempt is refused at once with {@link LoginOverloadedException}, carrying a
+ * retry delay estimated from the current backlog and the mean hashing time.
+ */
 @Service
 public class AuthService {
   private static final Logger LOGGER = LoggerFactory.getLogger(AuthService.class);
   private final UserRepository userRepository;
-  private final AuthenticationManager authenticationManager;
+  private final PasswordEncoder passwordEncoder;
+  private final int threads;
+  private final Semaphore admissions;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final ExecutorService hashExecutor;
+  private final String unknownUserHash;
+  private final Timer loginTimer;
+  private final Timer queueTimer;
+  private final Timer hashTimer;
+  private final Counter succeeded;
+  private final Counter failed;
+  private final Counter rejected;
 
   @Autowired
-  public AuthService(UserRepository userRepository, AuthenticationManager authenticationManager) {
+  public AuthService(UserRepository userRepository,
+                     PasswordEncoder passwordEncoder,
+                     @Value("${security.login.threads}") int threads,
+                     @Value("${security.login.queue-capacity}") int queueCapacity,
+                     MeterRegistry meterRegistry) {
     this.userRepository = userRepository;
-    this.authenticationManager = authenticationManager;
+    this.passwordEncoder = passwordEncoder;
+    this.threads = (threads > 0) ? threads : Runtime.getRuntime().availableProcessors();
+    this.admissions = new Semaphore(this.threads + queueCapacity);
+    final AtomicInteger threadCount = new AtomicInteger();
+    this.hashExecutor = Executors.newFixedThreadPool(this.threads, runnable -> {
+      final Thread thread = new Thread(runnable, "login-hash-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // unknown usernames are checked against this hash so they take as long as a wrong password
+    this.unknownUserHash = passwordEncoder.encode("unknown-user");
+    this.loginTimer = Timer.builder("security.login")
+      .description("Time to answer a login attempt").publishPercentileHistogram().register(meterRegistry);
+    this.queueTimer = Timer.builder("security.login.queue")
+      .description("Time a login attempt waited for a hashing thread").publishPercentileHistogram().register(meterRegistry);
+    this.hashTimer = Timer.builder("security.login.hash")
+      .description("Time spent checking one password").publishPercentileHistogram().register(meterRegistry);
+    this.succeeded = Counter.builder("security.login.attempts").tag("result", "success")
+      .description("Login attempts with valid credentials").register(meterRegistry);
+    this.failed = Counter.builder("security.login.attempts").tag("result", "failure")
+      .description("Login attempts with an unknown user or a wrong password").register(meterRegistry);
+    this.rejected = Counter.builder("security.login.attempts").tag("result", "rejected")
+      .description("Login attempts refused because the hashing queue was full").register(meterRegistry);
+    Gauge.builder("security.login.in-flight", inFlight, AtomicInteger::get)
+      .description("Login attempts hashing or waiting for a hashing thread").register(meterRegistry);
   }
 
-  public Optional<User> signin(String username, String password) throws AuthenticationException {
-    LOGGER.info("New user attempting to sign in");
-    Optional<User> user = userRepository.findByUsername(username);
-    authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(username, password));
-    return user;
+  @PreDestroy
+  public void shutdown() {
+    hashExecutor.shutdownNow();
+  }
+
+  public Optional<User> signin(String username, String password) {
+    final long started = System.nanoTime();
+    if (!admissions.tryAcquire()) {
+      rejected.increment();
+      throw new LoginOverloadedException(retryAfterSeconds());
+    }
+    inFlight.incrementAndGet();
+    try {
+      LOGGER.info("New user attempting to sign in");
+      final Optional<User> user = userRepository.findByUsername(username);
+      final String hash = user.map(User::getPassword).orElse(unknownUserHash);
+      final long queued = System.nanoTime();
+      final Future<Boolean> matches = hashExecutor.submit(() -> {
+        queueTimer.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+        final long hashStarted = System.nanoTime();
+        try {
+          return passwordEncoder.matches(password, hash);
+        } finally {
+          hashTimer.record(System.nanoTime() - hashStarted, TimeUnit.NANOSECONDS);
+        }
+      });
+      if (awaitMatch(matches) && user.isPresent()) {
+        succeeded.increment();
+        return user;
+      }
+      failed.increment();
+      return Optional.empty();
+    } finally {
+      inFlight.decrementAndGet();
+      admissions.release();
+      loginTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private boolean awaitMatch(Future<Boolean> matches) {
+    try {
+      return matches.get();
+    } catch (InterruptedException e) {
+      matches.cancel(true);
+      Thread.currentThread().interrupt();
+      return false;
+    } catch (ExecutionException e) {
+      LOGGER.error(e.getCause().getMessage());
+      return false;
+    }
+  }
+
+  private long retryAfterSeconds() {
+    final double meanHashSeconds = hashTimer.mean(TimeUnit.SECONDS);
+    return Math.max(1L, (long) Math.ceil(inFlight.get() * meanHashSeconds / threads));
   }
 }
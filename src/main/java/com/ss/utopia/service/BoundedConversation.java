@@ -0,0 +1,167 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.model.EncodedChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed capacity ring buffer of the most recent messages of a conversation.
+ * Once the buffer is full every append overwrites the oldest message.
+ * Sequences only grow but may have gaps once restored history is put back, so pages search them.
+ * The conversation keeps track of the approximate heap it holds so the store can enforce a global budget.
+ */
+final class BoundedConversation {
+  private static final int MESSAGE_OVERHEAD_BYTES = 96;
+  private static final int DATE_BYTES = 24;
+  private static final int ARRAY_BYTES = 16;
+
+  private final ChatOutMessage[] buffer;
+  private final long[] sizes;
+  /**
+   * Messages ever stored, the position of the next one in the buffer.
+   */
+  private long appended;
+  private long lastSequence;
+  private long bytes;
+  private boolean closed;
+  private volatile long lastAccessNanos = System.nanoTime();
+
+  BoundedConversation(int capacity) {
+    this.buffer = new ChatOutMessage[capacity];
+    this.sizes = new long[capacity];
+  }
+
+  /**
+   * @return the change in retained bytes, or -1 if the conversation has been evicted
+   */
+  synchronized long append(ChatOutMessage message, ObjectMapper encoder) {
+    if (closed)
+      return -1;
+    message.setSequence(lastSequence + 1);
+    message.encode(encoder);
+    return store(message);
+  }
+
+  /**
+   * Puts back a message with the sequence it had before, later appends continue after it.
+   *
+   * @return the change in retained bytes, or -1 if the conversation has been evicted or the message is not newer
+   * than the last one, restored messages must come oldest first
+   */
+  synchronized long restore(ChatOutMessage message, ObjectMapper encoder) {
+    if (closed || message.getSequence() <= lastSequence)
+      return -1;
+    message.encode(encoder);
+    return store(message);
+  }
+
+  private long store(ChatOutMessage message) {
+    final int slot = (int) (appended % buffer.length);
+    final long size = estimateBytes(message);
+    final long delta = size - sizes[slot];
+    appended++;
+    lastSequence = message.getSequence();
+    buffer[slot] = message;
+    sizes[slot] = size;
+    bytes += delta;
+    touch();
+    return delta;
+  }
+
+  synchronized List<ChatOutMessage> snapshot() {
+    return range(oldestPosition(), appended);
+  }
+
+  synchronized List<ChatOutMessage> pageBefore(long beforeSequence, int limit) {
+    final long to = positionAfter(beforeSequence - 1);
+    return range(Math.max(oldestPosition(), to - limit), to);
+  }
+
+  synchronized List<ChatOutMessage> pageAfter(long afterSequence, int limit) {
+    final long from = positionAfter(afterSequence);
+    return range(from, Math.min(appended, from + limit));
+  }
+
+  /**
+   * Must be called while holding the conversation lock.
+   *
+   * @param from first position to include
+   * @param to   first position to exclude
+   */
+  private List<ChatOutMessage> range(long from, long to) {
+    touch();
+    if (from >= to)
+      return Collections.emptyList();
+    final List<ChatOutMessage> messages = new ArrayList<>((int) (to - from));
+    for (long position = from; position < to; position++)
+      messages.add(at(position));
+    return Collections.unmodifiableList(messages);
+  }
+
+  /**
+   * Must be called while holding the conversation lock.
+   *
+   * @return the position of the first held message with a sequence greater than the given one
+   */
+  private long positionAfter(long sequence) {
+    long low = oldestPosition();
+    long high = appended;
+    while (low < high) {
+      final long middle = (low + high) >>> 1;
+      if (at(middle).getSequence() <= sequence)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  private ChatOutMessage at(long position) {
+    return buffer[(int) (position % buffer.length)];
+  }
+
+  private long oldestPosition() {
+    return Math.max(0, appended - buffer.length);
+  }
+
+  /**
+   * Marks the conversation as evicted so late appends are rejected instead of leaking into the budget.
+   *
+   * @return the bytes released by the conversation
+   */
+  synchronized long close() {
+    closed = true;
+    return bytes;
+  }
+
+  long lastAccessNanos() {
+    return lastAccessNanos;
+  }
+
+  private void touch() {
+    lastAccessNanos = System.nanoTime();
+  }
+
+  /**
+   * The fields of the message plus its encoded JSON, kept both as characters and as UTF-8 bytes.
+   */
+  static long estimateBytes(ChatOutMessage message) {
+    final EncodedChatMessage encoded = message.getEncoded();
+    return MESSAGE_OVERHEAD_BYTES
+      + stringBytes(message.getSenderId())
+      + stringBytes(message.getContent())
+      + stringBytes(message.getGroupName())
+      + stringBytes(message.getSenderShortName())
+      + ((null == message.getSentTimestamp()) ? 0 : DATE_BYTES)
+      + ((null == encoded) ? 0 : MESSAGE_OVERHEAD_BYTES + 40L + 2L * encoded.length()
+      + ARRAY_BYTES + encoded.getUtf8().length);
+  }
+
+  private static long stringBytes(String value) {
+    return (null == value) ? 0 : 40L + 2L * value.length();
+  }
+}
@@ -0,0 +1,195 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Memory bounded conversation store.
+ * Each conversation keeps only its last {@code chat.history.capacity} messages, the sum of all conversations
+ * is held under {@code chat.history.max-bytes} by evicting the least recently used conversations,
+ * and conversations idle for longer than {@code chat.history.idle-timeout} are swept periodically.
+ * Evictions are announced with a {@link ConversationClosedEvent}.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.history.mode", havingValue = "bounded")
+public class BoundedConversationStore implements ConversationStore {
+  private static final Logger LOGGER = LoggerFactory.getLogger(BoundedConversationStore.class);
+
+  private final ConcurrentMap<String, BoundedConversation> conversations = new ConcurrentHashMap<>();
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private final int capacity;
+  private final long maxBytes;
+  private final long idleTimeoutNanos;
+  private final Counter budgetEvictions;
+  private final Counter idleEvictions;
+  private final ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  public BoundedConversationStore(@Value("${chat.history.capacity}") int capacity,
+                                  @Value("${chat.history.max-bytes}") long maxBytes,
+                                  @Value("${chat.history.idle-timeout}") long idleTimeoutInMilliseconds,
+                                  MeterRegistry meterRegistry,
+                                  ApplicationEventPublisher eventPublisher) {
+    if (capacity <= 0)
+      throw new IllegalArgumentException("chat.history.capacity must be positive");
+    this.capacity = capacity;
+    this.maxBytes = maxBytes;
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutInMilliseconds);
+    this.eventPublisher = eventPublisher;
+    this.budgetEvictions = Counter.builder("chat.history.evictions").tag("reason", "budget")
+      .description("Conversations evicted to stay under the history byte budget").register(meterRegistry);
+    this.idleEvictions = Counter.builder("chat.history.evictions").tag("reason", "idle")
+      .description("Conversations evicted after being idle").register(meterRegistry);
+    Gauge.builder("chat.history.bytes", usedBytes, AtomicLong::get)
+      .description("Approximate heap held by chat history").baseUnit("bytes").register(meterRegistry);
+    Gauge.builder("chat.history.conversations", conversations, Map::size)
+      .description("Open conversations").register(meterRegistry);
+  }
+
+  @Override
+  public boolean createIfAbsent(String conversationId) {
+    if (conversations.containsKey(conversationId))
+      return false;
+    return null == conversations.putIfAbsent(conversationId, new BoundedConversation(capacity));
+  }
+
+  @Override
+  public boolean contains(String conversationId) {
+    return conversations.containsKey(conversationId);
+  }
+
+  @Override
+  public boolean append(String conversationId, ChatOutMessage message, ObjectMapper encoder) {
+    final BoundedConversation conversation = conversations.get(conversationId);
+    if (null == conversation)
+      return false;
+    return account(conversationId, conversation.append(message, encoder));
+  }
+
+  @Override
+  public boolean restore(String conversationId, ChatOutMessage message, ObjectMapper encoder) {
+    final BoundedConversation conversation = conversations.get(conversationId);
+    if (null == conversation)
+      return false;
+    return account(conversationId, conversation.restore(message, encoder));
+  }
+
+  private boolean account(String conversationId, long delta) {
+    if (delta < 0)
+      return false;
+    if (usedBytes.addAndGet(delta) > maxBytes)
+      evictOverBudget(conversationId);
+    return true;
+  }
+
+  @Override
+  public List<ChatOutMessage> snapshot(String conversationId) {
+    final BoundedConversation conversation = conversations.get(conversationId);
+    return (null == conversation) ? Collections.emptyList() : conversation.snapshot();
+  }
+
+  @Override
+  public List<ChatOutMessage> pageBefore(String conversationId, long beforeSequence, int limit) {
+    final BoundedConversation conversation = conversations.get(conversationId);
+    return (null == conversation) ? Collections.emptyList() : conversation.pageBefore(beforeSequence, limit);
+  }
+
+  @Override
+  public List<ChatOutMessage> pageAfter(String conversationId, long afterSequence, int limit) {
+    final BoundedConversation conversation = conversations.get(conversationId);
+    return (null == conversation) ? Collections.emptyList() : conversation.pageAfter(afterSequence, limit);
+  }
+
+  @Override
+  public Set<String> conversationIds() {
+    return Collections.unmodifiableSet(new HashSet<>(conversations.keySet()));
+  }
+
+  @Override
+  public boolean remove(String conversationId) {
+    final BoundedConversation conversation = conversations.remove(conversationId);
+    if (null == conversation)
+      return false;
+    usedBytes.addAndGet(-conversation.close());
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return conversations.size();
+  }
+
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  @Scheduled(fixedDelayString = "${chat.history.sweep-interval}")
+  public void evictIdleConversations() {
+    final long now = System.nanoTime();
+    conversations.forEach((id, conversation) -> {
+      if (now - conversation.lastAccessNanos() >= idleTimeoutNanos && remove(id)) {
+        idleEvictions.increment();
+        eventPublisher.publishEvent(new ConversationClosedEvent(id, "idle"));
+        LOGGER.debug("Evicted idle conversation {}", id);
+      }
+    });
+  }
+
+  /**
+   * Evicts least recently used conversations until the store is back under budget.
+   * Only one thread evicts at a time, the others keep appending and are covered by the running pass.
+   * The conversation that triggered the eviction is kept unless it is the only one left.
+   */
+  private void evictOverBudget(String currentId) {
+    if (!evictionLock.tryLock())
+      return;
+    try {
+      while (usedBytes.get() > maxBytes) {
+        String oldestId = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (Map.Entry<String, BoundedConversation> entry : conversations.entrySet()) {
+          final long access = entry.getValue().lastAccessNanos();
+          if (!entry.getKey().equals(currentId) && (null == oldestId || access - oldestAccess < 0)) {
+            oldestId = entry.getKey();
+            oldestAccess = access;
+          }
+        }
+        if (null == oldestId)
+          oldestId = currentId;
+        if (remove(oldestId)) {
+          budgetEvictions.increment();
+          eventPublisher.publishEvent(new ConversationClosedEvent(oldestId, "budget"));
+          LOGGER.debug("Evicted conversation {} to stay under the history budget", oldestId);
+        }
+        if (oldestId.equals(currentId))
+          break;
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+}
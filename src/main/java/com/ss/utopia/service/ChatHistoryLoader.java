@@ -0,0 +1,50 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dao.ChatMessageRepository;
+import com.ss.utopia.model.ChatMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Rebuilds the in memory conversations on startup from the latest
+ * {@code chat.persistence.restore-per-conversation} persisted messages of every conversation,
+ * so each restored conversation ends with its own most recent history.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.persistence.restore-on-startup", havingValue = "true")
+public class ChatHistoryLoader {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChatHistoryLoader.class);
+  private final ChatMessageRepository chatMessageRepository;
+  private final ChatService chatService;
+  private final int restorePerConversation;
+
+  @Autowired
+  public ChatHistoryLoader(ChatMessageRepository chatMessageRepository,
+                           ChatService chatService,
+                           @Value("${chat.persistence.restore-per-conversation}") int restorePerConversation) {
+    this.chatMessageRepository = chatMessageRepository;
+    this.chatService = chatService;
+    this.restorePerConversation = restorePerConversation;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void restore() {
+    final List<ChatMessage> messages = chatMessageRepository.findLatestPerConversation(restorePerConversation);
+    int restored = 0;
+    // every node reads the shared table, each keeps only the conversations it owns
+    for (ChatMessage message : messages)
+      if (chatService.isLocal(message.getConversationId())) {
+        chatService.restoreMessage(message.getConversationId(), message.toChatOutMessage());
+        restored++;
+      }
+    LOGGER.info("Restored {} chat messages into {} conversations", restored, chatService.getConversationIds().size());
+  }
+}
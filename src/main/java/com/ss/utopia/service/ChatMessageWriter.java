@@ -0,0 +1,175 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write behind persistence of chat messages.
+ * The inbound thread only enqueues the message, a single writer thread drains the queue and
+ * inserts messages in JDBC batches once {@code chat.persistence.batch-size} messages are pending
+ * or {@code chat.persistence.flush-interval} has elapsed since the first pending one.
+ * When the queue is full the producer waits at most {@code chat.persistence.offer-timeout},
+ * after that the message is only kept in memory and counted as rejected.
+ * Batches go through JdbcTemplate because Hibernate cannot batch inserts of IDENTITY generated entities.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.persistence.enabled", havingValue = "true")
+public class ChatMessageWriter {
+  private static final Logger LOGGER = LoggerFactory.getLogger(ChatMessageWriter.class);
+  private static final String INSERT_SQL = "INSERT INTO chat_message " +
+    "(conversation_id, sender_id, sender_short_name, group_name, content, sent_timestamp, sequence_number) " +
+    "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+  private final JdbcTemplate jdbcTemplate;
+  private final BlockingQueue<ChatMessageAddedEvent> queue;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final long offerTimeoutInMilliseconds;
+  private final Timer flushTimer;
+  private final DistributionSummary batchSizeSummary;
+  private final Counter rejected;
+  private final Counter failed;
+  private volatile boolean running;
+  private Thread writerThread;
+
+  @Autowired
+  public ChatMessageWriter(JdbcTemplate jdbcTemplate,
+                           MeterRegistry meterRegistry,
+                           @Value("${chat.persistence.queue-capacity}") int queueCapacity,
+                           @Value("${chat.persistence.batch-size}") int batchSize,
+                           @Value("${chat.persistence.flush-interval}") long flushIntervalInMilliseconds,
+                           @Value("${chat.persistence.offer-timeout}") long offerTimeoutInMilliseconds) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.batchSize = batchSize;
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalInMilliseconds);
+    this.offerTimeoutInMilliseconds = offerTimeoutInMilliseconds;
+    this.flushTimer = Timer.builder("chat.persistence.flush")
+      .description("Time spent inserting a batch of chat messages").register(meterRegistry);
+    this.batchSizeSummary = DistributionSummary.builder("chat.persistence.batch.size")
+      .description("Chat messages per inserted batch").register(meterRegistry);
+    this.rejected = Counter.builder("chat.persistence.rejected")
+      .description("Chat messages not persisted because the write queue was full").register(meterRegistry);
+    this.failed = Counter.builder("chat.persistence.failed")
+      .description("Chat messages lost because their batch failed").register(meterRegistry);
+    Gauge.builder("chat.persistence.queue.size", queue, BlockingQueue::size)
+      .description("Chat messages waiting to be persisted").register(meterRegistry);
+  }
+
+  @PostConstruct
+  public void start() {
+    running = true;
+    writerThread = new Thread(this::drain, "chat-message-writer");
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  @PreDestroy
+  public void stop() throws InterruptedException {
+    running = false;
+    writerThread.interrupt();
+    writerThread.join(TimeUnit.SECONDS.toMillis(10));
+    final List<ChatMessageAddedEvent> remaining = new ArrayList<>();
+    queue.drainTo(remaining);
+    for (int from = 0; from < remaining.size(); from += batchSize)
+      flush(remaining.subList(from, Math.min(remaining.size(), from + batchSize)));
+  }
+
+  @EventListener
+  public void onMessageAdded(ChatMessageAddedEvent event) {
+    try {
+      if (!queue.offer(event, offerTimeoutInMilliseconds, TimeUnit.MILLISECONDS)) {
+        rejected.increment();
+        LOGGER.warn("Chat message queue is full, message for {} will not be persisted", event.getConversationId());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      rejected.increment();
+    }
+  }
+
+  private void drain() {
+    final List<ChatMessageAddedEvent> batch = new ArrayList<>(batchSize);
+    while (running) {
+      try {
+        final ChatMessageAddedEvent first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (null == first)
+          continue;
+        batch.add(first);
+        final long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+          queue.drainTo(batch, batchSize - batch.size());
+          final long remaining = deadline - System.nanoTime();
+          if (batch.size() >= batchSize || remaining <= 0)
+            break;
+          final ChatMessageAddedEvent next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+          if (null == next)
+            break;
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      }
+      if (!batch.isEmpty()) {
+        flush(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  private void flush(List<ChatMessageAddedEvent> batch) {
+    if (batch.isEmpty())
+      return;
+    try {
+      flushTimer.record(() -> jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+        @Override
+        public void setValues(PreparedStatement ps, int i) throws SQLException {
+          final ChatMessageAddedEvent event = batch.get(i);
+          final var message = event.getMessage();
+          ps.setString(1, event.getConversationId());
+          ps.setString(2, message.getSenderId());
+          ps.setString(3, message.getSenderShortName());
+          ps.setString(4, message.getGroupName());
+          ps.setString(5, message.getContent());
+          ps.setTimestamp(6, new Timestamp((null == message.getSentTimestamp())
+            ? event.getAddedAt() : message.getSentTimestamp().getTime()));
+          ps.setLong(7, message.getSequence());
+        }
+
+        @Override
+        public int getBatchSize() {
+          return batch.size();
+        }
+      }));
+      batchSizeSummary.record(batch.size());
+    } catch (Exception e) {
+      failed.increment(batch.size());
+      LOGGER.error("Failed to persist {} chat messages: {}", batch.size(), e.getMessage());
+    }
+  }
+}
@@ -1,13 +1,195 @@
 package com.ss.utopia.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.event.ConversationOpenedEvent;
+import com.ss.utopia.messaging.ClusterClient;
+import com.ss.utopia.messaging.ConversationOwnership;
 import com.ss.utopia.model.ChatOutMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
+/**
+ * Conversations and their history.
+ * In a cluster every conversation lives on the node that owns it in {@link ConversationOwnership}:
+ * calls for a conversation owned elsewhere are forwarded to the owner, which stores the message and
+ * publishes the events, so history, roster, journal and persistence of a conversation all stay on one node.
+ * Accepted messages are encoded once with the ObjectMapper of the context, live delivery and history pages
+ * reuse the same bytes.
+ */
 @Service
 public class ChatService {
-  public final Map<String, List<ChatOutMessage>> chats = new HashMap<>();
+  private final ConversationStore conversationStore;
+  private final ApplicationEventPublisher eventPublisher;
+  private final int defaultPageSize;
+  private final int maxPageSize;
+  private final ConversationOwnership conversationOwnership;
+  private final ClusterClient clusterClient;
+  private final ObjectMapper objectMapper;
+
+  public ChatService(ConversationStore conversationStore,
+                     ApplicationEventPublisher eventPublisher,
+                     int defaultPageSize,
+                     int maxPageSize) {
+    this(conversationStore, eventPublisher, defaultPageSize, maxPageSize, null, null, new ObjectMapper());
+  }
+
+  @Autowired
+  public ChatService(ConversationStore conversationStore,
+                     ApplicationEventPublisher eventPublisher,
+                     @Value("${chat.history.page-size}") int defaultPageSize,
+                     @Value("${chat.history.max-page-size}") int maxPageSize,
+                     ConversationOwnership conversationOwnership,
+                     ClusterClient clusterClient,
+                     ObjectMapper objectMapper) {
+    if (null != conversationOwnership && conversationOwnership.isClustered()
+      && (null == clusterClient || !clusterClient.isConfigured()))
+      throw new IllegalStateException("chat.cluster.secret is required when chat.cluster.nodes has several nodes");
+    this.conversationStore = conversationStore;
+    this.eventPublisher = eventPublisher;
+    this.defaultPageSize = defaultPageSize;
+    this.maxPageSize = maxPageSize;
+    this.conversationOwnership = conversationOwnership;
+    this.clusterClient = clusterClient;
+    this.objectMapper = objectMapper;
+  }
+
+  public boolean isLocal(String conversationId) {
+    return null == remoteOwner(conversationId);
+  }
+
+  public boolean openConversation(String conversationId) {
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.openConversation(owner, conversationId);
+    if (null == conversationId || !conversationStore.createIfAbsent(conversationId))
+      return false;
+    eventPublisher.publishEvent(new ConversationOpenedEvent(conversationId));
+    return true;
+  }
+
+  public boolean closeConversation(String conversationId, String reason) {
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.closeConversation(owner, conversationId, reason);
+    if (null == conversationId || !conversationStore.remove(conversationId))
+      return false;
+    eventPublisher.publishEvent(new ConversationClosedEvent(conversationId, reason));
+    return true;
+  }
+
+  public boolean hasConversation(String conversationId) {
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.hasConversation(owner, conversationId);
+    return null != conversationId && conversationStore.contains(conversationId);
+  }
+
+  public boolean addMessage(String conversationId, ChatOutMessage message) {
+    final String owner = remoteOwner(conversationId);
+    if (null != owner) {
+      final Long sequence = clusterClient.addMessage(owner, conversationId, message);
+      if (null == sequence)
+        return false;
+      message.setSequence(sequence);
+      message.encode(objectMapper);
+      return true;
+    }
+    if (null == conversationId || !conversationStore.append(conversationId, message, objectMapper))
+      return false;
+    eventPublisher.publishEvent(new ChatMessageAddedEvent(conversationId, message));
+    return true;
+  }
+
+  /**
+   * Puts back a message loaded from durable storage with the sequence it was stored with, so clients resyncing
+   * from their last seen sequence keep working across restarts. Messages stored without one get the next
+   * sequence. Only the opening of the conversation is announced, the message itself is not published again
+   * so it is not persisted twice.
+   */
+  public void restoreMessage(String conversationId, ChatOutMessage message) {
+    if (conversationStore.createIfAbsent(conversationId))
+      eventPublisher.publishEvent(new ConversationOpenedEvent(conversationId));
+    if (message.getSequence() > 0)
+      conversationStore.restore(conversationId, message, objectMapper);
+    else
+      conversationStore.append(conversationId, message, objectMapper);
+  }
+
+  public List<ChatOutMessage> getHistory(String conversationId) {
+    if (null == conversationId)
+      return Collections.emptyList();
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.getHistory(owner, conversationId, null);
+    return conversationStore.snapshot(conversationId);
+  }
+
+  public Optional<ChatOutMessage> getLastMessage(String conversationId) {
+    if (null == conversationId)
+      return Optional.empty();
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.getLastMessage(owner, conversationId);
+    final List<ChatOutMessage> messages = conversationStore.pageBefore(conversationId, Long.MAX_VALUE, 1);
+    return messages.isEmpty() ? Optional.empty() : Optional.of(messages.get(0));
+  }
+
+  public List<ChatOutMessage> getHistoryAfter(String conversationId, long afterSequence) {
+    if (null == conversationId)
+      return Collections.emptyList();
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.getHistory(owner, conversationId, afterSequence);
+    return conversationStore.pageAfter(conversationId, Math.max(0, afterSequence), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads one page of history, oldest message first. One extra message is read to tell whether more pages exist.
+   */
+  public ChatHistoryPageDto getHistoryPage(String conversationId, Long before, Long after, Integer limit) {
+    final int pageSize = (null == limit || limit <= 0) ? defaultPageSize : Math.min(limit, maxPageSize);
+    if (null == conversationId)
+      return new ChatHistoryPageDto(null, Collections.emptyList(), false);
+    final String owner = remoteOwner(conversationId);
+    if (null != owner)
+      return clusterClient.getHistoryPage(owner, conversationId, before, after, limit);
+    if (null == before && null != after) {
+      final List<ChatOutMessage> messages = conversationStore.pageAfter(conversationId, Math.max(0, after), pageSize + 1);
+      final boolean hasMore = messages.size() > pageSize;
+      return new ChatHistoryPageDto(conversationId, hasMore ? messages.subList(0, pageSize) : messages, hasMore);
+    }
+    // sequences start at 1, so nothing lies before anything lower; also keeps pageBefore from underflowing
+    final long beforeSequence = (null == before) ? Long.MAX_VALUE : Math.max(1, before);
+    final List<ChatOutMessage> messages = conversationStore.pageBefore(conversationId, beforeSequence, pageSize + 1);
+    final boolean hasMore = messages.size() > pageSize;
+    return new ChatHistoryPageDto(conversationId,
+      hasMore ? messages.subList(1, messages.size()) : messages, hasMore);
+  }
+
+  /**
+   * @return the conversations held by this node only
+   */
+  public Set<String> getConversationIds() {
+    return conversationStore.conversationIds();
+  }
+
+  /**
+   * @return the node to forward to, or null when the conversation is handled here
+   */
+  private String remoteOwner(String conversationId) {
+    if (null == conversationId || null == conversationOwnership || !conversationOwnership.isClustered()
+      || conversationOwnership.isLocal(conversationId))
+      return null;
+    return conversationOwnership.ownerOf(conversationId);
+  }
 }
@@ -0,0 +1,83 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Unbounded conversation store. Every conversation has its own lock for appends,
+ * so threads writing to different conversations never contend with each other.
+ */
+@Component
+@ConditionalOnProperty(name = "chat.history.mode", havingValue = "unbounded", matchIfMissing = true)
+public class ConcurrentConversationStore implements ConversationStore {
+  private final ConcurrentMap<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+  @Override
+  public boolean createIfAbsent(String conversationId) {
+    if (conversations.containsKey(conversationId))
+      return false;
+    return null == conversations.putIfAbsent(conversationId, new Conversation());
+  }
+
+  @Override
+  public boolean contains(String conversationId) {
+    return conversations.containsKey(conversationId);
+  }
+
+  @Override
+  public boolean append(String conversationId, ChatOutMessage message, ObjectMapper encoder) {
+    final Conversation conversation = conversations.get(conversationId);
+    if (null == conversation)
+      return false;
+    conversation.append(message, encoder);
+    return true;
+  }
+
+  @Override
+  public boolean restore(String conversationId, ChatOutMessage message, ObjectMapper encoder) {
+    final Conversation conversation = conversations.get(conversationId);
+    return null != conversation && conversation.restore(message, encoder);
+  }
+
+  @Override
+  public List<ChatOutMessage> snapshot(String conversationId) {
+    final Conversation conversation = conversations.get(conversationId);
+    return (null == conversation) ? Collections.emptyList() : conversation.snapshot();
+  }
+
+  @Override
+  public List<ChatOutMessage> pageBefore(String conversationId, long beforeSequence, int limit) {
+    final Conversation conversation = conversations.get(conversationId);
+    return (null == conversation) ? Collections.emptyList() : conversation.pageBefore(beforeSequence, limit);
+  }
+
+  @Override
+  public List<ChatOutMessage> pageAfter(String conversationId, long afterSequence, int limit) {
+    final Conversation conversation = conversations.get(conversationId);
+    return (null == conversation) ? Collections.emptyList() : conversation.pageAfter(afterSequence, limit);
+  }
+
+  @Override
+  public Set<String> conversationIds() {
+    return Collections.unmodifiableSet(new HashSet<>(conversations.keySet()));
+  }
+
+  @Override
+  public boolean remove(String conversationId) {
+    return null != conversations.remove(conversationId);
+  }
+
+  @Override
+  public int size() {
+    return conversations.size();
+  }
+}
@@ -0,0 +1,111 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append only message log of a single conversation.
+ * Messages are kept in fixed size chunks so an append never copies existing messages.
+ * Appends are serialized on the conversation itself, reads are lock free: the element is
+ * written before the volatile size is published, so a reader never sees a partially added message.
+ * Sequences only grow but may have gaps once restored history is put back, so pages search them.
+ */
+final class Conversation {
+  private static final int CHUNK_SHIFT = 6;
+  private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private volatile ChatOutMessage[][] chunks = new ChatOutMessage[1][];
+  private volatile int size;
+  private long lastSequence;
+
+  synchronized void append(ChatOutMessage message, ObjectMapper encoder) {
+    message.setSequence(lastSequence + 1);
+    message.encode(encoder);
+    store(message);
+  }
+
+  /**
+   * Puts back a message with the sequence it had before, later appends continue after it.
+   *
+   * @return false if the message is not newer than the last one, restored messages must come oldest first
+   */
+  synchronized boolean restore(ChatOutMessage message, ObjectMapper encoder) {
+    if (message.getSequence() <= lastSequence)
+      return false;
+    message.encode(encoder);
+    store(message);
+    return true;
+  }
+
+  private void store(ChatOutMessage message) {
+    final int index = size;
+    final int chunk = index >>> CHUNK_SHIFT;
+    ChatOutMessage[][] current = chunks;
+    if (chunk == current.length) {
+      current = Arrays.copyOf(current, current.length * 2);
+      chunks = current;
+    }
+    if (null == current[chunk])
+      current[chunk] = new ChatOutMessage[CHUNK_SIZE];
+    current[chunk][index & CHUNK_MASK] = message;
+    lastSequence = message.getSequence();
+    size = index + 1;
+  }
+
+  int size() {
+    return size;
+  }
+
+  List<ChatOutMessage> snapshot() {
+    final int count = size;
+    return range(chunks, 0, count);
+  }
+
+  List<ChatOutMessage> pageBefore(long beforeSequence, int limit) {
+    final int count = size;
+    final ChatOutMessage[][] current = chunks;
+    final int to = indexAfter(current, count, beforeSequence - 1);
+    return range(current, Math.max(0, to - limit), to);
+  }
+
+  List<ChatOutMessage> pageAfter(long afterSequence, int limit) {
+    final int count = size;
+    final ChatOutMessage[][] current = chunks;
+    final int from = indexAfter(current, count, afterSequence);
+    return range(current, from, (int) Math.min(count, (long) from + limit));
+  }
+
+  /**
+   * @return the index of the first of count messages with a sequence greater than the given one
+   */
+  private static int indexAfter(ChatOutMessage[][] current, int count, long sequence) {
+    int low = 0;
+    int high = count;
+    while (low < high) {
+      final int middle = (low + high) >>> 1;
+      if (current[middle >>> CHUNK_SHIFT][middle & CHUNK_MASK].getSequence() <= sequence)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  /**
+   * The chunks must be read after the size the range was computed from.
+   */
+  private static List<ChatOutMessage> range(ChatOutMessage[][] current, int from, int to) {
+    if (from >= to)
+      return Collections.emptyList();
+    final List<ChatOutMessage> messages = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++)
+      messages.add(current[i >>> CHUNK_SHIFT][i & CHUNK_MASK]);
+    return Collections.unmodifiableList(messages);
+  }
+}
@@ -0,0 +1,140 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dto.RosterDeltaDto;
+import com.ss.utopia.dto.RosterEntryDto;
+import com.ss.utopia.dto.RosterSnapshotDto;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.event.ConversationOpenedEvent;
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.messaging.ClusterClient;
+import com.ss.utopia.messaging.ConversationOwnership;
+import com.ss.utopia.model.ChatOutMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of the open conversations shown to admins.
+ * Entries are maintained from the conversation events so reading the roster never touches the store,
+ * and every change is pushed to {@link #TOPIC} as a versioned delta.
+ * Only admin sessions may subscribe to the topic, see {@code chat.subscribe.admin-only}.
+ * In a cluster every node only indexes the conversations it owns, {@link #clusterSnapshot()} gathers all of them.
+ */
+@Service
+public class ConversationRoster {
+  public static final String TOPIC = "/topic/roster";
+  private static final int PREVIEW_LENGTH = 80;
+
+  private final ConcurrentMap<String, RosterEntryDto> entries = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+  private final ChatService chatService;
+  private final ChatBroker chatBroker;
+  private final ConversationOwnership conversationOwnership;
+  private final ClusterClient clusterClient;
+
+  public ConversationRoster(ChatService chatService, ChatBroker chatBroker) {
+    this(chatService, chatBroker, null, null);
+  }
+
+  @Autowired
+  public ConversationRoster(ChatService chatService,
+                            ChatBroker chatBroker,
+                            ConversationOwnership conversationOwnership,
+                            ClusterClient clusterClient) {
+    this.chatService = chatService;
+    this.chatBroker = chatBroker;
+    this.conversationOwnership = conversationOwnership;
+    this.clusterClient = clusterClient;
+  }
+
+  public static String displayName(String conversationId) {
+    return conversationId.startsWith("Guest") ? "Guest #" + conversationId.substring(5) : conversationId;
+  }
+
+  public RosterSnapshotDto snapshot() {
+    final long current = version.get();
+    return new RosterSnapshotDto(current, new ArrayList<>(entries.values()));
+  }
+
+  /**
+   * The local snapshot merged with the snapshots of the other nodes.
+   * Each node numbers its own deltas, so a merged snapshot has version 0 and every delta received after it applies.
+   */
+  public RosterSnapshotDto clusterSnapshot() {
+    if (null == conversationOwnership || !conversationOwnership.isClustered())
+      return snapshot();
+    final List<RosterEntryDto> merged = new ArrayList<>(entries.values());
+    for (String node : conversationOwnership.getNodes())
+      if (!node.equals(conversationOwnership.getNodeId()))
+        clusterClient.getRoster(node).ifPresent(remote -> merged.addAll(remote.getEntries()));
+    return new RosterSnapshotDto(0, merged);
+  }
+
+  public Collection<RosterEntryDto> getEntries() {
+    return entries.values();
+  }
+
+  /**
+   * Picks up conversations restored before the event listeners were registered.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void seed() {
+    chatService.getConversationIds().forEach(id -> entries.computeIfAbsent(id, key ->
+      chatService.getLastMessage(key).map(message -> entry(key, message, message.getSentTimestamp()))
+        .orElseGet(() -> entry(key, null, null))));
+  }
+
+  @EventListener
+  public void onConversationOpened(ConversationOpenedEvent event) {
+    final RosterEntryDto entry = entry(event.getConversationId(), null, new Date());
+    if (null == entries.putIfAbsent(event.getConversationId(), entry))
+      publish(RosterDeltaDto.Type.ADDED, entry);
+  }
+
+  @EventListener
+  public void onMessageAdded(ChatMessageAddedEvent event) {
+    final String conversationId = event.getConversationId();
+    if (!chatService.hasConversation(conversationId))
+      return;
+    final ChatOutMessage message = event.getMessage();
+    final RosterEntryDto entry = entry(conversationId, message,
+      (null == message.getSentTimestamp()) ? new Date(event.getAddedAt()) : message.getSentTimestamp());
+    final RosterEntryDto previous = entries.put(conversationId, entry);
+    // closed while the entry was built, the close event may already have removed the previous entry
+    if (!chatService.hasConversation(conversationId)) {
+      entries.remove(conversationId, entry);
+      return;
+    }
+    publish((null == previous) ? RosterDeltaDto.Type.ADDED : RosterDeltaDto.Type.UPDATED, entry);
+  }
+
+  @EventListener
+  public void onConversationClosed(ConversationClosedEvent event) {
+    final RosterEntryDto removed = entries.remove(event.getConversationId());
+    if (null != removed)
+      publish(RosterDeltaDto.Type.REMOVED, removed);
+  }
+
+  private void publish(RosterDeltaDto.Type type, RosterEntryDto entry) {
+    chatBroker.broadcast(TOPIC, new RosterDeltaDto(type, version.incrementAndGet(), entry));
+  }
+
+  private static RosterEntryDto entry(String conversationId, ChatOutMessage lastMessage, Date lastMessageAt) {
+    if (null == lastMessage)
+      return new RosterEntryDto(conversationId, displayName(conversationId), 0, lastMessageAt, null);
+    final String content = lastMessage.getContent();
+    return new RosterEntryDto(conversationId, displayName(conversationId), lastMessage.getSequence(),
+      lastMessageAt,
+      (null == content || content.length() <= PREVIEW_LENGTH) ? content : content.substring(0, PREVIEW_LENGTH));
+  }
+}
@@ -0,0 +1,53 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Thread safe storage for the messages of every open conversation, keyed by customer id.
+ * Every appended message gets the next sequence number of its conversation, starting at 1.
+ * Restored messages keep the sequence they had before the restart, later appends continue after the last one.
+ * A message is encoded with the given encoder once it has its sequence and before any reader can see it.
+ * Reads always return a snapshot so callers can iterate while other threads keep appending.
+ */
+public interface ConversationStore {
+  /**
+   * @return true only for the caller that actually created the conversation
+   */
+  boolean createIfAbsent(String conversationId);
+
+  boolean contains(String conversationId);
+
+  /**
+   * @return false if the conversation does not exist
+   */
+  boolean append(String conversationId, ChatOutMessage message, ObjectMapper encoder);
+
+  /**
+   * Puts back a message with its own sequence number. Messages of a conversation must be restored oldest first.
+   *
+   * @return false if the conversation does not exist or the message is not newer than its last one
+   */
+  boolean restore(String conversationId, ChatOutMessage message, ObjectMapper encoder);
+
+  List<ChatOutMessage> snapshot(String conversationId);
+
+  /**
+   * @return at most limit of the newest messages with a sequence lower than beforeSequence, oldest first
+   */
+  List<ChatOutMessage> pageBefore(String conversationId, long beforeSequence, int limit);
+
+  /**
+   * @return at most limit of the oldest messages with a sequence greater than afterSequence, oldest first
+   */
+  List<ChatOutMessage> pageAfter(String conversationId, long afterSequence, int limit);
+
+  Set<String> conversationIds();
+
+  boolean remove(String conversationId);
+
+  int size();
+}
@@ -0,0 +1,90 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.search.FaqEntry;
+import com.ss.utopia.search.FaqIndex;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Virtual Bot: answers customer questions found in the FAQ corpus before they reach an agent.
+ * The corpus is loaded once into a FaqIndex, so answering never leaves memory.
+ */
+@Service
+public class FaqResponder {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FaqResponder.class);
+  public static final String BOT_SENDER_ID = "admin";
+  public static final String BOT_NAME = "Virtual Bot";
+
+  private final boolean enabled;
+  private final double minScore;
+  private final FaqIndex index;
+  private final Counter answered;
+  private final Counter unanswered;
+  private final Timer lookupTimer;
+
+  @Autowired
+  public FaqResponder(@Value("${chat.faq.enabled}") boolean enabled,
+                      @Value("${chat.faq.corpus}") Resource corpus,
+                      @Value("${chat.faq.min-score}") double minScore,
+                      MeterRegistry meterRegistry) throws IOException {
+    this(new FaqIndex(enabled ? load(corpus) : List.of()), enabled, minScore, meterRegistry);
+    LOGGER.info("Loaded {} FAQ entries", index.size());
+  }
+
+  FaqResponder(FaqIndex index, boolean enabled, double minScore, MeterRegistry meterRegistry) {
+    this.enabled = enabled;
+    this.minScore = minScore;
+    this.index = index;
+    this.answered = meterRegistry.counter("chat.faq.questions", "result", "answered");
+    this.unanswered = meterRegistry.counter("chat.faq.questions", "result", "unanswered");
+    this.lookupTimer = Timer.builder("chat.faq.lookup")
+      .description("Time spent looking a customer message up in the FAQ index").register(meterRegistry);
+  }
+
+  public Optional<ChatOutMessage> answer(String question) {
+    if (!enabled || null == question)
+      return Optional.empty();
+    final long started = System.nanoTime();
+    final Optional<FaqIndex.Match> match = index.lookup(question, minScore);
+    lookupTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    if (match.isEmpty()) {
+      unanswered.increment();
+      return Optional.empty();
+    }
+    answered.increment();
+    return Optional.of(botMessage(match.get().getEntry().getAnswer()));
+  }
+
+  public static ChatOutMessage botMessage(String content) {
+    final ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId(BOT_SENDER_ID);
+    message.setSenderShortName(BOT_NAME);
+    message.setContent(content);
+    message.setSentTimestamp(new Date());
+    return message;
+  }
+
+  private static List<FaqEntry> load(Resource corpus) throws IOException {
+    try (InputStream in = corpus.getInputStream()) {
+      return new ObjectMapper().readValue(in, new TypeReference<List<FaqEntry>>() {
+      });
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.ss.utopia.service;
+
+/**
+ * Thrown when a login attempt is refused because too many attempts are already waiting for a password check.
+ */
+public class LoginOverloadedException extends RuntimeException {
+  private final long retryAfterSeconds;
+
+  public LoginOverloadedException(long retryAfterSeconds) {
+    super("Too many login attempts in progress");
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  public long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
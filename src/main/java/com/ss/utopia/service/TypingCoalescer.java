@@ -0,0 +1,164 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Coalesces typing updates per (sender, receiver) pair.
+ * At most one typing state change is delivered per {@code chat.typing.window}; updates repeating the state
+ * already delivered are dropped, and changes arriving inside the window are collapsed into the latest one,
+ * delivered when the window closes. A pair silent for {@code chat.typing.ttl} is forgotten, and if it was
+ * still shown as typing the receiver is told it stopped.
+ */
+@Service
+public class TypingCoalescer {
+  public static final String DESTINATION = "/queue/private/update";
+
+  private final ConcurrentMap<String, TypingState> states = new ConcurrentHashMap<>();
+  private final ChatBroker chatBroker;
+  private final long windowNanos;
+  private final long ttlNanos;
+  private final ScheduledExecutorService scheduler;
+  private final LongSupplier nanoClock;
+  private final Counter delivered;
+  private final Counter coalesced;
+
+  @Autowired
+  public TypingCoalescer(ChatBroker chatBroker,
+                         MeterRegistry meterRegistry,
+                         @Value("${chat.typing.window}") long windowInMilliseconds,
+                         @Value("${chat.typing.ttl}") long ttlInMilliseconds) {
+    this(chatBroker, meterRegistry, windowInMilliseconds, ttlInMilliseconds, System::nanoTime,
+      Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "typing-coalescer");
+        thread.setDaemon(true);
+        return thread;
+      }));
+  }
+
+  TypingCoalescer(ChatBroker chatBroker,
+                  MeterRegistry meterRegistry,
+                  long windowInMilliseconds,
+                  long ttlInMilliseconds,
+                  LongSupplier nanoClock,
+                  ScheduledExecutorService scheduler) {
+    this.chatBroker = chatBroker;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowInMilliseconds);
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlInMilliseconds);
+    this.nanoClock = nanoClock;
+    this.scheduler = scheduler;
+    this.delivered = Counter.builder("chat.typing.updates").tag("result", "delivered")
+      .description("Typing updates forwarded to the receiver").register(meterRegistry);
+    this.coalesced = Counter.builder("chat.typing.updates").tag("result", "coalesced")
+      .description("Typing updates dropped or merged into a later one").register(meterRegistry);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  public void onTyping(String senderId, String receiver, String content) {
+    if (null == receiver)
+      return;
+    final long now = nanoClock.getAsLong();
+    final TypingState state = states.computeIfAbsent(senderId + '\u0000' + receiver,
+      key -> new TypingState(receiver, now - windowNanos));
+    final boolean deliverNow;
+    synchronized (state) {
+      state.lastSeenAt = now;
+      if (null == state.pending && Objects.equals(content, state.delivered)) {
+        coalesced.increment();
+        return;
+      }
+      if (now - state.deliveredAt >= windowNanos && !state.flushScheduled) {
+        state.delivered = content;
+        state.deliveredAt = now;
+        deliverNow = true;
+      } else {
+        if (null != state.pending)
+          coalesced.increment();
+        state.pending = content;
+        deliverNow = false;
+        if (!state.flushScheduled) {
+          state.flushScheduled = true;
+          scheduler.schedule(() -> flush(state), state.deliveredAt + windowNanos - now, TimeUnit.NANOSECONDS);
+        }
+      }
+    }
+    if (deliverNow)
+      deliver(state.receiver, content);
+  }
+
+  @Scheduled(fixedDelayString = "${chat.typing.ttl}")
+  public void expireIdlePairs() {
+    final long now = nanoClock.getAsLong();
+    states.forEach((key, state) -> {
+      final boolean stillTyping;
+      synchronized (state) {
+        if (now - state.lastSeenAt < ttlNanos || state.flushScheduled)
+          return;
+        stillTyping = null != state.delivered && !state.delivered.isEmpty();
+        states.remove(key, state);
+      }
+      if (stillTyping)
+        deliver(state.receiver, "");
+    });
+  }
+
+  public int size() {
+    return states.size();
+  }
+
+  private void flush(TypingState state) {
+    final String content;
+    synchronized (state) {
+      state.flushScheduled = false;
+      content = state.pending;
+      state.pending = null;
+      if (Objects.equals(content, state.delivered)) {
+        coalesced.increment();
+        return;
+      }
+      state.delivered = content;
+      state.deliveredAt = nanoClock.getAsLong();
+    }
+    deliver(state.receiver, content);
+  }
+
+  private void deliver(String receiver, String content) {
+    delivered.increment();
+    var chatOutMessage = new ChatOutMessage();
+    chatOutMessage.setContent(content);
+    chatBroker.sendToUser(receiver, DESTINATION, chatOutMessage);
+  }
+
+  private static final class TypingState {
+    private final String receiver;
+    private String delivered;
+    private long deliveredAt;
+    private String pending;
+    private boolean flushScheduled;
+    private long lastSeenAt;
+
+    private TypingState(String receiver, long deliveredAt) {
+      this.receiver = receiver;
+      this.deliveredAt = deliveredAt;
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dto.UserPageDto;
+import com.ss.utopia.dto.UserSummaryDto;
+import com.ss.utopia.model.UserRole;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads users as flat {@link UserSummaryDto} rows straight from JDBC, without building User entities.
+ * Pages seek on the primary key ({@code id > cursor ORDER BY id LIMIT n}), so every page costs one index
+ * range scan no matter how deep it is. {@link #forEach} reads the whole table through a cursor with
+ * {@code chat.users.fetch-size} rows per round trip and hands each row over before the next is read.
+ * The cursor runs on a pool of its own, at most {@code chat.users.max-streams} connections, which is the only
+ * one with useCursorFetch: Connector/J turns every statement of such a connection into a server-side prepared
+ * statement, and a listing held open by a slow client must not take connections from the rest of the service.
+ */
+@Component
+public class UserDirectory implements DisposableBean {
+  private static final String SELECT_SQL = "SELECT u.id, u.username, u.given_name, u.family_name, u.email, u.phone, " +
+    "r.id AS role_id, r.name AS role FROM USER u JOIN user_role r ON r.id = u.role_id ";
+  private static final String PAGE_SQL = SELECT_SQL + "WHERE u.id > ? ORDER BY u.id LIMIT ?";
+  private static final String ALL_SQL = SELECT_SQL + "ORDER BY u.id";
+  private static final RowMapper<UserSummaryDto> ROW_MAPPER = (rs, rowNum) -> new UserSummaryDto(
+    rs.getLong("id"), rs.getString("username"), rs.getString("given_name"), rs.getString("family_name"),
+    rs.getString("email"), rs.getString("phone"),
+    new UserRole(rs.getLong("role_id"), rs.getString("role")));
+
+  private final JdbcTemplate jdbcTemplate;
+  private final JdbcTemplate cursorTemplate;
+  private final int maxPageSize;
+  private final Timer pageTimer;
+  private final Counter streamed;
+
+  @Autowired
+  public UserDirectory(JdbcTemplate jdbcTemplate,
+                       DataSourceProperties dataSourceProperties,
+                       @Value("${chat.users.fetch-size}") int fetchSize,
+                       @Value("${chat.users.max-page-size}") int maxPageSize,
+                       @Value("${chat.users.max-streams}") int maxStreams,
+                       MeterRegistry meterRegistry) {
+    this(jdbcTemplate, cursorDataSource(dataSourceProperties, maxStreams), fetchSize, maxPageSize, meterRegistry);
+  }
+
+  UserDirectory(JdbcTemplate jdbcTemplate, DataSource cursorDataSource, int fetchSize, int maxPageSize,
+                MeterRegistry meterRegistry) {
+    this.jdbcTemplate = jdbcTemplate;
+    this.cursorTemplate = new JdbcTemplate(cursorDataSource);
+    this.cursorTemplate.setFetchSize(fetchSize);
+    this.maxPageSize = maxPageSize;
+    this.pageTimer = Timer.builder("chat.users.page")
+      .description("Time spent reading one page of users").register(meterRegistry);
+    this.streamed = Counter.builder("chat.users.streamed")
+      .description("Users written by streaming responses").register(meterRegistry);
+  }
+
+  private static DataSource cursorDataSource(DataSourceProperties properties, int maxStreams) {
+    String url = properties.determineUrl();
+    if (url.startsWith("jdbc:mysql:"))
+      url += (url.contains("?") ? "&" : "?") + "useCursorFetch=true";
+    final HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+      .type(HikariDataSource.class).url(url).build();
+    dataSource.setPoolName("users-cursor");
+    dataSource.setMaximumPoolSize(maxStreams);
+    dataSource.setMinimumIdle(0);
+    return dataSource;
+  }
+
+  public UserPageDto page(Long cursor, int limit) {
+    if (limit < 1)
+      throw new IllegalArgumentException("limit must be positive");
+    final int size = Math.min(limit, maxPageSize);
+    final List<UserSummaryDto> users = pageTimer.record(() ->
+      jdbcTemplate.query(PAGE_SQL, ROW_MAPPER, (null == cursor) ? 0L : cursor, size + 1));
+    if (users.size() <= size)
+      return new UserPageDto(users, null);
+    final List<UserSummaryDto> page = users.subList(0, size);
+    return new UserPageDto(List.copyOf(page), page.get(size - 1).getId());
+  }
+
+  public void forEach(Consumer<UserSummaryDto> consumer) {
+    cursorTemplate.query(ALL_SQL, rs -> {
+      consumer.accept(ROW_MAPPER.mapRow(rs, 0));
+      streamed.increment();
+    });
+  }
+
+  @Override
+  public void destroy() {
+    if (cursorTemplate.getDataSource() instanceof HikariDataSource)
+      ((HikariDataSource) cursorTemplate.getDataSource()).close();
+  }
+}
@@ -0,0 +1,16 @@
+CREATE TABLE IF NOT EXISTS chat_message (
+  id BIGINT NOT NULL AUTO_INCREMENT,
+  conversation_id VARCHAR(255) NOT NULL,
+  sender_id VARCHAR(255),
+  sender_short_name VARCHAR(255),
+  group_name VARCHAR(255),
+  content TEXT,
+  sent_timestamp TIMESTAMP(3) NOT NULL,
+  sequence_number BIGINT NOT NULL DEFAULT 0,
+  PRIMARY KEY (id)
+);
+
+-- tables created before sequences were persisted, their rows keep 0 and are numbered again on restore:
+-- ALTER TABLE chat_message ADD COLUMN sequence_number BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX idx_chat_message_conversation ON chat_message (conversation_id, id);
@@ -0,0 +1,98 @@
+package com.ss.utopia.controller;
+
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.event.ChatEventListener;
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.model.ChatInMessage;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.AgentAssignmentService;
+import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConcurrentConversationStore;
+import com.ss.utopia.service.ConversationRoster;
+import com.ss.utopia.service.FaqResponder;
+import com.ss.utopia.service.TypingCoalescer;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatControllerTest {
+  private final ChatBroker chatBroker = mock(ChatBroker.class);
+  private final ChatService chatService = new ChatService(new ConcurrentConversationStore(), event -> {
+  }, 50, 200);
+  private final AgentAssignmentService agentAssignmentService = mock(AgentAssignmentService.class);
+  private final FaqResponder faqResponder = mock(FaqResponder.class);
+  private final ChatController chatController = new ChatController(chatBroker, chatService,
+    mock(ConversationRoster.class), mock(TypingCoalescer.class), agentAssignmentService,
+    faqResponder, mock(ChatEventListener.class));
+
+  @Test
+  void rejoiningWithALastSeenSequenceResendsOnlyTheMissedMessages() {
+    chatController.handleAdminChatUserJoins(join(null), null, null, "session1");
+    for (int i = 1; i <= 5; i++)
+      chatService.addMessage("Guest1", message(String.valueOf(i)));
+    verify(chatBroker, never()).sendToUser(eq("Guest1"), eq("/queue/private/history"), any());
+
+    chatController.handleAdminChatUserJoins(join(4L), null, null, "session2");
+
+    ArgumentCaptor<Object> page = ArgumentCaptor.forClass(Object.class);
+    verify(chatBroker).sendToUser(eq("Guest1"), eq("/queue/private/history"), page.capture());
+    ChatHistoryPageDto resync = (ChatHistoryPageDto) page.getValue();
+    assertThat(resync.getConversationId()).isEqualTo("Guest1");
+    assertThat(resync.getMessages().stream().map(ChatOutMessage::getContent).collect(Collectors.toList()))
+      .containsExactly("4", "5");
+  }
+
+  @Test
+  void theBotOnlyAnswersConversationsWithoutAnAgent() throws Exception {
+    chatService.openConversation("Guest1");
+    ChatOutMessage answer = FaqResponder.botMessage("Check in opens 24 hours before departure.");
+    when(faqResponder.answer("when can I check in?")).thenReturn(Optional.of(answer));
+
+    chatController.handleAdminChat(chat("when can I check in?"), null, null, "session1");
+    verify(chatBroker).sendToUser(eq("Guest1"), eq("/queue/private/chat"), eq(answer));
+    verify(chatBroker, never()).sendToUser(eq("agent"), eq("/queue/private/chat"), any());
+
+    when(agentAssignmentService.getAgent("Guest1")).thenReturn(Optional.of("agent"));
+    chatController.handleAdminChat(chat("when can I check in?"), null, null, "session1");
+
+    ArgumentCaptor<Object> delivered = ArgumentCaptor.forClass(Object.class);
+    verify(chatBroker).sendToUser(eq("agent"), eq("/queue/private/chat"), delivered.capture());
+    assertThat(((ChatOutMessage) delivered.getValue()).getContent()).isEqualTo("when can I check in?");
+    verify(chatBroker).sendToUser(eq("Guest1"), eq("/queue/private/chat"), eq(answer));
+    assertThat(chatService.getHistory("Guest1")).extracting(ChatOutMessage::getContent)
+      .containsExactly("when can I check in?", answer.getContent(), "when can I check in?");
+  }
+
+  private static ChatInMessage chat(String text) {
+    ChatInMessage message = new ChatInMessage();
+    message.setSenderId("Guest1");
+    message.setReceiverUsername("agent");
+    message.setMessage(text);
+    return message;
+  }
+
+  private static ChatInMessage join(Long lastSeenSequence) {
+    ChatInMessage message = new ChatInMessage();
+    message.setSenderId("Guest1");
+    message.setReceiverUsername("admin");
+    message.setLastSeenSequence(lastSeenSequence);
+    return message;
+  }
+
+  private static ChatOutMessage message(String content) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest1");
+    message.setContent(content);
+    return message;
+  }
+}
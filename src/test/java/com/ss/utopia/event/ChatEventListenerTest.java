@@ -0,0 +1,95 @@
+package com.ss.utopia.event;
+
+import com.ss.utopia.dto.PresenceDeltaDto;
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConcurrentConversationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatEventListenerTest {
+  private final List<PresenceDeltaDto> deltas = new CopyOnWriteArrayList<>();
+  private final ChatService chatService = new ChatService(new ConcurrentConversationStore(), event -> {}, 50, 200);
+  private final ChatEventListener listener = new ChatEventListener(chatService, new ChatBroker() {
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+    }
+
+    @Override
+    public void sendToSession(String sessionId, String destination, Object payload) {
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+      deltas.add((PresenceDeltaDto) payload);
+    }
+  }, 200, 10, 16, new SimpleMeterRegistry());
+
+  @AfterEach
+  void tearDown() {
+    listener.stop();
+  }
+
+  @Test
+  void usersStayOnlineUntilTheirLastSessionLeaves() {
+    listener.bind("s1", "agent", false);
+    listener.bind("s2", "agent", false);
+    listener.unbind("s1");
+    assertThat(listener.isOnline("agent")).isTrue();
+    listener.unbind("s2");
+    listener.unbind("s2");
+
+    assertThat(listener.isOnline("agent")).isFalse();
+    assertThat(deltas).extracting(PresenceDeltaDto::getType)
+      .containsExactly(PresenceDeltaDto.Type.ONLINE, PresenceDeltaDto.Type.OFFLINE);
+    assertThat(deltas).extracting(PresenceDeltaDto::getVersion).containsExactly(1L, 2L);
+  }
+
+  @Test
+  void closesAbandonedGuestConversationsAfterTheGracePeriod() throws Exception {
+    chatService.openConversation("Guest1");
+    chatService.openConversation("Guest2");
+    assertThat(chatService.addMessage("Guest1", new ChatOutMessage())).isTrue();
+    assertThat(chatService.addMessage("Guest2", new ChatOutMessage())).isTrue();
+    listener.bindGuest("s1", "Guest1");
+    listener.bindGuest("s2", "Guest2");
+    listener.unbind("s1");
+    listener.unbind("s2");
+    // Guest2 comes back within the grace period
+    listener.bindGuest("s3", "Guest2");
+
+    Thread.sleep(500);
+    assertThat(chatService.hasConversation("Guest1")).isFalse();
+    assertThat(chatService.hasConversation("Guest2")).isTrue();
+  }
+
+  @Test
+  void wheelFiresEveryTimeoutOnceAndSkipsCancelledOnes() throws Exception {
+    HashedWheelTimer timer = new HashedWheelTimer("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+    AtomicInteger fired = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(1000);
+    for (int i = 0; i < 1000; i++)
+      timer.schedule(() -> {
+        fired.incrementAndGet();
+        done.countDown();
+      }, i % 50, TimeUnit.MILLISECONDS);
+    HashedWheelTimer.Timeout cancelled = timer.schedule(fired::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+    cancelled.cancel();
+
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    Thread.sleep(50);
+    timer.stop();
+    assertThat(fired.get()).isEqualTo(1000);
+    assertThat(timer.pending()).isZero();
+  }
+}
@@ -0,0 +1,141 @@
+package com.ss.utopia.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.messaging.ClusterClient;
+import com.ss.utopia.messaging.ConversationOwnership;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConcurrentConversationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatJournalTest {
+  @TempDir
+  Path directory;
+
+  @Test
+  void replayRebuildsConversationsAcrossRolledSegments() throws Exception {
+    ChatJournal journal = journal(chatService(), FsyncPolicy.PER_MESSAGE);
+    for (int i = 0; i < 50; i++)
+      journal.onMessageAdded(new ChatMessageAddedEvent("Guest" + (i % 2), message(i)));
+    journal.close();
+
+    ChatService restored = chatService();
+    journal(restored, FsyncPolicy.PER_MESSAGE).close();
+
+    assertThat(contents(restored, "Guest0")).hasSize(25).startsWith("0", "2").endsWith("48");
+    assertThat(contents(restored, "Guest1")).hasSize(25).startsWith("1", "3").endsWith("49");
+  }
+
+  @Test
+  void compactionKeepsOnlyLiveDataAndReplayStartsFromTheSnapshot() throws Exception {
+    ChatJournal journal = journal(chatService(), FsyncPolicy.PERIODIC);
+    for (int i = 0; i < 30; i++)
+      journal.onMessageAdded(new ChatMessageAddedEvent("Guest1", message(i)));
+    journal.compact();
+    journal.onMessageAdded(new ChatMessageAddedEvent("Guest1", message(30)));
+    journal.close();
+
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.map(path -> path.getFileName().toString()))
+        .anyMatch(name -> name.startsWith("snapshot-"));
+    }
+    ChatService restored = chatService();
+    journal(restored, FsyncPolicy.PERIODIC).close();
+
+    assertThat(contents(restored, "Guest1")).containsExactly(
+      "20", "21", "22", "23", "24", "25", "26", "27", "28", "29", "30");
+  }
+
+  @Test
+  void closedConversationsAreNeitherReplayedNorCompacted() throws Exception {
+    ChatJournal journal = journal(chatService(), FsyncPolicy.PER_MESSAGE);
+    for (int i = 0; i < 6; i++)
+      journal.onMessageAdded(new ChatMessageAddedEvent("Guest" + (i % 3), message(i)));
+    journal.onConversationClosed(new ConversationClosedEvent("Guest0", "closed"));
+    journal.compact();
+    journal.onConversationClosed(new ConversationClosedEvent("Guest1", "abandoned"));
+    journal.onMessageAdded(new ChatMessageAddedEvent("Guest0", message(6)));
+    journal.close();
+
+    ChatService restored = chatService();
+    journal(restored, FsyncPolicy.PER_MESSAGE).close();
+
+    assertThat(restored.getConversationIds()).containsExactlyInAnyOrder("Guest0", "Guest2");
+    assertThat(contents(restored, "Guest0")).containsExactly("6");
+    assertThat(contents(restored, "Guest2")).containsExactly("2", "5");
+  }
+
+  @Test
+  void replayKeepsJournaledSequencesAndOnlyOwnedConversations() throws Exception {
+    ConversationOwnership ownership = new ConversationOwnership("a", "a,b", 128);
+    String local = null;
+    String remote = null;
+    for (int i = 0; null == local || null == remote; i++) {
+      final String id = "Guest" + i;
+      if (ownership.isLocal(id))
+        local = (null == local) ? id : local;
+      else
+        remote = (null == remote) ? id : remote;
+    }
+    ChatJournal journal = journal(chatService(), FsyncPolicy.PERIODIC);
+    for (int i = 1; i <= 30; i++) {
+      journal.onMessageAdded(new ChatMessageAddedEvent(local, message(i, i)));
+      journal.onMessageAdded(new ChatMessageAddedEvent(remote, message(i, i)));
+    }
+    journal.compact();
+    journal.onMessageAdded(new ChatMessageAddedEvent(local, message(31, 31)));
+    journal.close();
+
+    ChatService restored = new ChatService(new ConcurrentConversationStore(), event -> {
+    }, 50, 200, ownership, new ClusterClient(new RestTemplate(), "http://{node}", "secret", new SimpleMeterRegistry()),
+      new ObjectMapper());
+    journal(restored, FsyncPolicy.PERIODIC).close();
+
+    assertThat(restored.getConversationIds()).containsExactly(local);
+    assertThat(restored.getHistory(local)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(21L, 22L, 23L, 24L, 25L, 26L, 27L, 28L, 29L, 30L, 31L);
+    assertThat(restored.getHistoryAfter(local, 29)).extracting(ChatOutMessage::getContent).containsExactly("30", "31");
+  }
+
+  private ChatJournal journal(ChatService chatService, FsyncPolicy fsyncPolicy) throws Exception {
+    ChatJournal journal = new ChatJournal(chatService, new SimpleMeterRegistry(), directory.toString(),
+      1024, fsyncPolicy, 8, 10, 60_000);
+    journal.open();
+    return journal;
+  }
+
+  private static ChatService chatService() {
+    return new ChatService(new ConcurrentConversationStore(), event -> {
+    }, 50, 200);
+  }
+
+  private static List<String> contents(ChatService chatService, String conversationId) {
+    return chatService.getHistory(conversationId).stream().map(ChatOutMessage::getContent).collect(Collectors.toList());
+  }
+
+  private static ChatOutMessage message(int index) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest");
+    message.setContent(String.valueOf(index));
+    return message;
+  }
+
+  private static ChatOutMessage message(int index, long sequence) {
+    ChatOutMessage message = message(index);
+    message.setSequence(sequence);
+    return message;
+  }
+}
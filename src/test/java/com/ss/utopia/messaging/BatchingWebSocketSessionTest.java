@@ -0,0 +1,179 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BatchingWebSocketSessionTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final SlowConsumerPolicy policy = new SlowConsumerPolicy(1_000_000, 2_000_000, 60_000,
+    List.of(), meterRegistry);
+  private final List<Runnable> scheduled = new ArrayList<>();
+  private final WebSocketSession delegate = mock(WebSocketSession.class);
+
+  BatchingWebSocketSessionTest() {
+    when(delegate.getId()).thenReturn("s1");
+    when(delegate.isOpen()).thenReturn(true);
+  }
+
+  @Test
+  void framesSentWithinTheWindowAreWrittenTogetherWhenItCloses() throws Exception {
+    BatchingWebSocketSession session = session(1000, 10_000);
+
+    session.sendMessage(new TextMessage("a\u0000"));
+    session.sendMessage(new TextMessage("b\u0000"));
+    session.sendMessage(new TextMessage("c\u0000"));
+
+    assertThat(written()).isEmpty();
+    assertThat(scheduled).hasSize(1);
+    assertThat(session.getPendingBytes()).isEqualTo(6);
+
+    runScheduled();
+
+    assertThat(written()).containsExactly("a\u0000b\u0000c\u0000");
+    assertThat(session.getPendingBytes()).isZero();
+    assertThat(meterRegistry.get("chat.outbound.batch.frames").summary().totalAmount()).isEqualTo(3);
+    assertThat(meterRegistry.get("chat.outbound.batch.frames").summary().count()).isEqualTo(1);
+  }
+
+  @Test
+  void reachingMaxBytesWritesWithoutWaitingForTheWindow() throws Exception {
+    BatchingWebSocketSession session = session(1000, 100);
+    String half = "x".repeat(59) + "\u0000";
+
+    session.sendMessage(new TextMessage(half));
+    assertThat(written()).isEmpty();
+    session.sendMessage(new TextMessage(half));
+
+    assertThat(written()).containsExactly(half + half);
+    // the window scheduled by the first frame finds nothing left to write
+    runScheduled();
+    assertThat(written()).hasSize(1);
+  }
+
+  @Test
+  void framesKeepTheirOrderAcrossBatchesAndBinaryMessages() throws Exception {
+    BatchingWebSocketSession session = session(1000, 10_000);
+
+    session.sendMessage(new TextMessage("1\u0000"));
+    session.sendMessage(new TextMessage("2\u0000"));
+    runScheduled();
+    session.sendMessage(new TextMessage("3\u0000"));
+    session.sendMessage(new BinaryMessage(new byte[]{4}));
+    session.sendMessage(new TextMessage("5\u0000"));
+    runScheduled();
+
+    assertThat(written()).containsExactly("1\u00002\u0000", "3\u0000", "[4]", "5\u0000");
+  }
+
+  @Test
+  void binaryMessagesSentDuringAWriteQueueBehindTheTextBeforeThem() throws Exception {
+    BatchingWebSocketSession session = session(1000, 10_000);
+    doAnswer(invocation -> {
+      // another sender keeps going while the first batch is on the wire
+      session.sendMessage(new TextMessage("2\u0000"));
+      session.sendMessage(new BinaryMessage(new byte[]{3}));
+      return null;
+    }).doNothing().when(delegate).sendMessage(any());
+
+    session.sendMessage(new TextMessage("1\u0000"));
+    runScheduled();
+
+    assertThat(written()).containsExactly("1\u0000", "2\u0000", "[3]");
+  }
+
+  @Test
+  void closingDuringAWriteWritesWhatWasQueuedBeforeClosing() throws Exception {
+    BatchingWebSocketSession session = session(1000, 10_000);
+    doAnswer(invocation -> {
+      session.sendMessage(new TextMessage("2\u0000"));
+      session.close(CloseStatus.NORMAL);
+      session.sendMessage(new TextMessage("3\u0000"));
+      return null;
+    }).doNothing().when(delegate).sendMessage(any());
+
+    session.sendMessage(new TextMessage("1\u0000"));
+    runScheduled();
+
+    assertThat(written()).containsExactly("1\u0000", "2\u0000");
+    InOrder order = inOrder(delegate);
+    order.verify(delegate, times(2)).sendMessage(any());
+    order.verify(delegate).close(CloseStatus.NORMAL);
+  }
+
+  @Test
+  void closingWritesTheOpenBatchFirst() throws Exception {
+    BatchingWebSocketSession session = session(1000, 10_000);
+
+    session.sendMessage(new TextMessage("a\u0000"));
+    session.close(CloseStatus.NORMAL);
+
+    assertThat(written()).containsExactly("a\u0000");
+    verify(delegate).close(CloseStatus.NORMAL);
+    runScheduled();
+    assertThat(written()).hasSize(1);
+  }
+
+  @Test
+  void aZeroWindowWritesEveryFrameAtOnce() throws Exception {
+    BatchingWebSocketSession session = session(0, 10_000);
+
+    session.sendMessage(new TextMessage("a\u0000"));
+    session.sendMessage(new TextMessage("b\u0000"));
+
+    assertThat(written()).containsExactly("a\u0000", "b\u0000");
+    assertThat(scheduled).isEmpty();
+  }
+
+  private BatchingWebSocketSession session(long windowInMicroseconds, int maxBytes) {
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    when(scheduler.schedule(any(Runnable.class), eq(windowInMicroseconds), eq(TimeUnit.MICROSECONDS)))
+      .thenAnswer(invocation -> {
+        scheduled.add(invocation.getArgument(0));
+        return null;
+      });
+    OutboundBatching batching = new OutboundBatching(windowInMicroseconds, maxBytes, policy, meterRegistry, scheduler,
+      Runnable::run);
+    return new BatchingWebSocketSession(delegate, batching, policy);
+  }
+
+  private void runScheduled() {
+    List<Runnable> due = new ArrayList<>(scheduled);
+    scheduled.clear();
+    due.forEach(Runnable::run);
+  }
+
+  private List<String> written() throws Exception {
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ArgumentCaptor<WebSocketMessage<?>> messages = ArgumentCaptor.forClass((Class) WebSocketMessage.class);
+    verify(delegate, atLeast(0)).sendMessage(messages.capture());
+    List<String> payloads = new ArrayList<>();
+    for (WebSocketMessage<?> message : messages.getAllValues())
+      payloads.add((message instanceof TextMessage) ? ((TextMessage) message).getPayload()
+        : Arrays.toString(((BinaryMessage) message).getPayload().array()));
+    return payloads;
+  }
+}
@@ -0,0 +1,51 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+/**
+ * Encode time of the binary wire format against JSON, printed rather than asserted.
+ * Excluded from the regular build, run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class BinaryChatCodecBenchmarkTest {
+  private static final int WARMUP_ROUNDS = 20;
+  private static final int ROUNDS = 200;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void encodeTimeAgainstJson() throws Exception {
+    List<ChatOutMessage> messages = BinaryChatCodecTest.typicalMessages();
+    long jsonBytes = 0;
+    long binaryBytes = 0;
+    for (ChatOutMessage message : messages) {
+      jsonBytes += objectMapper.writeValueAsBytes(message).length;
+      binaryBytes += BinaryChatCodec.encode(message).length;
+    }
+    for (int round = 0; round < WARMUP_ROUNDS; round++)
+      for (ChatOutMessage message : messages) {
+        objectMapper.writeValueAsBytes(message);
+        BinaryChatCodec.encode(message);
+      }
+
+    long started = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++)
+      for (ChatOutMessage message : messages)
+        objectMapper.writeValueAsBytes(message);
+    final long jsonNanos = System.nanoTime() - started;
+    started = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++)
+      for (ChatOutMessage message : messages)
+        BinaryChatCodec.encode(message);
+    final long binaryNanos = System.nanoTime() - started;
+
+    System.out.printf("JSON %d bytes, %d ns/message; binary %d bytes, %d ns/message%n",
+      jsonBytes, jsonNanos / ((long) ROUNDS * messages.size()),
+      binaryBytes, binaryNanos / ((long) ROUNDS * messages.size()));
+  }
+}
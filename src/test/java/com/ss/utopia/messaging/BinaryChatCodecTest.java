@@ -0,0 +1,108 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.model.ChatInMessage;
+import com.ss.utopia.model.ChatOutMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinaryChatCodecTest {
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  @Test
+  void roundTripsOutgoingMessages() {
+    ChatOutMessage message = outMessage(7, "Où est mon bagage? 🧳");
+    ChatOutMessage decoded = (ChatOutMessage) BinaryChatCodec.decode(BinaryChatCodec.encode(message));
+
+    assertThat(decoded).usingRecursiveComparison().ignoringFields("encoded").isEqualTo(message);
+    ChatOutMessage empty = (ChatOutMessage) BinaryChatCodec.decode(BinaryChatCodec.encode(new ChatOutMessage()));
+    assertThat(empty).usingRecursiveComparison().ignoringFields("encoded").isEqualTo(new ChatOutMessage());
+  }
+
+  @Test
+  void roundTripsIncomingMessagesAndHistoryPages() {
+    ChatInMessage in = new ChatInMessage();
+    in.setSenderId("Guest42");
+    in.setReceiverUsername("agent");
+    in.setMessage("hello");
+    in.setTimestamp(new Date(1_600_000_000_000L));
+    in.setLastSeenSequence(300L);
+    assertThat(BinaryChatCodec.decode(BinaryChatCodec.encode(in))).usingRecursiveComparison().isEqualTo(in);
+
+    ChatHistoryPageDto page = new ChatHistoryPageDto("Guest42", List.of(outMessage(1, "a"), outMessage(2, "b")), true);
+    assertThat(BinaryChatCodec.decode(BinaryChatCodec.encode(page)))
+      .usingRecursiveComparison().ignoringFieldsMatchingRegexes(".*encoded").isEqualTo(page);
+  }
+
+  @Test
+  void convertsOnlyWhenTheContentTypeAsksForIt() {
+    BinaryChatMessageConverter converter = new BinaryChatMessageConverter();
+    ChatOutMessage message = outMessage(3, "hi");
+
+    assertThat(converter.toMessage(message, new MessageHeaders(null))).isNull();
+    Message<?> binary = converter.toMessage(message,
+      new MessageHeaders(Map.of(MessageHeaders.CONTENT_TYPE, BinaryChatCodec.MIME_TYPE)));
+    assertThat(binary.getPayload()).isInstanceOf(byte[].class);
+
+    Message<byte[]> inbound = MessageBuilder.withPayload(BinaryChatCodec.encode(new ChatInMessage()))
+      .setHeader(MessageHeaders.CONTENT_TYPE, BinaryChatCodec.MIME_TYPE).build();
+    assertThat(converter.fromMessage(inbound, ChatInMessage.class)).isInstanceOf(ChatInMessage.class);
+    assertThat(converter.fromMessage(inbound, ChatOutMessage.class)).isNull();
+    assertThatThrownBy(() -> BinaryChatCodec.decode(new byte[]{1, (byte) 0x83}))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void rejectsCountsAndTypesAClientCannotHaveSent() {
+    byte[] hugePage = {3, 0, (byte) 0xF0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+    assertThatThrownBy(() -> BinaryChatCodec.decode(hugePage)).isInstanceOf(IllegalArgumentException.class)
+      .hasMessageContaining("Truncated");
+    assertThatThrownBy(() -> BinaryChatCodec.decode(new byte[]{1, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+      (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F})).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> BinaryChatCodec.decodeInbound(BinaryChatCodec.encode(new ChatOutMessage())))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThat(BinaryChatCodec.decodeInbound(BinaryChatCodec.encode(new ChatInMessage())))
+      .isInstanceOf(ChatInMessage.class);
+  }
+
+  @Test
+  void isMuchSmallerThanJson() throws Exception {
+    List<ChatOutMessage> messages = typicalMessages();
+
+    long jsonBytes = 0;
+    long binaryBytes = 0;
+    for (ChatOutMessage message : messages) {
+      jsonBytes += objectMapper.writeValueAsBytes(message).length;
+      binaryBytes += BinaryChatCodec.encode(message).length;
+    }
+    assertThat(binaryBytes).isLessThan(jsonBytes / 2);
+  }
+
+  static List<ChatOutMessage> typicalMessages() {
+    List<ChatOutMessage> messages = new ArrayList<>();
+    for (int i = 1; i <= 1000; i++)
+      messages.add(outMessage(i, (i % 3 == 0) ? "ok" : "Can I bring a second carry-on bag on flight UT" + i + "?"));
+    return messages;
+  }
+
+  static ChatOutMessage outMessage(long sequence, String content) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest42");
+    message.setSenderShortName("Guest #42");
+    message.setContent(content);
+    message.setSentTimestamp(new Date(1_600_000_000_000L + sequence));
+    message.setSequence(sequence);
+    return message;
+  }
+}
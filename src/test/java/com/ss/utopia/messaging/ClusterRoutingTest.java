@@ -0,0 +1,176 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.controller.ClusterController;
+import com.ss.utopia.dto.RosterEntryDto;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.event.ConversationOpenedEvent;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConcurrentConversationStore;
+import com.ss.utopia.service.ConversationRoster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.client.MockMvcClientHttpRequestFactory;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ClusterRoutingTest {
+  private static final String SECRET = "cluster-secret";
+
+  private final Map<String, MockMvc> network = new ConcurrentHashMap<>();
+  private final Node a = new Node("a");
+  private final Node b = new Node("b");
+
+  @Test
+  void callsOnAnyNodeReachTheStoreOfTheOwner() {
+    final String conversationId = ownedBy("b");
+
+    assertThat(a.chatService.openConversation(conversationId)).isTrue();
+    for (int i = 1; i <= 4; i++)
+      assertThat(((i % 2 == 0) ? b : a).chatService.addMessage(conversationId, message(String.valueOf(i)))).isTrue();
+
+    assertThat(a.store.contains(conversationId)).isFalse();
+    assertThat(b.store.contains(conversationId)).isTrue();
+    for (Node node : List.of(a, b)) {
+      assertThat(node.chatService.hasConversation(conversationId)).isTrue();
+      assertThat(node.chatService.getHistory(conversationId))
+        .extracting(ChatOutMessage::getContent).containsExactly("1", "2", "3", "4");
+      assertThat(node.chatService.getHistory(conversationId))
+        .extracting(ChatOutMessage::getSequence).containsExactly(1L, 2L, 3L, 4L);
+      assertThat(node.chatService.getHistoryAfter(conversationId, 2))
+        .extracting(ChatOutMessage::getContent).containsExactly("3", "4");
+      assertThat(node.chatService.getHistoryPage(conversationId, 4L, null, 2).getMessages())
+        .extracting(ChatOutMessage::getContent).containsExactly("2", "3");
+      assertThat(node.chatService.getLastMessage(conversationId)).get()
+        .extracting(ChatOutMessage::getContent).isEqualTo("4");
+    }
+    // only the owner announces the messages, so they are persisted and indexed once
+    assertThat(a.events).isEmpty();
+    assertThat(b.events).filteredOn(event -> event instanceof ChatMessageAddedEvent).hasSize(4);
+  }
+
+  @Test
+  void conversationsClosedThroughAnotherNodeAreGoneEverywhere() {
+    final String conversationId = ownedBy("a");
+    b.chatService.openConversation(conversationId);
+    b.chatService.addMessage(conversationId, message("hello"));
+
+    assertThat(b.chatService.closeConversation(conversationId, "resolved")).isTrue();
+
+    for (Node node : List.of(a, b)) {
+      assertThat(node.chatService.hasConversation(conversationId)).isFalse();
+      assertThat(node.chatService.addMessage(conversationId, message("late"))).isFalse();
+      assertThat(node.chatService.getLastMessage(conversationId)).isEmpty();
+    }
+    assertThat(a.events).filteredOn(event -> event instanceof ConversationClosedEvent).hasSize(1);
+  }
+
+  @Test
+  void adminsSeeConversationsOfEveryNode() {
+    final String onA = ownedBy("a");
+    final String onB = ownedBy("b");
+    a.chatService.openConversation(onA);
+    a.chatService.openConversation(onB);
+
+    for (Node node : List.of(a, b)) {
+      assertThat(node.roster.snapshot().getEntries()).hasSize(1);
+      assertThat(node.roster.clusterSnapshot().getEntries())
+        .extracting(RosterEntryDto::getConversationId).containsExactlyInAnyOrder(onA, onB);
+    }
+  }
+
+  @Test
+  void clusterEndpointsRequireTheSecretAndOwnership() throws Exception {
+    final String onB = ownedBy("b");
+    final MockMvc mockMvc = network.get("a");
+
+    mockMvc.perform(get("/api/cluster/owner").param("conversationId", onB)).andExpect(status().isForbidden());
+    mockMvc.perform(get("/api/cluster/owner").param("conversationId", onB)
+      .header(ClusterClient.SECRET_HEADER, "wrong")).andExpect(status().isForbidden());
+    mockMvc.perform(get("/api/cluster/owner").param("conversationId", onB)
+      .header(ClusterClient.SECRET_HEADER, SECRET)).andExpect(status().isOk());
+    mockMvc.perform(get("/api/cluster/conversations/{id}", onB)
+      .header(ClusterClient.SECRET_HEADER, SECRET)).andExpect(status().isConflict());
+  }
+
+  @Test
+  void conversationsSpreadEvenlyAndMoveLittleWhenANodeJoins() {
+    ConsistentHashRing three = new ConsistentHashRing(List.of("a", "b", "c"), 128);
+    ConsistentHashRing four = new ConsistentHashRing(List.of("a", "b", "c", "d"), 128);
+    Map<String, Integer> counts = new HashMap<>();
+    int moved = 0;
+    final int conversations = 30_000;
+    for (int i = 0; i < conversations; i++) {
+      final String id = "Guest" + i;
+      counts.merge(three.nodeFor(id), 1, Integer::sum);
+      final String after = four.nodeFor(id);
+      if (!after.equals(three.nodeFor(id))) {
+        assertThat(after).isEqualTo("d");
+        moved++;
+      }
+    }
+
+    counts.values().forEach(count -> assertThat(count).isBetween(conversations / 3 * 75 / 100, conversations / 3 * 125 / 100));
+    assertThat(moved).isBetween(conversations / 4 * 7 / 10, conversations / 4 * 13 / 10);
+  }
+
+  private String ownedBy(String node) {
+    for (int i = 0; ; i++)
+      if (node.equals(a.ownership.ownerOf("Guest" + i)))
+        return "Guest" + i;
+  }
+
+  private static ChatOutMessage message(String content) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest");
+    message.setContent(content);
+    return message;
+  }
+
+  /**
+   * One node with its own store, services and cluster endpoints, reached by the other nodes over MockMvc.
+   */
+  private final class Node {
+    final ConversationOwnership ownership;
+    final ConcurrentConversationStore store = new ConcurrentConversationStore();
+    final List<Object> events = new ArrayList<>();
+    final ChatService chatService;
+    final ConversationRoster roster;
+
+    Node(String id) {
+      ownership = new ConversationOwnership(id, "a,b", 128);
+      final RestTemplate restTemplate = new RestTemplate((uri, method) ->
+        new MockMvcClientHttpRequestFactory(network.get(uri.getHost())).createRequest(uri, method));
+      final ClusterClient clusterClient = new ClusterClient(restTemplate, "http://{node}", SECRET,
+        new SimpleMeterRegistry());
+      chatService = new ChatService(store, this::publish, 50, 200, ownership, clusterClient, new ObjectMapper());
+      roster = new ConversationRoster(chatService, mock(ChatBroker.class), ownership, clusterClient);
+      network.put(id, MockMvcBuilders.standaloneSetup(
+        new ClusterController(ownership, chatService, roster, SECRET)).build());
+    }
+
+    private void publish(Object event) {
+      events.add(event);
+      if (event instanceof ConversationOpenedEvent)
+        roster.onConversationOpened((ConversationOpenedEvent) event);
+      else if (event instanceof ChatMessageAddedEvent)
+        roster.onMessageAdded((ChatMessageAddedEvent) event);
+      else if (event instanceof ConversationClosedEvent)
+        roster.onConversationClosed((ConversationClosedEvent) event);
+    }
+  }
+}
@@ -0,0 +1,183 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderedLaneTaskExecutorTest {
+
+  @Test
+  void resolvesTheConversationLikeTheChatController() {
+    ConversationKeyResolver resolver = new ConversationKeyResolver();
+    Principal admin = new UsernamePasswordAuthenticationToken("agent", null,
+      List.of(new SimpleGrantedAuthority("ROLE_ADMIN")));
+
+    assertThat(resolver.resolve(send("{\"senderId\":\"Guest1\",\"receiverUsername\":\"agent\"}", null, "s1")))
+      .isEqualTo("Guest1");
+    assertThat(resolver.resolve(send("{\"senderId\":\"agent\",\"message\":{\"x\":1},\"receiverUsername\":\"Guest1\"}",
+      admin, "s2"))).isEqualTo("Guest1");
+    assertThat(resolver.resolve(send("not json", null, "s3"))).isEqualTo("s3");
+  }
+
+  @Test
+  void keepsEveryConversationInOrder() throws Exception {
+    OrderedLaneTaskExecutor executor = new OrderedLaneTaskExecutor(4, 16, new ConversationKeyResolver(),
+      new SimpleMeterRegistry());
+    executor.initialize();
+    final int conversations = 20;
+    final int perConversation = 500;
+    Map<String, List<Integer>> handled = new ConcurrentHashMap<>();
+    CountDownLatch done = new CountDownLatch(conversations * perConversation);
+    for (int i = 0; i < perConversation; i++)
+      for (int c = 0; c < conversations; c++) {
+        final String id = "Guest" + c;
+        final int position = i;
+        executor.execute(task(send("{\"senderId\":\"" + id + "\"}", null, "s" + c), () -> {
+          handled.computeIfAbsent(id, key -> new ArrayList<>()).add(position);
+          done.countDown();
+        }));
+      }
+    assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+    executor.shutdown();
+
+    assertThat(handled).hasSize(conversations);
+    handled.values().forEach(positions -> assertThat(positions).hasSize(perConversation).isSorted());
+  }
+
+  @Test
+  void subscriptionsAreRegisteredBeforeLaterSendsOfTheSessionAreQueued() throws Exception {
+    OrderedLaneTaskExecutor executor = new OrderedLaneTaskExecutor(4, 16, new ConversationKeyResolver(),
+      new SimpleMeterRegistry());
+    executor.initialize();
+    List<String> handled = new ArrayList<>();
+    AtomicReference<Thread> subscribedOn = new AtomicReference<>();
+    CountDownLatch sent = new CountDownLatch(1);
+
+    executor.execute(task(subscribe("s1"), () -> {
+      subscribedOn.set(Thread.currentThread());
+      handled.add("subscribe");
+    }));
+    executor.execute(task(send("{\"senderId\":\"Guest1\"}", null, "s1"), () -> {
+      synchronized (handled) {
+        handled.add("send");
+      }
+      sent.countDown();
+    }));
+
+    assertThat(sent.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(subscribedOn.get()).isSameAs(Thread.currentThread());
+    synchronized (handled) {
+      assertThat(handled).containsExactly("subscribe", "send");
+    }
+    executor.shutdown();
+  }
+
+  @Test
+  void honoursTheStartTimeoutOfAFullLane() throws Exception {
+    OrderedLaneTaskExecutor executor = new OrderedLaneTaskExecutor(1, 1, new ConversationKeyResolver(),
+      new SimpleMeterRegistry());
+    executor.initialize();
+    CountDownLatch running = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    executor.execute(task(send("{\"senderId\":\"Guest1\"}", null, "s1"), () -> {
+      running.countDown();
+      awaitQuietly(release);
+    }));
+    assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+    executor.execute(task(send("{\"senderId\":\"Guest1\"}", null, "s1"), () -> {
+    }));
+
+    long start = System.nanoTime();
+    assertThatThrownBy(() -> executor.execute(task(send("{\"senderId\":\"Guest1\"}", null, "s1"), () -> {
+    }), 50)).isInstanceOf(TaskRejectedException.class);
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(50);
+
+    release.countDown();
+    executor.shutdown();
+  }
+
+  @Test
+  void shutdownStopsWorkersOfFullLanes() throws Exception {
+    OrderedLaneTaskExecutor executor = new OrderedLaneTaskExecutor(1, 1, new ConversationKeyResolver(),
+      new SimpleMeterRegistry());
+    executor.initialize();
+    AtomicReference<Thread> worker = new AtomicReference<>();
+    CountDownLatch running = new CountDownLatch(1);
+    executor.execute(task(send("{\"senderId\":\"Guest1\"}", null, "s1"), () -> {
+      worker.set(Thread.currentThread());
+      running.countDown();
+      awaitQuietly(new CountDownLatch(1));
+    }));
+    assertThat(running.await(5, TimeUnit.SECONDS)).isTrue();
+    executor.execute(task(send("{\"senderId\":\"Guest1\"}", null, "s1"), () -> {
+    }));
+
+    executor.shutdown();
+
+    worker.get().join(5000);
+    assertThat(worker.get().isAlive()).isFalse();
+    assertThat(worker.get().isDaemon()).isTrue();
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static Message<byte[]> subscribe(String sessionId) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+    accessor.setSessionId(sessionId);
+    accessor.setDestination("/secured/user/queue/private/join");
+    return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+  }
+
+  private static Message<byte[]> send(String payload, Principal user, String sessionId) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setSessionId(sessionId);
+    accessor.setUser(user);
+    return MessageBuilder.createMessage(payload.getBytes(StandardCharsets.UTF_8), accessor.getMessageHeaders());
+  }
+
+  private static MessageHandlingRunnable task(Message<?> message, Runnable body) {
+    return new MessageHandlingRunnable() {
+      @Override
+      public Message<?> getMessage() {
+        return message;
+      }
+
+      @Override
+      public MessageHandler getMessageHandler() {
+        return m -> body.run();
+      }
+
+      @Override
+      public void run() {
+        body.run();
+      }
+    };
+  }
+}
@@ -0,0 +1,133 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.model.ChatOutMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.DefaultContentTypeResolver;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PreEncodedMessageConverterTest {
+  private final ObjectMapper objectMapper = contextObjectMapper();
+  private final PreEncodedMessageConverter converter = converter(objectMapper);
+  private final MappingJackson2MessageConverter bootConverter = bootConverter(objectMapper);
+
+  @Test
+  void encodesAMessageOnceForEveryDelivery() {
+    ChatOutMessage message = message("Where is my bag?");
+    message.encode(objectMapper);
+    Message<?> first = converter.toMessage(message, new MessageHeaders(null));
+    Message<?> second = converter.toMessage(message, new MessageHeaders(null));
+
+    assertThat(first.getPayload()).isSameAs(second.getPayload());
+    assertThat((byte[]) first.getPayload()).isEqualTo(bootConverter.toMessage(message, new MessageHeaders(null)).getPayload());
+  }
+
+  @Test
+  void splicesCachedMessagesIntoOtherPayloads() {
+    ChatOutMessage message = message("Ünïcode \"quoted\"");
+    message.encode(objectMapper);
+    ChatHistoryPageDto page = new ChatHistoryPageDto("Guest1", List.of(message), false);
+
+    Message<?> converted = converter.toMessage(page, new MessageHeaders(null));
+    assertThat((byte[]) converted.getPayload()).isEqualTo(bootConverter.toMessage(page, new MessageHeaders(null)).getPayload());
+  }
+
+  @Test
+  void anEncodedMessageCanNoLongerChange() throws Exception {
+    ChatOutMessage message = message("before");
+    message.setSequence(42);
+    String json = message.encode(objectMapper).getJson().getValue();
+
+    assertThatThrownBy(() -> message.setContent("after")).isInstanceOf(IllegalStateException.class);
+    assertThat(message.encode(new ObjectMapper()).getJson().getValue()).isEqualTo(json)
+      .isEqualTo(objectMapper.writeValueAsString(message)).contains("42");
+  }
+
+  @Test
+  void messagesNeverAcceptedAreEncodedOnTheSpot() {
+    ChatOutMessage message = message("joined");
+    ChatHistoryPageDto page = new ChatHistoryPageDto("Guest1", List.of(message), false);
+
+    assertThat((byte[]) converter.toMessage(message, new MessageHeaders(null)).getPayload())
+      .isEqualTo(bootConverter.toMessage(message, new MessageHeaders(null)).getPayload());
+    assertThat((byte[]) converter.toMessage(page, new MessageHeaders(null)).getPayload())
+      .isEqualTo(bootConverter.toMessage(page, new MessageHeaders(null)).getPayload());
+    assertThat(message.getEncoded()).isNull();
+  }
+
+  @Test
+  void keepsTheDateFormatOfTheContext() {
+    Message<?> converted = converter.toMessage(message("hello"), new MessageHeaders(null));
+
+    assertThat(new String((byte[]) converted.getPayload(), StandardCharsets.UTF_8))
+      .contains("\"sentTimestamp\":\"2020-09-13T12:26:40.000+00:00\"");
+  }
+
+  @Test
+  void honoursSpringJacksonSettings() {
+    ObjectMapper nonNull = contextObjectMapper("spring.jackson.default-property-inclusion=non_null");
+    PreEncodedMessageConverter nonNullConverter = converter(nonNull);
+    ChatOutMessage message = message("hello");
+    message.encode(nonNull);
+    ChatHistoryPageDto page = new ChatHistoryPageDto("Guest1", List.of(message), false);
+
+    byte[] single = (byte[]) nonNullConverter.toMessage(message, new MessageHeaders(null)).getPayload();
+    byte[] spliced = (byte[]) nonNullConverter.toMessage(page, new MessageHeaders(null)).getPayload();
+
+    assertThat(new String(single, StandardCharsets.UTF_8)).doesNotContain("groupName");
+    assertThat(single).isEqualTo(bootConverter(nonNull).toMessage(message, new MessageHeaders(null)).getPayload());
+    assertThat(spliced).isEqualTo(bootConverter(nonNull).toMessage(page, new MessageHeaders(null)).getPayload());
+  }
+
+  private static ObjectMapper contextObjectMapper(String... properties) {
+    AtomicReference<ObjectMapper> objectMapper = new AtomicReference<>();
+    new ApplicationContextRunner()
+      .withConfiguration(AutoConfigurations.of(JacksonAutoConfiguration.class))
+      .withPropertyValues(properties)
+      .run(context -> objectMapper.set(context.getBean(ObjectMapper.class)));
+    return objectMapper.get();
+  }
+
+  /**
+   * Wired like WebSocketConfig does.
+   */
+  private static PreEncodedMessageConverter converter(ObjectMapper objectMapper) {
+    return new PreEncodedMessageConverter(objectMapper);
+  }
+
+  /**
+   * The JSON converter Boot registers for the STOMP channels when the application does not replace it.
+   */
+  private static MappingJackson2MessageConverter bootConverter(ObjectMapper objectMapper) {
+    MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+    converter.setObjectMapper(objectMapper);
+    DefaultContentTypeResolver resolver = new DefaultContentTypeResolver();
+    resolver.setDefaultMimeType(MimeTypeUtils.APPLICATION_JSON);
+    converter.setContentTypeResolver(resolver);
+    return converter;
+  }
+
+  private static ChatOutMessage message(String content) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest1");
+    message.setSenderShortName("Guest #1");
+    message.setContent(content);
+    message.setSentTimestamp(new Date(1_600_000_000_000L));
+    return message;
+  }
+}
@@ -0,0 +1,91 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RateLimitInterceptorTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final List<String> errors = new ArrayList<>();
+  private final RateLimitInterceptor interceptor = new RateLimitInterceptor(new ChatBroker() {
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+    }
+
+    @Override
+    public void sendToSession(String sessionId, String destination, Object payload) {
+      errors.add(sessionId + destination);
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+    }
+  }, List.of("/app/secured/room/join:0.001:2"), "0.001:5", meterRegistry);
+
+  @Test
+  void limitsEachSenderPerDestination() {
+    assertThat(send("/app/secured/room/join", "s1")).isNotNull();
+    assertThat(send("/app/secured/room/join", "s1")).isNotNull();
+    assertThat(send("/app/secured/room/join", "s1")).isNull();
+    assertThat(send("/app/secured/room/join", "s1")).isNull();
+    // other senders and destinations have their own buckets
+    assertThat(send("/app/secured/room/join", "s2")).isNotNull();
+    assertThat(send("/app/secured/room/chat", "s1")).isNotNull();
+
+    assertThat(errors).containsExactly("s1" + RateLimitInterceptor.ERROR_DESTINATION);
+    assertThat(meterRegistry.counter("chat.inbound.rejected", "destination", "/app/secured/room/join").count())
+      .isEqualTo(2);
+  }
+
+  @Test
+  void neverGrantsMoreThanTheBurstUnderContention() throws Exception {
+    TokenBucket bucket = new TokenBucket(0.001, 100);
+    AtomicInteger granted = new AtomicInteger();
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int i = 0; i < 8; i++)
+      pool.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int j = 0; j < 1000; j++)
+          if (bucket.tryAcquire(System.nanoTime()))
+            granted.incrementAndGet();
+      });
+    start.countDown();
+    pool.shutdown();
+    assertThat(pool.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    assertThat(granted.get()).isEqualTo(100);
+  }
+
+  @Test
+  void refillsAtTheConfiguredRate() {
+    TokenBucket bucket = new TokenBucket(10, 1);
+    assertThat(bucket.tryAcquire(0)).isTrue();
+    assertThat(bucket.tryAcquire(50_000_000L)).isFalse();
+    assertThat(bucket.tryAcquire(100_000_000L)).isTrue();
+    assertThat(bucket.isFull(200_000_000L)).isTrue();
+  }
+
+  private Message<?> send(String destination, String sessionId) {
+    SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+    accessor.setDestination(destination);
+    accessor.setSessionId(sessionId);
+    return interceptor.preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+  }
+}
@@ -0,0 +1,105 @@
+package com.ss.utopia.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SlowConsumerTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final SlowConsumerPolicy policy = new SlowConsumerPolicy(100, 300, 60_000,
+    List.of("/queue/private/update"), meterRegistry);
+  private final OutboundBatching batching = new OutboundBatching(1000, 10_000, 1, 1, policy, meterRegistry);
+  private final CountDownLatch released = new CountDownLatch(1);
+
+  @AfterEach
+  void tearDown() {
+    released.countDown();
+    batching.shutdown();
+  }
+
+  @Test
+  void dropsTypingFramesFirstThenEvicts() throws Exception {
+    WebSocketSession delegate = mock(WebSocketSession.class);
+    when(delegate.getId()).thenReturn("s1");
+    when(delegate.isOpen()).thenReturn(true);
+    CountDownLatch writing = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      writing.countDown();
+      released.await();
+      return null;
+    }).when(delegate).sendMessage(any());
+    BatchingWebSocketSession session = new BatchingWebSocketSession(delegate, batching, policy);
+
+    // the first batch is flushed after the window and blocks in the network write
+    session.sendMessage(new TextMessage(frame("/queue/private/chat", 10)));
+    assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+    session.sendMessage(new TextMessage(frame("/queue/private/chat", 120)));
+    session.sendMessage(new TextMessage(frame("/queue/private/update", 20)));
+    assertThat(meterRegistry.counter("chat.outbound.dropped").count()).isEqualTo(1);
+    assertThat(session.getPendingBytes()).isGreaterThanOrEqualTo(120);
+
+    session.sendMessage(new TextMessage(frame("/queue/private/chat", 200)));
+    verify(delegate, timeout(1000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+    assertThat(policy.getRecentEvictions()).extracting(SlowConsumerPolicy.Eviction::getReason)
+      .containsExactly("buffer");
+    assertThat(meterRegistry.counter("chat.outbound.evictions", "reason", "buffer").count()).isEqualTo(1);
+  }
+
+  @Test
+  void evictsAStalledWriteEvenWhenNothingElseIsSent() throws Exception {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    SlowConsumerPolicy strict = new SlowConsumerPolicy(100, 300, 200, List.of(), registry);
+    OutboundBatching strictBatching = new OutboundBatching(0, 10_000, 1, 1, strict, registry);
+    try {
+      WebSocketSession delegate = mock(WebSocketSession.class);
+      when(delegate.getId()).thenReturn("s1");
+      when(delegate.isOpen()).thenReturn(true);
+      doAnswer(invocation -> {
+        released.await();
+        return null;
+      }).when(delegate).sendMessage(any());
+      WebSocketHandler handler = mock(WebSocketHandler.class);
+      strictBatching.decorate(handler).afterConnectionEstablished(delegate);
+      ArgumentCaptor<WebSocketSession> session = ArgumentCaptor.forClass(WebSocketSession.class);
+      verify(handler).afterConnectionEstablished(session.capture());
+
+      session.getValue().sendMessage(new TextMessage(frame("/queue/private/chat", 10)));
+
+      verify(delegate, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+      assertThat(strict.getRecentEvictions()).extracting(SlowConsumerPolicy.Eviction::getReason)
+        .containsExactly("send-time");
+    } finally {
+      strictBatching.shutdown();
+    }
+  }
+
+  @Test
+  void recognisesDroppableDestinations() {
+    assertThat(policy.isDroppable(frame("/secured/user/queue/private/update", 5))).isTrue();
+    assertThat(policy.isDroppable(frame("/secured/user/queue/private/chat", 5))).isFalse();
+    assertThat(policy.isDroppable("\n")).isFalse();
+  }
+
+  private static String frame(String destination, int bodyLength) {
+    return "MESSAGE\ndestination:" + destination + "\ncontent-type:application/json\n\n"
+      + "x".repeat(bodyLength) + "\u0000";
+  }
+}
@@ -0,0 +1,169 @@
+package com.ss.utopia.messaging;
+
+import com.ss.utopia.event.ChatEventListener;
+import com.ss.utopia.security.JwtProvider;
+import com.ss.utopia.security.UtopiaUserDetailService;
+import com.ss.utopia.security.VerifiedToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.ImmutableMessageChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import javax.servlet.http.Cookie;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StompAuthChannelInterceptorTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final JwtProvider jwtProvider = mock(JwtProvider.class);
+  private final UtopiaUserDetailService userDetailService = mock(UtopiaUserDetailService.class);
+  private final StompAuthChannelInterceptor interceptor = new StompAuthChannelInterceptor(jwtProvider,
+    userDetailService, List.of("/topic/roster", "/topic/presence"), meterRegistry);
+
+  @Test
+  void handshakeCookieAuthenticatesTheSessionAndLaterFramesCarryThePrincipal() throws Exception {
+    when(jwtProvider.verifySessionCookie("valid")).thenReturn(Optional.of(new VerifiedToken(7L, Long.MAX_VALUE)));
+    when(userDetailService.loadUserById(7L)).thenReturn(Optional.of(
+      User.withUsername("agent").password("").authorities("ROLE_AGENT").build()));
+    Map<String, Object> attributes = handshake(new Cookie("session", "valid"));
+
+    List<Message<?>> received = connectAndSend(attributes, null);
+
+    assertThat(received).hasSize(2);
+    Principal connected = StompHeaderAccessor.wrap(received.get(0)).getUser();
+    assertThat(connected).isInstanceOf(PreAuthenticatedAuthenticationToken.class);
+    assertThat(connected.getName()).isEqualTo("agent");
+    StompHeaderAccessor send = StompHeaderAccessor.wrap(received.get(1));
+    assertThat(send.getCommand()).isEqualTo(StompCommand.SEND);
+    assertThat(send.getUser()).isSameAs(connected);
+    assertThat(meterRegistry.get("chat.inbound.connect.auth").timer().count()).isEqualTo(1);
+  }
+
+  @Test
+  void sessionHeaderIsUsedWhenTheHandshakeCarriedNoCookie() throws Exception {
+    when(jwtProvider.verifySessionCookie("header")).thenReturn(Optional.of(new VerifiedToken(7L, Long.MAX_VALUE)));
+    when(userDetailService.loadUserById(7L)).thenReturn(Optional.of(
+      User.withUsername("agent").password("").authorities("ROLE_AGENT").build()));
+
+    List<Message<?>> received = connectAndSend(handshake(), "header");
+
+    assertThat(StompHeaderAccessor.wrap(received.get(1)).getUser().getName()).isEqualTo("agent");
+  }
+
+  @Test
+  void missingOrInvalidTokensLeaveTheSessionAnonymous() throws Exception {
+    when(jwtProvider.verifySessionCookie("forged")).thenReturn(Optional.empty());
+    when(jwtProvider.verifySessionCookie("unknown-user")).thenReturn(Optional.of(new VerifiedToken(8L, Long.MAX_VALUE)));
+    when(userDetailService.loadUserById(8L)).thenReturn(Optional.empty());
+    when(jwtProvider.verifySessionCookie("broken")).thenThrow(new IllegalStateException("bad signature"));
+
+    for (Map<String, Object> attributes : List.of(handshake(), handshake(new Cookie("other", "valid")),
+      handshake(new Cookie("session", "forged")), handshake(new Cookie("session", "unknown-user")),
+      handshake(new Cookie("session", "broken")))) {
+      List<Message<?>> received = connectAndSend(attributes, null);
+      assertThat(received).hasSize(2);
+      assertThat(StompHeaderAccessor.wrap(received.get(0)).getUser()).isNull();
+      assertThat(StompHeaderAccessor.wrap(received.get(1)).getUser()).isNull();
+    }
+    verify(userDetailService, never()).loadUserById(7L);
+  }
+
+  @Test
+  void onlyAdminsMaySubscribeToAdminDestinations() {
+    assertThatThrownBy(() -> interceptor.preSend(subscribe("/topic/roster", null), null))
+      .isInstanceOf(AccessDeniedException.class);
+    assertThatThrownBy(() -> interceptor.preSend(subscribe("/topic/roster", user("ROLE_CUSTOMER")), null))
+      .isInstanceOf(AccessDeniedException.class);
+    assertThat(meterRegistry.get("chat.inbound.subscribe.denied").counter().count()).isEqualTo(2);
+
+    Message<?> admin = subscribe("/topic/roster", user("ROLE_ADMIN"));
+    assertThat(interceptor.preSend(admin, null)).isSameAs(admin);
+    Message<?> guest = subscribe("/secured/user/queue/private/chat", null);
+    assertThat(interceptor.preSend(guest, null)).isSameAs(guest);
+  }
+
+  @Test
+  void onlyAdminsMaySubscribeToPresence() {
+    assertThatThrownBy(() -> interceptor.preSend(subscribe(ChatEventListener.TOPIC, null), null))
+      .isInstanceOf(AccessDeniedException.class);
+    assertThatThrownBy(() -> interceptor.preSend(subscribe(ChatEventListener.TOPIC, user("ROLE_CUSTOMER")), null))
+      .isInstanceOf(AccessDeniedException.class);
+
+    Message<?> admin = subscribe(ChatEventListener.TOPIC, user("ROLE_ADMIN"));
+    assertThat(interceptor.preSend(admin, null)).isSameAs(admin);
+  }
+
+  private static Map<String, Object> handshake(Cookie... cookies) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (cookies.length > 0)
+      request.setCookies(cookies);
+    Map<String, Object> attributes = new HashMap<>();
+    assertThat(new SessionCookieHandshakeInterceptor().beforeHandshake(new ServletServerHttpRequest(request),
+      null, null, attributes)).isTrue();
+    return attributes;
+  }
+
+  /**
+   * Runs a CONNECT and a SEND frame through Spring's STOMP protocol handler, which binds the principal
+   * set on CONNECT to the session, and returns what reached the inbound channel.
+   */
+  private List<Message<?>> connectAndSend(Map<String, Object> attributes, String sessionHeader) throws Exception {
+    WebSocketSession session = mock(WebSocketSession.class);
+    when(session.getId()).thenReturn("session1");
+    when(session.getAttributes()).thenReturn(attributes);
+    when(session.isOpen()).thenReturn(true);
+    List<Message<?>> received = new ArrayList<>();
+    ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+    inbound.addInterceptor(interceptor);
+    // registered last on the real inbound channel as well, it keeps headers mutable for the interceptors
+    inbound.addInterceptor(new ImmutableMessageChannelInterceptor());
+    inbound.subscribe(received::add);
+    StompSubProtocolHandler handler = new StompSubProtocolHandler();
+    handler.afterSessionStarted(session, inbound);
+
+    handler.handleMessageFromClient(session, new TextMessage("CONNECT\naccept-version:1.2\n" +
+      ((null == sessionHeader) ? "" : "session:" + sessionHeader + "\n") + "\n\0"), inbound);
+    handler.handleMessageFromClient(session,
+      new TextMessage("SEND\ndestination:/app/secured/room/chat\n\n{}\0"), inbound);
+    return received;
+  }
+
+  private static Principal user(String authority) {
+    return new PreAuthenticatedAuthenticationToken("user", "", List.of(new SimpleGrantedAuthority(authority)));
+  }
+
+  private static Message<byte[]> subscribe(String destination, Principal user) {
+    StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+    accessor.setSessionId("session1");
+    accessor.setSubscriptionId("sub-0");
+    accessor.setDestination(destination);
+    accessor.setUser(user);
+    accessor.setLeaveMutable(true);
+    return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+  }
+}
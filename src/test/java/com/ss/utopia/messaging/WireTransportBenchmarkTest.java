@@ -0,0 +1,64 @@
+package com.ss.utopia.messaging;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * CPU per message of the SockJS, raw and raw+deflate transports for the workloads of WireTransportTest,
+ * printed rather than asserted. Raw frames go out as encoded, so their column is the baseline the other two add to.
+ * Excluded from the regular build, run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class WireTransportBenchmarkTest {
+  private static final int WARMUP_ROUNDS = 20;
+  private static final int ROUNDS = 200;
+
+  @Test
+  void costPerMessageOfEachTransport() throws Exception {
+    measure("chat", WireTransportTest.chatFrames());
+    measure("history", WireTransportTest.historyFrames());
+    measure("roster", WireTransportTest.rosterFrames());
+  }
+
+  private static void measure(String workload, List<byte[]> frames) {
+    for (int round = 0; round < WARMUP_ROUNDS; round++)
+      run(frames);
+    long[] bytes = new long[3];
+    long[] nanos = new long[3];
+    for (int round = 0; round < ROUNDS; round++) {
+      long[][] result = run(frames);
+      for (int i = 0; i < 3; i++) {
+        bytes[i] += result[0][i];
+        nanos[i] += result[1][i];
+      }
+    }
+    String[] transports = {"sockjs", "raw", "raw+deflate"};
+    for (int i = 0; i < 3; i++)
+      System.out.printf("%-8s %-12s %8d bytes/round %8d ns/message%n", workload, transports[i],
+        bytes[i] / ROUNDS, nanos[i] / ((long) ROUNDS * frames.size()));
+  }
+
+  /**
+   * @return bytes and nanoseconds of one session sending the frames, per transport
+   */
+  private static long[][] run(List<byte[]> frames) {
+    long[][] result = new long[2][3];
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    for (byte[] frame : frames) {
+      long started = System.nanoTime();
+      result[0][0] += WireTransportTest.sockJs(frame);
+      result[1][0] += System.nanoTime() - started;
+      started = System.nanoTime();
+      result[0][1] += frame.length;
+      result[1][1] += System.nanoTime() - started;
+      started = System.nanoTime();
+      result[0][2] += WireTransportTest.deflate(deflater, frame);
+      result[1][2] += System.nanoTime() - started;
+    }
+    deflater.end();
+    return result;
+  }
+}
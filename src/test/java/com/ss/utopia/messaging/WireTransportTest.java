@@ -0,0 +1,148 @@
+package com.ss.utopia.messaging;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.dto.RosterEntryDto;
+import com.ss.utopia.dto.RosterSnapshotDto;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.sockjs.frame.Jackson2SockJsMessageCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Compares what the same STOMP frames weigh on the SockJS endpoint, on the native endpoint and on the native
+ * endpoint with permessage-deflate. Deflate is reproduced the way the extension runs it: one raw deflate
+ * stream per session (context takeover), sync flushed after every message, trailing 00 00 ff ff dropped.
+ * The WebSocket frame header is the same few bytes for every transport and is left out.
+ * The CPU cost of each transport is measured by WireTransportBenchmarkTest.
+ */
+class WireTransportTest {
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final StompEncoder STOMP_ENCODER = new StompEncoder();
+  private static final Jackson2SockJsMessageCodec SOCK_JS_CODEC = new Jackson2SockJsMessageCodec();
+
+  @Test
+  void marksNativeSessionsAndCountsDeflateOffers() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    NativeTransportHandshakeInterceptor interceptor = new NativeTransportHandshakeInterceptor(meterRegistry);
+    HttpHeaders headers = new HttpHeaders();
+    headers.add("Sec-WebSocket-Extensions", "x-webkit-deflate-frame, permessage-deflate; client_max_window_bits");
+    ServerHttpRequest request = mock(ServerHttpRequest.class);
+    when(request.getHeaders()).thenReturn(headers);
+    Map<String, Object> attributes = new HashMap<>();
+
+    assertThat(interceptor.beforeHandshake(request, null, null, attributes)).isTrue();
+    assertThat(attributes).containsEntry(WireFormatNegotiator.BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+    assertThat(meterRegistry.get("chat.websocket.handshakes").tag("deflate", "true").counter().count()).isEqualTo(1);
+    assertThat(NativeTransportHandshakeInterceptor.offersDeflate(List.of("x-webkit-deflate-frame"))).isFalse();
+    assertThat(NativeTransportHandshakeInterceptor.offersDeflate(null)).isFalse();
+  }
+
+  @Test
+  void nativeFramesAreSmallerThanSockJsAndDeflateShrinksLargeFrames() throws Exception {
+    long[] chat = sizes(chatFrames());
+    long[] history = sizes(historyFrames());
+    long[] roster = sizes(rosterFrames());
+
+    for (long[] sizes : List.of(chat, history, roster)) {
+      assertThat(sizes[1]).isLessThan(sizes[0]);
+      assertThat(sizes[2]).isLessThan(sizes[1]);
+    }
+    assertThat(history[2]).isLessThan(history[1] / 3);
+    assertThat(roster[2]).isLessThan(roster[1] / 3);
+  }
+
+  /**
+   * @return bytes of the frames sent over one session with SockJS, raw and raw+deflate
+   */
+  private static long[] sizes(List<byte[]> frames) {
+    long[] sizes = new long[3];
+    Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    for (byte[] frame : frames) {
+      sizes[0] += sockJs(frame);
+      sizes[1] += frame.length;
+      sizes[2] += deflate(deflater, frame);
+    }
+    deflater.end();
+    return sizes;
+  }
+
+  static List<byte[]> chatFrames() throws JsonProcessingException {
+    List<byte[]> chat = new ArrayList<>();
+    for (int i = 1; i <= 200; i++)
+      chat.add(frame("/secured/user/queue/private/chat", OBJECT_MAPPER.writeValueAsBytes(outMessage(i))));
+    return chat;
+  }
+
+  static List<byte[]> historyFrames() throws JsonProcessingException {
+    List<ChatOutMessage> page = new ArrayList<>();
+    for (int i = 1; i <= 50; i++)
+      page.add(outMessage(i));
+    return List.of(frame("/secured/user/queue/private/history",
+      OBJECT_MAPPER.writeValueAsBytes(new ChatHistoryPageDto("Guest42", page, true))));
+  }
+
+  static List<byte[]> rosterFrames() throws JsonProcessingException {
+    List<RosterEntryDto> entries = new ArrayList<>();
+    for (int i = 1; i <= 100; i++)
+      entries.add(new RosterEntryDto("Guest" + i, "Guest #" + i, i * 7L, new Date(1_600_000_000_000L + i),
+        "Can I bring a second carry-on bag on flight UT" + i + "?"));
+    return List.of(frame("/topic/roster", OBJECT_MAPPER.writeValueAsBytes(new RosterSnapshotDto(42, entries))));
+  }
+
+  static int sockJs(byte[] frame) {
+    // SockJS wraps each STOMP frame in a JSON array of escaped strings, e.g. a["MESSAGE\n...\u0000"]
+    return SOCK_JS_CODEC.encode(new String(frame, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  static int deflate(Deflater deflater, byte[] frame) {
+    deflater.setInput(frame);
+    ByteArrayOutputStream out = new ByteArrayOutputStream(frame.length / 2 + 16);
+    byte[] buffer = new byte[8192];
+    int count;
+    do {
+      count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+      out.write(buffer, 0, count);
+    } while (count == buffer.length);
+    return out.size() - 4;
+  }
+
+  private static byte[] frame(String destination, byte[] payload) {
+    StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+    accessor.setDestination(destination);
+    accessor.setSubscriptionId("sub-0");
+    accessor.setMessageId("a1b2c3d4-0");
+    accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+    return STOMP_ENCODER.encode(accessor.getMessageHeaders(), payload);
+  }
+
+  private static ChatOutMessage outMessage(long sequence) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest42");
+    message.setSenderShortName("Guest #42");
+    message.setContent((sequence % 3 == 0) ? "ok" : "Can I bring a second carry-on bag on flight UT" + sequence + "?");
+    message.setSentTimestamp(new Date(1_600_000_000_000L + sequence * 1000));
+    message.setSequence(sequence);
+    return message;
+  }
+}
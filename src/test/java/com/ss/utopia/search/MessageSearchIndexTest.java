@@ -0,0 +1,94 @@
+package com.ss.utopia.search;
+
+import com.ss.utopia.dto.SearchHitDto;
+import com.ss.utopia.dto.SearchPageDto;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.service.ChatService;
+import com.ss.utopia.service.ConcurrentConversationStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MessageSearchIndexTest {
+  private final MessageSearchIndex index = new MessageSearchIndex(
+    new ChatService(new ConcurrentConversationStore(), event -> {}, 50, 200), 100, new SimpleMeterRegistry());
+
+  @Test
+  void findsMessagesByTermsAndFilters() {
+    index.add("Guest1", message("Guest1", "I want a refund for booking XK42Q"), 1_000);
+    index.add("Guest1", message("agent", "Your refund for XK42Q is on its way"), 2_000);
+    index.add("Guest2", message("Guest2", "Refunds take how long?"), 3_000);
+    index.add("Guest2", message("Guest2", "Where is my bag"), 4_000);
+
+    assertThat(contents(index.search("refund", null, null, null, null, null, 10)))
+      .containsExactly("Refunds take how long?", "Your refund for XK42Q is on its way",
+        "I want a refund for booking XK42Q");
+    assertThat(contents(index.search("xk42q REFUND", null, null, null, null, null, 10))).hasSize(2);
+    assertThat(contents(index.search("refund", "Guest1", "agent", null, null, null, 10)))
+      .containsExactly("Your refund for XK42Q is on its way");
+    assertThat(contents(index.search("refund", null, null, 1_500L, 2_500L, null, 10)))
+      .containsExactly("Your refund for XK42Q is on its way");
+    assertThat(contents(index.search("nothing", null, null, null, null, null, 10))).isEmpty();
+    assertThatThrownBy(() -> index.search("the", null, null, null, null, null, 10))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void pagesNewestFirstAndForgetsClosedConversations() {
+    for (int i = 0; i < 25; i++)
+      index.add("Guest" + (i % 2), message("Guest" + (i % 2), "question " + i), i);
+
+    List<String> all = new ArrayList<>();
+    SearchPageDto page = index.search("question", null, null, null, null, null, 10);
+    all.addAll(contents(page));
+    while (null != page.getNextCursor()) {
+      page = index.search("question", null, null, null, null, page.getNextCursor(), 10);
+      all.addAll(contents(page));
+    }
+    assertThat(all).hasSize(25).startsWith("question 24", "question 23").endsWith("question 0");
+
+    index.onConversationClosed(new ConversationClosedEvent("Guest0", "test"));
+    index.purge();
+    assertThat(index.search("question", null, null, null, null, null, 100).getHits())
+      .extracting(SearchHitDto::getConversationId).hasSize(12).containsOnly("Guest1");
+  }
+
+  private static ChatOutMessage message(String senderId, String content) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId(senderId);
+    message.setContent(content);
+    return message;
+  }
+
+  @Test
+  void keepsOnlyWhatTheBoundedHistoryStillHolds() {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    MessageSearchIndex bounded = new MessageSearchIndex(
+      new ChatService(new ConcurrentConversationStore(), event -> {}, 50, 200), 100, 3, meterRegistry);
+    for (int i = 0; i < 5; i++)
+      bounded.add("Guest1", message("Guest1", "question " + i), i);
+    bounded.add("Guest2", message("Guest2", "question other"), 10);
+
+    assertThat(contents(bounded.search("question", "Guest1", null, null, null, null, 10)))
+      .containsExactly("question 4", "question 3", "question 2");
+    assertThat(meterRegistry.get("chat.search.documents").gauge().value()).isEqualTo(4);
+
+    bounded.add("Guest1", message("Guest1", "question 5"), 5);
+    bounded.purge();
+    assertThat(contents(bounded.search("question", null, null, null, null, null, 10)))
+      .containsExactly("question 5", "question other", "question 4", "question 3");
+    assertThat(meterRegistry.get("chat.search.documents").gauge().value()).isEqualTo(4);
+  }
+
+  private static List<String> contents(SearchPageDto page) {
+    List<String> contents = new ArrayList<>();
+    page.getHits().forEach(hit -> contents.add(hit.getMessage().getContent()));
+    return contents;
+  }
+}
@@ -0,0 +1,75 @@
+package com.ss.utopia.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ExpiringCacheTest {
+
+  @Test
+  void entriesExpireAtTheirOwnTime() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+    cache.put("a", "1", 100, 0);
+    cache.put("b", "2", 200, 0);
+
+    assertThat(cache.get("a", 99)).isEqualTo("1");
+    assertThat(cache.get("a", 100)).isNull();
+    assertThat(cache.get("b", 150)).isEqualTo("2");
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  void alreadyExpiredValuesAreNotStored() {
+    ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+    cache.put("a", "1", 50, 50);
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  void sizeNeverExceedsTheCap() {
+    ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100);
+    for (int i = 0; i < 10_000; i++)
+      cache.put(i, i, Long.MAX_VALUE, 0);
+    assertThat(cache.size()).isLessThanOrEqualTo(100);
+  }
+
+  @Test
+  void concurrentPutsStayWithinTheCap() throws Exception {
+    ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(100);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> writers = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        int offset = t * 10_000;
+        writers.add(executor.submit(() -> {
+          for (int i = 0; i < 10_000; i++)
+            cache.put(offset + i, i, Long.MAX_VALUE, 0);
+        }));
+      }
+      for (Future<?> writer : writers)
+        writer.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(cache.size()).isLessThanOrEqualTo(100);
+  }
+
+  @Test
+  void fullCachePurgesExpiredEntriesFirst() {
+    ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(3);
+    cache.put(1, 1, 10, 0);
+    cache.put(2, 2, 10, 0);
+    cache.put(3, 3, 1_000, 0);
+    cache.put(4, 4, 1_000, 20);
+
+    assertThat(cache.get(3, 20)).isEqualTo(3);
+    assertThat(cache.get(4, 20)).isEqualTo(4);
+  }
+}
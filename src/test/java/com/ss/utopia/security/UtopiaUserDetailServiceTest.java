@@ -0,0 +1,140 @@
+package com.ss.utopia.security;
+
+import com.ss.utopia.dao.UserRepository;
+import com.ss.utopia.model.User;
+import com.ss.utopia.model.UserRole;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UtopiaUserDetailServiceTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final UserRepository userRepository = mock(UserRepository.class);
+  private final AtomicLong now = new AtomicLong();
+  private final ExecutorService refreshExecutor = Executors.newSingleThreadExecutor();
+
+  @Test
+  void cachedUsersExpireAfterTheTtl() {
+    when(userRepository.findById(1L)).thenReturn(Optional.of(user("agent", "AGENT")));
+    UtopiaUserDetailService service = service(10, 1_000, 0);
+
+    assertThat(service.loadUserById(1L)).map(UserDetails::getUsername).contains("agent");
+    now.set(999);
+    assertThat(service.loadUserById(1L)).isPresent();
+    verify(userRepository, times(1)).findById(1L);
+
+    now.set(1_000);
+    assertThat(service.loadUserById(1L)).isPresent();
+    verify(userRepository, times(2)).findById(1L);
+    assertThat(meterRegistry.get("security.user.cache").tag("result", "hit").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("security.user.cache").tag("result", "miss").counter().count()).isEqualTo(2);
+  }
+
+  @Test
+  void cacheSizeStaysWithinTheBound() {
+    when(userRepository.findById(anyLong())).thenAnswer(invocation ->
+      Optional.of(user("user" + invocation.getArgument(0), "CUSTOMER")));
+    UtopiaUserDetailService service = service(4, 60_000, 0);
+
+    for (long id = 0; id < 50; id++)
+      service.loadUserById(id);
+
+    assertThat(meterRegistry.get("security.user.cache.size").gauge().value()).isLessThanOrEqualTo(4);
+  }
+
+  @Test
+  void hitsCloseToExpiryReloadInTheBackground() throws Exception {
+    when(userRepository.findById(1L))
+      .thenReturn(Optional.of(user("agent", "AGENT")))
+      .thenReturn(Optional.of(user("agent", "ADMIN")));
+    UtopiaUserDetailService service = service(10, 1_000, 100);
+
+    service.loadUserById(1L);
+    now.set(950);
+    assertThat(authority(service.loadUserById(1L))).isEqualTo("ROLE_AGENT");
+    refreshExecutor.shutdown();
+    assertThat(refreshExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+    now.set(1_500);
+    assertThat(authority(service.loadUserById(1L))).isEqualTo("ROLE_ADMIN");
+    verify(userRepository, times(2)).findById(1L);
+    assertThat(meterRegistry.get("security.user.cache.refreshes").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void deletedUsersAreDroppedAtTheNextReload() {
+    when(userRepository.findById(1L))
+      .thenReturn(Optional.of(user("agent", "AGENT")))
+      .thenReturn(Optional.empty());
+    UtopiaUserDetailService service = service(10, 1_000, 0);
+
+    assertThat(service.loadUserById(1L)).isPresent();
+    now.set(1_000);
+    assertThat(service.loadUserById(1L)).isEmpty();
+    assertThat(meterRegistry.get("security.user.cache.size").gauge().value()).isZero();
+  }
+
+  @Test
+  void invalidatedUsersAreReloadedRightAway() {
+    when(userRepository.findById(1L))
+      .thenReturn(Optional.of(user("agent", "AGENT")))
+      .thenReturn(Optional.of(user("agent", "ADMIN")))
+      .thenReturn(Optional.empty());
+    UtopiaUserDetailService service = service(10, 60_000, 0);
+
+    assertThat(authority(service.loadUserById(1L))).isEqualTo("ROLE_AGENT");
+    service.invalidate(1L);
+    assertThat(authority(service.loadUserById(1L))).isEqualTo("ROLE_ADMIN");
+    service.invalidateAll();
+    assertThat(service.loadUserById(1L)).isEmpty();
+    verify(userRepository, times(3)).findById(1L);
+  }
+
+  @Test
+  void aLoadRacingAnInvalidationDoesNotCacheWhatItRead() {
+    UtopiaUserDetailService service = service(10, 60_000, 0);
+    when(userRepository.findById(1L))
+      .thenAnswer(invocation -> {
+        // the role changes while the old row is being read
+        service.invalidate(1L);
+        return Optional.of(user("agent", "AGENT"));
+      })
+      .thenReturn(Optional.of(user("agent", "ADMIN")));
+
+    assertThat(authority(service.loadUserById(1L))).isEqualTo("ROLE_AGENT");
+    assertThat(authority(service.loadUserById(1L))).isEqualTo("ROLE_ADMIN");
+    verify(userRepository, times(2)).findById(1L);
+  }
+
+  private UtopiaUserDetailService service(int maxSize, long ttl, long refreshAhead) {
+    return new UtopiaUserDetailService(userRepository, mock(JwtProvider.class), maxSize, ttl, refreshAhead,
+      meterRegistry, now::get, refreshExecutor);
+  }
+
+  private static String authority(Optional<UserDetails> userDetails) {
+    return userDetails.orElseThrow().getAuthorities().stream().map(GrantedAuthority::getAuthority)
+      .findFirst().orElseThrow();
+  }
+
+  private static User user(String username, String role) {
+    User user = new User() {
+    };
+    user.setUsername(username);
+    user.setRole(new UserRole(1L, role));
+    return user;
+  }
+}
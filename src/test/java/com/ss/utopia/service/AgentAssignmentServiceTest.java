@@ -0,0 +1,141 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dto.AssignmentDto;
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AgentAssignmentServiceTest {
+  private final List<AssignmentDto> notified = new CopyOnWriteArrayList<>();
+  private final AgentAssignmentService service = new AgentAssignmentService(new ChatBroker() {
+    @Override
+    public void sendToUser(String user, String destination, Object payload) {
+      if (user.equals(((AssignmentDto) payload).getAgent()))
+        notified.add((AssignmentDto) payload);
+    }
+
+    @Override
+    public void sendToSession(String sessionId, String destination, Object payload) {
+    }
+
+    @Override
+    public void broadcast(String destination, Object payload) {
+    }
+  }, 0.1, 0.2, new SimpleMeterRegistry());
+
+  @Test
+  void spreadsConversationsOverTheLeastLoadedAgents() {
+    service.agentConnected("alice");
+    service.agentConnected("bob");
+    Map<String, Integer> load = new HashMap<>();
+    for (int i = 0; i < 10; i++)
+      load.merge(service.assignIfAbsent("Guest" + i).orElseThrow(), 1, Integer::sum);
+
+    assertThat(load).containsEntry("alice", 5).containsEntry("bob", 5);
+    assertThat(service.assignIfAbsent("Guest0")).isEqualTo(service.getAgent("Guest0"));
+    assertThat(notified).hasSize(10);
+  }
+
+  @Test
+  void prefersFasterAgentsAtEqualLoad() {
+    service.agentConnected("alice");
+    assertThat(service.assignIfAbsent("Guest1")).contains("alice");
+    service.onMessageAdded(new ChatMessageAddedEvent("Guest1", message("Guest1")));
+    sleep(30);
+    service.onMessageAdded(new ChatMessageAddedEvent("Guest1", message("alice")));
+    service.onConversationClosed(new ConversationClosedEvent("Guest1", "test"));
+    service.agentConnected("bob");
+
+    assertThat(service.assignIfAbsent("Guest2")).contains("bob");
+  }
+
+  @Test
+  void reassignsWhenTheLastSessionOfAnAgentDisconnects() {
+    service.agentConnected("alice");
+    service.agentConnected("alice");
+    service.assignIfAbsent("Guest1");
+    service.assignIfAbsent("Guest2");
+    service.agentConnected("bob");
+
+    service.agentDisconnected("alice");
+    assertThat(service.getAgent("Guest1")).contains("alice");
+    service.agentDisconnected("alice");
+    assertThat(service.getAgent("Guest1")).contains("bob");
+    assertThat(service.getAgent("Guest2")).contains("bob");
+    assertThat(notified).filteredOn(AssignmentDto::isReassigned).hasSize(2);
+
+    service.agentDisconnected("bob");
+    assertThat(service.getAgent("Guest1")).isEmpty();
+    service.agentConnected("carol");
+    assertThat(service.getAgent("Guest1")).contains("carol");
+    assertThat(service.getAgent("Guest2")).contains("carol");
+  }
+
+  @Test
+  void queuedConversationsKeepWhetherTheyWereReassigned() {
+    service.agentConnected("alice");
+    service.assignIfAbsent("Guest1");
+    service.agentDisconnected("alice");
+    service.assignIfAbsent("Guest2");
+    notified.clear();
+
+    service.agentConnected("bob");
+
+    assertThat(notified).extracting(AssignmentDto::getConversationId).containsExactlyInAnyOrder("Guest1", "Guest2");
+    assertThat(notified).filteredOn(AssignmentDto::isReassigned)
+      .extracting(AssignmentDto::getConversationId).containsExactly("Guest1");
+  }
+
+  @Test
+  void agentsWithAnOpenSessionStayAvailableWhileOtherSessionsComeAndGo() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    CountDownLatch start = new CountDownLatch(1);
+    for (int t = 0; t < 4; t++)
+      executor.execute(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < 10_000; i++) {
+          service.agentConnected("alice");
+          service.agentDisconnected("alice");
+        }
+      });
+    start.countDown();
+    // joins while the other sessions of alice keep dropping to zero and reconnecting
+    service.agentConnected("alice");
+    executor.shutdown();
+    assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+
+    assertThat(service.assignIfAbsent("Guest1")).contains("alice");
+  }
+
+  private static ChatOutMessage message(String senderId) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId(senderId);
+    return message;
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
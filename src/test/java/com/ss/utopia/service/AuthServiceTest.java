@@ -0,0 +1,79 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dao.UserRepository;
+import com.ss.utopia.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthServiceTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final UserRepository userRepository = mock(UserRepository.class);
+
+  @Test
+  void looksTheUserUpOncePerAttempt() {
+    PasswordEncoder passwordEncoder = new BCryptPasswordEncoder(4);
+    User user = mock(User.class);
+    when(user.getPassword()).thenReturn(passwordEncoder.encode("secret"));
+    when(userRepository.findByUsername("agent")).thenReturn(Optional.of(user));
+    when(userRepository.findByUsername("nobody")).thenReturn(Optional.empty());
+    AuthService authService = new AuthService(userRepository, passwordEncoder, 2, 4, meterRegistry);
+
+    assertThat(authService.signin("agent", "secret")).containsSame(user);
+    assertThat(authService.signin("agent", "wrong")).isEmpty();
+    assertThat(authService.signin("nobody", "secret")).isEmpty();
+    authService.shutdown();
+
+    verify(userRepository, times(2)).findByUsername("agent");
+    verify(userRepository, times(1)).findByUsername("nobody");
+    assertThat(meterRegistry.get("security.login.attempts").tag("result", "success").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("security.login.attempts").tag("result", "failure").counter().count()).isEqualTo(2);
+    assertThat(meterRegistry.get("security.login.hash").timer().count()).isEqualTo(3);
+    assertThat(meterRegistry.get("security.login").timer().count()).isEqualTo(3);
+  }
+
+  @Test
+  void refusesAttemptsBeyondTheQueue() throws Exception {
+    CountDownLatch hashing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+    when(passwordEncoder.encode(anyString())).thenReturn("hash");
+    when(passwordEncoder.matches(anyString(), anyString())).thenAnswer(invocation -> {
+      hashing.countDown();
+      return release.await(5, TimeUnit.SECONDS);
+    });
+    when(userRepository.findByUsername(anyString())).thenReturn(Optional.empty());
+    AuthService authService = new AuthService(userRepository, passwordEncoder, 1, 1, meterRegistry);
+
+    CompletableFuture<Optional<User>> first = CompletableFuture.supplyAsync(() -> authService.signin("a", "p"));
+    assertThat(hashing.await(5, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<Optional<User>> second = CompletableFuture.supplyAsync(() -> authService.signin("b", "p"));
+    final long deadline = System.currentTimeMillis() + 5_000;
+    while (meterRegistry.get("security.login.in-flight").gauge().value() < 2 && System.currentTimeMillis() < deadline)
+      Thread.sleep(5);
+
+    assertThatThrownBy(() -> authService.signin("c", "p"))
+      .isInstanceOf(LoginOverloadedException.class)
+      .satisfies(e -> assertThat(((LoginOverloadedException) e).getRetryAfterSeconds()).isGreaterThanOrEqualTo(1));
+    verify(userRepository, times(0)).findByUsername("c");
+    release.countDown();
+    assertThat(first.get(5, TimeUnit.SECONDS)).isEmpty();
+    assertThat(second.get(5, TimeUnit.SECONDS)).isEmpty();
+    assertThat(meterRegistry.get("security.login.attempts").tag("result", "rejected").counter().count()).isEqualTo(1);
+    authService.shutdown();
+  }
+}
@@ -0,0 +1,126 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BoundedConversationStoreTest {
+  private static final ObjectMapper ENCODER = new ObjectMapper();
+
+  @Test
+  void ringBufferKeepsOnlyTheLatestMessages() {
+    BoundedConversationStore store = new BoundedConversationStore(3, Long.MAX_VALUE, 60_000, new SimpleMeterRegistry(), event -> {
+    });
+    store.createIfAbsent("Guest1");
+    for (int i = 0; i < 5; i++)
+      store.append("Guest1", message(i), ENCODER);
+
+    List<String> contents = store.snapshot("Guest1").stream()
+      .map(ChatOutMessage::getContent).collect(Collectors.toList());
+    assertThat(contents).containsExactly("2", "3", "4");
+    assertThat(store.getUsedBytes()).isEqualTo(3 * BoundedConversation.estimateBytes(encoded(0, 5)));
+  }
+
+  @Test
+  void theBudgetCountsTheEncodedJson() {
+    ChatOutMessage message = encoded(0, 1);
+
+    assertThat(BoundedConversation.estimateBytes(message))
+      .isGreaterThan(BoundedConversation.estimateBytes(message(0)) + 3L * message.getEncoded().getUtf8().length);
+  }
+
+  @Test
+  void pagesOnlyReachMessagesStillInTheRing() {
+    BoundedConversationStore store = new BoundedConversationStore(5, Long.MAX_VALUE, 60_000, new SimpleMeterRegistry(), event -> {
+    });
+    store.createIfAbsent("Guest1");
+    for (int i = 0; i < 12; i++)
+      store.append("Guest1", message(i), ENCODER);
+
+    assertThat(store.pageBefore("Guest1", 10, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(8L, 9L);
+    assertThat(store.pageAfter("Guest1", 0, 2)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(8L, 9L);
+    assertThat(store.pageAfter("Guest1", 10, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(11L, 12L);
+  }
+
+  @Test
+  void leastRecentlyUsedConversationIsEvictedOverBudget() {
+    final long messageBytes = BoundedConversation.estimateBytes(encoded(0, 1));
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    BoundedConversationStore store = new BoundedConversationStore(10, 2 * messageBytes, 60_000, registry, event -> {
+    });
+    store.createIfAbsent("Guest1");
+    store.createIfAbsent("Guest2");
+    store.createIfAbsent("Guest3");
+    store.append("Guest1", message(0), ENCODER);
+    store.append("Guest2", message(0), ENCODER);
+    store.snapshot("Guest1");
+    store.append("Guest3", message(0), ENCODER);
+
+    assertThat(store.conversationIds()).containsExactlyInAnyOrder("Guest1", "Guest3");
+    assertThat(store.getUsedBytes()).isEqualTo(2 * messageBytes);
+    assertThat(registry.get("chat.history.evictions").tag("reason", "budget").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void restoredMessagesKeepTheirSequences() {
+    BoundedConversationStore store = new BoundedConversationStore(3, Long.MAX_VALUE, 60_000, new SimpleMeterRegistry(), event -> {
+    });
+    store.createIfAbsent("Guest1");
+    for (long sequence : new long[]{40, 41, 44, 45})
+      assertThat(store.restore("Guest1", restored(sequence), ENCODER)).isTrue();
+    assertThat(store.restore("Guest1", restored(42), ENCODER)).isFalse();
+    store.append("Guest1", message(0), ENCODER);
+
+    assertThat(store.snapshot("Guest1")).extracting(ChatOutMessage::getSequence)
+      .containsExactly(44L, 45L, 46L);
+    assertThat(store.pageAfter("Guest1", 41, 2)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(44L, 45L);
+    assertThat(store.pageBefore("Guest1", 46, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(44L, 45L);
+    assertThat(store.getUsedBytes()).isEqualTo(3 * BoundedConversation.estimateBytes(encoded(0, 44)));
+  }
+
+  @Test
+  void idleConversationsAreSwept() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    BoundedConversationStore store = new BoundedConversationStore(10, Long.MAX_VALUE, 0, registry, event -> {
+    });
+    store.createIfAbsent("Guest1");
+    store.append("Guest1", message(0), ENCODER);
+    store.evictIdleConversations();
+
+    assertThat(store.size()).isZero();
+    assertThat(store.getUsedBytes()).isZero();
+    assertThat(store.append("Guest1", message(1), ENCODER)).isFalse();
+    assertThat(registry.get("chat.history.evictions").tag("reason", "idle").counter().count()).isEqualTo(1);
+  }
+
+  private static ChatOutMessage message(int index) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest1");
+    message.setContent(String.valueOf(index));
+    return message;
+  }
+
+  private static ChatOutMessage encoded(int index, long sequence) {
+    ChatOutMessage message = message(index);
+    message.setSequence(sequence);
+    message.encode(ENCODER);
+    return message;
+  }
+
+  private static ChatOutMessage restored(long sequence) {
+    ChatOutMessage message = message(0);
+    message.setSequence(sequence);
+    return message;
+  }
+}
@@ -0,0 +1,87 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatMessageWriterTest {
+  private EmbeddedDatabase database;
+  private JdbcTemplate jdbcTemplate;
+  private SimpleMeterRegistry meterRegistry;
+
+  @BeforeEach
+  void setUp() {
+    database = new EmbeddedDatabaseBuilder()
+      .setType(EmbeddedDatabaseType.H2)
+      .generateUniqueName(true)
+      .addScript("db/chat_message.sql")
+      .build();
+    jdbcTemplate = new JdbcTemplate(database);
+    meterRegistry = new SimpleMeterRegistry();
+  }
+
+  @AfterEach
+  void tearDown() {
+    database.shutdown();
+  }
+
+  @Test
+  void messagesAreFlushedInBatches() throws Exception {
+    ChatMessageWriter writer = new ChatMessageWriter(jdbcTemplate, meterRegistry, 100, 10, 50, 5);
+    writer.start();
+    for (int i = 0; i < 25; i++)
+      writer.onMessageAdded(new ChatMessageAddedEvent("Guest1", message(i)));
+
+    awaitRowCount(25);
+    writer.stop();
+
+    List<String> contents = jdbcTemplate.queryForList(
+      "SELECT content FROM chat_message WHERE conversation_id = 'Guest1' ORDER BY id", String.class);
+    assertThat(contents).hasSize(25).startsWith("0", "1", "2").endsWith("24");
+    assertThat(jdbcTemplate.queryForList("SELECT sequence_number FROM chat_message ORDER BY id", Long.class))
+      .startsWith(1L, 2L).endsWith(25L);
+    assertThat(meterRegistry.get("chat.persistence.batch.size").summary().max()).isLessThanOrEqualTo(10);
+    assertThat(meterRegistry.get("chat.persistence.batch.size").summary().totalAmount()).isEqualTo(25);
+    assertThat(meterRegistry.get("chat.persistence.flush").timer().count()).isGreaterThanOrEqualTo(3);
+  }
+
+  @Test
+  void fullQueueRejectsInsteadOfBlocking() throws Exception {
+    ChatMessageWriter writer = new ChatMessageWriter(jdbcTemplate, meterRegistry, 2, 10, 50, 0);
+    for (int i = 0; i < 5; i++)
+      writer.onMessageAdded(new ChatMessageAddedEvent("Guest1", message(i)));
+
+    assertThat(meterRegistry.get("chat.persistence.rejected").counter().count()).isEqualTo(3);
+    writer.start();
+    awaitRowCount(2);
+    writer.stop();
+  }
+
+  private void awaitRowCount(int expected) throws InterruptedException {
+    final long deadline = System.currentTimeMillis() + 5_000;
+    while (System.currentTimeMillis() < deadline
+      && jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_message", Integer.class) < expected)
+      Thread.sleep(20);
+    assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM chat_message", Integer.class)).isEqualTo(expected);
+  }
+
+  private static ChatOutMessage message(int index) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest1");
+    message.setSenderShortName("Guest #1");
+    message.setContent(String.valueOf(index));
+    message.setSequence(index + 1L);
+    return message;
+  }
+}
@@ -0,0 +1,92 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.dto.ChatHistoryPageDto;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChatServiceTest {
+  @Test
+  void pagesBeforeTheFirstSequenceAreEmptyInEveryMode() {
+    for (ConversationStore store : List.of(new ConcurrentConversationStore(),
+      new BoundedConversationStore(100, Long.MAX_VALUE, 60_000, new SimpleMeterRegistry(), event -> {
+      }))) {
+      ChatService chatService = chatService(store);
+      chatService.openConversation("Guest1");
+      for (int i = 1; i <= 10; i++)
+        chatService.addMessage("Guest1", message(i));
+
+      assertThat(chatService.getHistoryPage("Guest1", Long.MIN_VALUE, null, 5).getMessages()).isEmpty();
+      assertThat(chatService.getHistoryPage("Guest1", 0L, null, 5).getMessages()).isEmpty();
+      assertThat(chatService.getHistoryPage("Guest1", 1L, null, 5).getMessages()).isEmpty();
+      ChatHistoryPageDto latest = chatService.getHistoryPage("Guest1", null, null, 4);
+      assertThat(contents(latest.getMessages())).containsExactly("7", "8", "9", "10");
+      assertThat(latest.isHasMore()).isTrue();
+      assertThat(contents(chatService.getHistoryPage("Guest1", 3L, null, 5).getMessages())).containsExactly("1", "2");
+    }
+  }
+
+  @Test
+  void reconnectingClientsGetOnlyWhatTheyMissed() {
+    ChatService unbounded = chatService(new ConcurrentConversationStore());
+    ChatService bounded = chatService(new BoundedConversationStore(5, Long.MAX_VALUE, 60_000,
+      new SimpleMeterRegistry(), event -> {
+    }));
+    for (ChatService chatService : List.of(unbounded, bounded)) {
+      chatService.openConversation("Guest1");
+      for (int i = 1; i <= 8; i++)
+        chatService.addMessage("Guest1", message(i));
+
+      assertThat(contents(chatService.getHistoryAfter("Guest1", 8))).isEmpty();
+      assertThat(contents(chatService.getHistoryAfter("Guest1", 6))).containsExactly("7", "8");
+      assertThat(chatService.getHistoryAfter("Guest1", 6).get(0).getSequence()).isEqualTo(7);
+      assertThat(chatService.getHistoryAfter("Guest2", 0)).isEmpty();
+    }
+    // a client that fell behind the ring buffer resumes from the oldest message still kept
+    assertThat(contents(unbounded.getHistoryAfter("Guest1", 1))).startsWith("2").hasSize(7);
+    assertThat(contents(bounded.getHistoryAfter("Guest1", 1))).containsExactly("4", "5", "6", "7", "8");
+  }
+
+  @Test
+  void restoredHistoryKeepsItsSequencesAcrossARestart() {
+    for (ConversationStore store : List.of(new ConcurrentConversationStore(),
+      new BoundedConversationStore(5, Long.MAX_VALUE, 60_000, new SimpleMeterRegistry(), event -> {
+      }))) {
+      ChatService chatService = chatService(store);
+      for (int i = 120; i <= 122; i++) {
+        ChatOutMessage message = message(i);
+        message.setSequence(i);
+        chatService.restoreMessage("Guest1", message);
+      }
+      chatService.addMessage("Guest1", message(123));
+
+      // a client that saw up to 121 before the restart only gets what it missed
+      assertThat(contents(chatService.getHistoryAfter("Guest1", 121))).containsExactly("122", "123");
+      assertThat(chatService.getLastMessage("Guest1").orElseThrow().getSequence()).isEqualTo(123);
+      // rows persisted without a sequence are numbered after the restored ones
+      chatService.restoreMessage("Guest1", message(124));
+      assertThat(chatService.getLastMessage("Guest1").orElseThrow().getSequence()).isEqualTo(124);
+    }
+  }
+
+  private static ChatService chatService(ConversationStore store) {
+    return new ChatService(store, event -> {
+    }, 50, 200);
+  }
+
+  private static List<String> contents(List<ChatOutMessage> messages) {
+    return messages.stream().map(ChatOutMessage::getContent).collect(Collectors.toList());
+  }
+
+  private static ChatOutMessage message(int index) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId("Guest1");
+    message.setContent(String.valueOf(index));
+    return message;
+  }
+}
@@ -0,0 +1,119 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.model.ChatOutMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrentConversationStoreTest {
+  private static final ObjectMapper ENCODER = new ObjectMapper();
+
+  @Test
+  void createIfAbsentOnlySucceedsOnce() {
+    ConversationStore store = new ConcurrentConversationStore();
+    assertThat(store.createIfAbsent("Guest1")).isTrue();
+    assertThat(store.createIfAbsent("Guest1")).isFalse();
+    assertThat(store.size()).isEqualTo(1);
+  }
+
+  @Test
+  void appendToUnknownConversationIsRejected() {
+    ConversationStore store = new ConcurrentConversationStore();
+    assertThat(store.append("Guest1", message("w", 0), ENCODER)).isFalse();
+    assertThat(store.snapshot("Guest1")).isEmpty();
+  }
+
+  @Test
+  void pagesAreSelectedBySequence() {
+    ConversationStore store = new ConcurrentConversationStore();
+    store.createIfAbsent("Guest1");
+    for (int i = 0; i < 100; i++)
+      store.append("Guest1", message("w", i), ENCODER);
+
+    assertThat(store.pageBefore("Guest1", Long.MAX_VALUE, 3)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(98L, 99L, 100L);
+    assertThat(store.pageBefore("Guest1", 3, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(1L, 2L);
+    assertThat(store.pageAfter("Guest1", 97, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(98L, 99L, 100L);
+    assertThat(store.pageAfter("Guest1", 100, 10)).isEmpty();
+  }
+
+  @Test
+  void restoredMessagesKeepTheirSequences() {
+    ConversationStore store = new ConcurrentConversationStore();
+    store.createIfAbsent("Guest1");
+    for (long sequence : new long[]{501, 502, 505})
+      assertThat(store.restore("Guest1", restored(sequence), ENCODER)).isTrue();
+    assertThat(store.restore("Guest1", restored(503), ENCODER)).isFalse();
+    store.append("Guest1", message("w", 0), ENCODER);
+
+    assertThat(store.snapshot("Guest1")).extracting(ChatOutMessage::getSequence)
+      .containsExactly(501L, 502L, 505L, 506L);
+    assertThat(store.pageAfter("Guest1", 502, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(505L, 506L);
+    assertThat(store.pageBefore("Guest1", 505, 10)).extracting(ChatOutMessage::getSequence)
+      .containsExactly(501L, 502L);
+    assertThat(store.pageBefore("Guest1", 501, 10)).isEmpty();
+  }
+
+  @Test
+  void concurrentAppendsAreNotLostAndKeepPerWriterOrder() throws Exception {
+    final ConversationStore store = new ConcurrentConversationStore();
+    store.createIfAbsent("Guest1");
+    final int writers = 8;
+    final int perWriter = 5_000;
+    final ExecutorService executor = Executors.newFixedThreadPool(writers + 1);
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Future<?>> futures = new ArrayList<>();
+    for (int w = 0; w < writers; w++) {
+      final String writer = "w" + w;
+      futures.add(executor.submit(() -> {
+        start.await();
+        for (int i = 0; i < perWriter; i++)
+          store.append("Guest1", message(writer, i), ENCODER);
+        return null;
+      }));
+    }
+    futures.add(executor.submit(() -> {
+      start.await();
+      for (int i = 0; i < 200; i++)
+        store.snapshot("Guest1").forEach(ChatOutMessage::getContent);
+      return null;
+    }));
+    start.countDown();
+    for (Future<?> future : futures)
+      future.get(30, TimeUnit.SECONDS);
+    executor.shutdown();
+
+    final List<ChatOutMessage> messages = store.snapshot("Guest1");
+    assertThat(messages).hasSize(writers * perWriter);
+    final int[] next = new int[writers];
+    for (ChatOutMessage message : messages) {
+      final int writer = Integer.parseInt(message.getSenderId().substring(1));
+      assertThat(Integer.parseInt(message.getContent())).isEqualTo(next[writer]++);
+    }
+  }
+
+  private static ChatOutMessage message(String senderId, int index) {
+    ChatOutMessage message = new ChatOutMessage();
+    message.setSenderId(senderId);
+    message.setContent(String.valueOf(index));
+    return message;
+  }
+
+  private static ChatOutMessage restored(long sequence) {
+    ChatOutMessage message = message("w", (int) sequence);
+    message.setSequence(sequence);
+    return message;
+  }
+}
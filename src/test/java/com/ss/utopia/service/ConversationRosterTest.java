@@ -0,0 +1,34 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.event.ChatMessageAddedEvent;
+import com.ss.utopia.event.ConversationClosedEvent;
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.model.ChatOutMessage;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class ConversationRosterTest {
+  @Test
+  void lateMessagesDoNotBringClosedConversationsBack() {
+    ChatService chatService = new ChatService(new ConcurrentConversationStore(), event -> {
+    }, 50, 200);
+    ChatBroker chatBroker = mock(ChatBroker.class);
+    ConversationRoster roster = new ConversationRoster(chatService, chatBroker);
+    chatService.openConversation("Guest1");
+    ChatOutMessage message = new ChatOutMessage();
+    message.setContent("hello");
+    chatService.closeConversation("Guest1", "closed");
+    roster.onConversationClosed(new ConversationClosedEvent("Guest1", "closed"));
+
+    roster.onMessageAdded(new ChatMessageAddedEvent("Guest1", message));
+
+    assertThat(roster.snapshot().getEntries()).isEmpty();
+    verify(chatBroker, never()).broadcast(eq(ConversationRoster.TOPIC), any());
+  }
+}
@@ -0,0 +1,39 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.model.ChatOutMessage;
+import com.ss.utopia.search.Tokenizer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FaqResponderTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  @Test
+  void answersQuestionsFromTheCorpus() throws Exception {
+    FaqResponder responder = new FaqResponder(true, new ClassPathResource("faq/faq.json"), 0.55, meterRegistry);
+
+    Optional<ChatOutMessage> baggage = responder.answer("Hi, how many bags can I check??");
+    assertThat(baggage).isPresent();
+    assertThat(baggage.get().getContent()).contains("23 kg");
+    assertThat(baggage.get().getSenderShortName()).isEqualTo(FaqResponder.BOT_NAME);
+    assertThat(responder.answer("how do i get a REFUND")).get()
+      .extracting(ChatOutMessage::getContent).asString().contains("Refundable fares");
+    assertThat(responder.answer("The movie on my last trip was great")).isEmpty();
+    assertThat(responder.answer("")).isEmpty();
+
+    assertThat(meterRegistry.counter("chat.faq.questions", "result", "answered").count()).isEqualTo(2);
+    assertThat(meterRegistry.counter("chat.faq.questions", "result", "unanswered").count()).isEqualTo(2);
+  }
+
+  @Test
+  void normalizesTokens() {
+    assertThat(Tokenizer.tokenize("Checked BAGS? Café policies, boarding!"))
+      .containsExactly("check", "bag", "cafe", "policy", "board");
+    assertThat(Tokenizer.tokenize("Can I bring my pass?")).containsExactly("bring", "pass");
+  }
+}
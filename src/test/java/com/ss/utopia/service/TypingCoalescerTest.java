@@ -0,0 +1,172 @@
+package com.ss.utopia.service;
+
+import com.ss.utopia.messaging.ChatBroker;
+import com.ss.utopia.model.ChatOutMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TypingCoalescerTest {
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final ChatBroker chatBroker = mock(ChatBroker.class);
+  private final AtomicLong now = new AtomicLong();
+  private final List<ScheduledFlush> scheduled = new ArrayList<>();
+  private final TypingCoalescer typingCoalescer = coalescer(500, 10_000);
+
+  @Test
+  void updatesInsideTheWindowCollapseIntoTheLatest() {
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+    at(100);
+    typingCoalescer.onTyping("Guest1", "agent", "he");
+    at(200);
+    typingCoalescer.onTyping("Guest1", "agent", "hel");
+
+    assertThat(delivered()).containsExactly("h");
+    assertThat(scheduled).hasSize(1);
+    assertThat(scheduled.get(0).dueAt).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+
+    runFlushesDueAt(500);
+
+    assertThat(delivered()).containsExactly("h", "hel");
+    assertThat(meterRegistry.get("chat.typing.updates").tag("result", "coalesced").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("chat.typing.updates").tag("result", "delivered").counter().count()).isEqualTo(2);
+  }
+
+  @Test
+  void theTrailingUpdateIsDeliveredOnceTheWindowCloses() {
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+    at(400);
+    typingCoalescer.onTyping("Guest1", "agent", "");
+    at(499);
+    runFlushesDueAt(499);
+    assertThat(delivered()).containsExactly("h");
+
+    runFlushesDueAt(500);
+    assertThat(delivered()).containsExactly("h", "");
+
+    // the window restarts at the trailing delivery
+    at(700);
+    typingCoalescer.onTyping("Guest1", "agent", "x");
+    assertThat(scheduled.get(scheduled.size() - 1).dueAt).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1_000));
+    runFlushesDueAt(1_000);
+    assertThat(delivered()).containsExactly("h", "", "x");
+  }
+
+  @Test
+  void updatesRepeatingWhatTheReceiverAlreadySeesAreDropped() {
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+    at(100);
+    typingCoalescer.onTyping("Guest1", "agent", "he");
+    at(200);
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+    runFlushesDueAt(500);
+    at(2_000);
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+
+    assertThat(delivered()).containsExactly("h");
+  }
+
+  @Test
+  void pairsAreCoalescedSeparately() {
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+    typingCoalescer.onTyping("Guest2", "agent", "h");
+    typingCoalescer.onTyping("Guest1", "admin", "h");
+
+    assertThat(delivered()).containsExactly("h", "h", "h");
+    assertThat(typingCoalescer.size()).isEqualTo(3);
+  }
+
+  @Test
+  void silentPairsExpireAndStopShowingAsTyping() {
+    typingCoalescer.onTyping("Guest1", "agent", "h");
+    typingCoalescer.onTyping("Guest2", "agent", "h");
+    at(1_000);
+    typingCoalescer.onTyping("Guest2", "agent", "");
+
+    at(9_999);
+    typingCoalescer.expireIdlePairs();
+    assertThat(typingCoalescer.size()).isEqualTo(2);
+
+    at(10_000);
+    typingCoalescer.expireIdlePairs();
+    // Guest1 was still shown as typing and gets cleared
+    assertThat(typingCoalescer.size()).isEqualTo(1);
+    assertThat(delivered()).containsExactly("h", "h", "", "");
+
+    // Guest2 had already stopped, it is forgotten without another update
+    at(11_000);
+    typingCoalescer.expireIdlePairs();
+    assertThat(typingCoalescer.size()).isZero();
+    assertThat(delivered()).containsExactly("h", "h", "", "");
+  }
+
+  @Test
+  void pairsWithAPendingUpdateDoNotExpire() {
+    TypingCoalescer slow = coalescer(20_000, 10_000);
+    slow.onTyping("Guest1", "agent", "h");
+    at(1);
+    slow.onTyping("Guest1", "agent", "he");
+
+    at(15_000);
+    slow.expireIdlePairs();
+    assertThat(slow.size()).isEqualTo(1);
+
+    runFlushesDueAt(20_000);
+    assertThat(delivered()).containsExactly("h", "he");
+  }
+
+  private TypingCoalescer coalescer(long window, long ttl) {
+    ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    when(scheduler.schedule(any(Runnable.class), anyLong(), eq(TimeUnit.NANOSECONDS))).thenAnswer(invocation -> {
+      scheduled.add(new ScheduledFlush(now.get() + (long) invocation.getArgument(1), invocation.getArgument(0)));
+      return null;
+    });
+    return new TypingCoalescer(chatBroker, meterRegistry, window, ttl, now::get, scheduler);
+  }
+
+  private void at(long milliseconds) {
+    now.set(TimeUnit.MILLISECONDS.toNanos(milliseconds));
+  }
+
+  private void runFlushesDueAt(long milliseconds) {
+    at(milliseconds);
+    for (ScheduledFlush flush : new ArrayList<>(scheduled))
+      if (flush.dueAt <= now.get()) {
+        scheduled.remove(flush);
+        flush.task.run();
+      }
+  }
+
+  private List<String> delivered() {
+    ArgumentCaptor<ChatOutMessage> messages = ArgumentCaptor.forClass(ChatOutMessage.class);
+    verify(chatBroker, atLeast(0)).sendToUser(any(), eq(TypingCoalescer.DESTINATION), messages.capture());
+    List<String> contents = new ArrayList<>();
+    messages.getAllValues().forEach(message -> contents.add(message.getContent()));
+    return contents;
+  }
+
+  private static final class ScheduledFlush {
+    private final long dueAt;
+    private final Runnable task;
+
+    private ScheduledFlush(long dueAt, Runnable task) {
+      this.dueAt = dueAt;
+      this.task = task;
+    }
+  }
+}
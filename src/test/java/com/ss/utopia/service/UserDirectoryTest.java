@@ -0,0 +1,105 @@
+package com.ss.utopia.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ss.utopia.dto.UserPageDto;
+import com.ss.utopia.dto.UserSummaryDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserDirectoryTest {
+  private EmbeddedDatabase database;
+  private SimpleMeterRegistry meterRegistry;
+  private UserDirectory userDirectory;
+
+  @BeforeEach
+  void setUp() {
+    database = new EmbeddedDatabaseBuilder()
+      .setType(EmbeddedDatabaseType.H2)
+      .generateUniqueName(true)
+      .build();
+    JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+    jdbcTemplate.execute("CREATE TABLE user_role (id BIGINT PRIMARY KEY, name VARCHAR(45))");
+    jdbcTemplate.execute("CREATE TABLE USER (id BIGINT AUTO_INCREMENT PRIMARY KEY, role_id BIGINT NOT NULL, " +
+      "given_name VARCHAR(255), family_name VARCHAR(255), username VARCHAR(255) NOT NULL, email VARCHAR(255), " +
+      "password VARCHAR(255) NOT NULL, phone VARCHAR(45))");
+    jdbcTemplate.update("INSERT INTO user_role (id, name) VALUES (1, 'ADMIN'), (2, 'CUSTOMER')");
+    List<Object[]> users = new ArrayList<>();
+    for (int i = 1; i <= 250; i++)
+      users.add(new Object[]{(i % 50 == 0) ? 1 : 2, "Given" + i, "Family" + i, "user" + i, "user" + i + "@utopia.com",
+        "$2a$10$hash", "555-" + i});
+    jdbcTemplate.batchUpdate("INSERT INTO USER (role_id, given_name, family_name, username, email, password, phone) " +
+      "VALUES (?, ?, ?, ?, ?, ?, ?)", users);
+    jdbcTemplate.update("DELETE FROM USER WHERE id BETWEEN 95 AND 105");
+    meterRegistry = new SimpleMeterRegistry();
+    userDirectory = new UserDirectory(jdbcTemplate, database, 20, 100, meterRegistry);
+  }
+
+  @AfterEach
+  void tearDown() {
+    database.shutdown();
+  }
+
+  @Test
+  void pagesSeekPastTheCursorAcrossGaps() {
+    List<Long> ids = new ArrayList<>();
+    Long cursor = null;
+    int pages = 0;
+    do {
+      UserPageDto page = userDirectory.page(cursor, 60);
+      assertThat(page.getUsers()).hasSizeLessThanOrEqualTo(60);
+      page.getUsers().forEach(user -> ids.add(user.getId()));
+      cursor = page.getNextCursor();
+      pages++;
+    } while (null != cursor);
+
+    assertThat(pages).isEqualTo(4);
+    assertThat(ids).hasSize(239).isSorted().doesNotHaveDuplicates().doesNotContain(100L);
+    UserSummaryDto first = userDirectory.page(null, 1).getUsers().get(0);
+    assertThat(first.getUsername()).isEqualTo("user1");
+    assertThat(first.getRole().getId()).isEqualTo(2L);
+    assertThat(first.getRole().getName()).isEqualTo("CUSTOMER");
+    assertThat(userDirectory.page(49L, 1).getUsers().get(0).getRole().getName()).isEqualTo("ADMIN");
+  }
+
+  @Test
+  void serializesTheRoleAsTheUserEntityDid() {
+    JsonNode user = new ObjectMapper().valueToTree(userDirectory.page(null, 1).getUsers().get(0));
+
+    assertThat(user.get("role").get("id").asLong()).isEqualTo(2L);
+    assertThat(user.get("role").get("name").asText()).isEqualTo("CUSTOMER");
+    assertThat(user.get("role").get("authority").asText()).isEqualTo("ROLE_CUSTOMER");
+    assertThat(user.has("password")).isFalse();
+  }
+
+  @Test
+  void pageSizeIsCappedAndMustBePositive() {
+    UserPageDto page = userDirectory.page(null, 10_000);
+    assertThat(page.getUsers()).hasSize(100);
+    assertThat(page.getNextCursor()).isEqualTo(100L + 11);
+    assertThatThrownBy(() -> userDirectory.page(null, 0)).isInstanceOf(IllegalArgumentException.class);
+    assertThat(userDirectory.page(250L, 10).getUsers()).isEmpty();
+    assertThat(userDirectory.page(250L, 10).getNextCursor()).isNull();
+  }
+
+  @Test
+  void forEachVisitsEveryUserInIdOrder() {
+    List<Long> ids = new ArrayList<>();
+    userDirectory.forEach(user -> ids.add(user.getId()));
+
+    assertThat(ids).hasSize(239).isSorted();
+    assertThat(meterRegistry.get("chat.users.streamed").counter().count()).isEqualTo(239);
+  }
+}